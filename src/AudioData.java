@@ -0,0 +1,539 @@
+/**
+    \file   AudioData.java
+    \brief  contains AudioData class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+
+//package jimageviewer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+//----------------------------------------------------------------------
+/** \brief audio (e.g., wav) data.
+ *
+ *  The PCM samples are streamed (via an AudioInputStream) into a compact
+ *  PixelBuffer (one or two bytes per sample for 8 or 16 bit audio; the
+ *  samples are stored offset by mZero so that they are unsigned).  The
+ *  channels are interleaved, so mOriginalData holds mW frames of
+ *  mChannels samples each.  mW is the number of frames and mH is LANE
+ *  rows per channel.
+ *  <br/>
+ *  The waveform is drawn from a min/max envelope pyramid:  level 1 has
+ *  the min and max of each BLOCK frames, and each level after that has
+ *  the min and max of FACTOR entries of the level below.  A column of the
+ *  waveform is drawn from the coarsest entries that fit within it (and
+ *  the samples or finer entries at its ends), so drawing takes about the
+ *  same time for a second or an hour of audio at any zoom.
+ *  <br/>
+ *  Note:  There are no display data to window/level and no ROI
+ *  statistics.
+ */
+public class AudioData extends ImageData {
+    public static final int  LANE   = 200;      ///< height of each channel's waveform
+    public static final int  BLOCK  = 32;       ///< frames per entry of level 1 of the envelope
+    public static final int  FACTOR = 8;        ///< entries per entry of the next level
+    public static final int  CHUNK  = 1 << 16;  ///< frames per read
+
+    /** This interface is used to report the progress of read(). */
+    public interface Listener {
+        /** \brief Frames [f0..f1) have been read.
+         *  \returns true to continue; false to stop
+         */
+        boolean framesDecoded ( int f0, int f1 );
+    }
+
+    private final int      mChannels;        ///< samples per frame
+    private final int      mBits;            ///< bits per sample
+    private final int      mZero;            ///< stored value of a 0 sample
+    private final double   mFullScale;       ///< largest magnitude of a sample
+    private final int[]    mSize;            ///< entries per channel of each level (0 = frames)
+    private final PixelBuffer[]  mEnvMin;    ///< level L+1 of the envelope (mins)
+    private final PixelBuffer[]  mEnvMax;    ///< level L+1 of the envelope (maxs)
+    private AudioInputStream     mIn;        ///< open until read() is done
+    private volatile int   mLoaded = 0;      ///< frames read so far
+    //----------------------------------------------------------------------
+    /** \brief Open an audio file and allocate (but do not read) its
+     *  samples.  Call read() to read them.
+     *  \param fileName name of input audio file
+     *  \returns the audio data
+     */
+    public static AudioData open ( String fileName ) throws IOException {
+        AudioInputStream  in;
+        try {
+            in = AudioSystem.getAudioInputStream( new File(fileName) );
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException( "AudioData: unsupported audio file: " + fileName );
+        }
+        //other encodings (e.g., u-law) are converted to 16 bit PCM
+        AudioFormat  f = in.getFormat();
+        boolean  pcm = (f.getEncoding() == AudioFormat.Encoding.PCM_SIGNED
+                     || f.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED);
+        int  bits = f.getSampleSizeInBits();
+        if (!pcm || bits < 8 || bits > 32 || bits % 8 != 0
+                 || f.getFrameSize() != f.getChannels() * bits / 8) {
+            AudioFormat  to = new AudioFormat( f.getSampleRate(), 16, f.getChannels(), true, false );
+            if (!AudioSystem.isConversionSupported( to, f )) {
+                in.close();
+                throw new IOException( "AudioData: unsupported audio format: " + f );
+            }
+            in = AudioSystem.getAudioInputStream( to, in );
+        }
+        long  frames = in.getFrameLength();
+        if (frames == AudioSystem.NOT_SPECIFIED || frames * in.getFormat().getChannels() > Integer.MAX_VALUE - 8) {
+            in.close();
+            throw new IOException( "AudioData: unknown or too long length: " + fileName );
+        }
+        return new AudioData( fileName, in );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Load (open and read) an audio file.
+     *  \param fileName name of input audio file
+     *  \returns the audio data
+     */
+    public static AudioData loadAudio ( String fileName ) throws IOException {
+        AudioData  audio = open( fileName );
+        audio.read( null );
+        return audio;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Allocates the samples and the envelope.
+     *  \param fileName name of input audio file
+     *  \param in the (PCM) stream of samples
+     *  \returns nothing (ctor)
+     */
+    private AudioData ( String fileName, AudioInputStream in ) {
+        AudioFormat  f = in.getFormat();
+        mIn        = in;
+        mFname     = fileName;
+        mIsAudio   = true;
+        mIsColor   = false;
+        mRate      = Math.round( f.getSampleRate() );
+        mChannels  = f.getChannels();
+        mBits      = f.getSampleSizeInBits();
+        mW         = (int)in.getFrameLength();
+        mH         = LANE * mChannels;
+        mFullScale = Math.pow( 2, mBits - 1 );
+        mZero      = (mBits <= 16) ? (1 << (mBits - 1)) : 0;
+        final int  lo = (mBits <= 16) ? 0 : -(int)mFullScale, hi = (int)(mFullScale + mZero - 1);
+        mOriginalData = PixelBuffer.allocate( mW * mChannels, lo, hi );
+        mDisplayData  = mOriginalData;  //there is no separate display copy
+        //levels until there is one entry (per channel)
+        int  levels = 0;
+        for (long n=mW; n>1; levels++)    n = (n + factor(levels) - 1) / factor(levels);
+        mSize   = new int[ levels + 1 ];
+        mEnvMin = new PixelBuffer[ levels ];
+        mEnvMax = new PixelBuffer[ levels ];
+        mSize[ 0 ] = mW;
+        for (int L=1; L<=levels; L++) {
+            mSize[ L ] = (mSize[ L-1 ] + factor(L-1) - 1) / factor(L-1);
+            mEnvMin[ L-1 ] = PixelBuffer.allocate( mSize[ L ] * mChannels, lo, hi );
+            mEnvMax[ L-1 ] = PixelBuffer.allocate( mSize[ L ] * mChannels, lo, hi );
+        }
+        mMin = mMax = 0;
+        mPyramid = new WaveformPyramid( mW, mH );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of entries of level L per entry of level L+1 */
+    private static int factor ( int L ) {  return (L == 0) ? BLOCK : FACTOR;  }
+    //----------------------------------------------------------------------
+    /** \brief Read (stream) the samples in chunks of CHUNK frames.  The
+     *  envelope is updated after each chunk (so the partially read audio
+     *  may be drawn).  The stream is closed when done.
+     *  \param listener is notified after each chunk (may be null)
+     *  \returns nothing (void)
+     */
+    public void read ( Listener listener ) throws IOException {
+        final int  bytesPerSample = mBits / 8, frameSize = mChannels * bytesPerSample;
+        final boolean  signed    = (mIn.getFormat().getEncoding() == AudioFormat.Encoding.PCM_SIGNED);
+        final boolean  bigEndian = mIn.getFormat().isBigEndian();
+        byte[]  bytes   = new byte[ CHUNK * frameSize ];
+        int[]   samples = new int[ CHUNK * mChannels ];
+        try (AudioInputStream  in = mIn) {
+            int  f0 = 0;
+            while (f0 < mW) {
+                //read whole frames
+                int  want = Math.min( CHUNK, mW - f0 ) * frameSize, n = 0;
+                while (n < want) {
+                    int  got = in.read( bytes, n, want - n );
+                    if (got < 0)    break;
+                    n += got;
+                }
+                final int  frames = n / frameSize;
+                if (frames == 0)    break;  //the file is shorter than its header says
+                final int  count = frames * mChannels;
+                decode( bytes, samples, count, signed, bigEndian );
+                mOriginalData.setRange( f0 * mChannels, samples, 0, count );
+                updateEnvelope( f0, f0 + frames, samples );
+                mLoaded = f0 += frames;
+                mPyramid.invalidate( 0, mH );
+                if (listener != null && !listener.framesDecoded( f0 - frames, f0 ))    break;
+            }
+        } finally {
+            mIn = null;
+        }
+        //the actual range of the samples
+        final int  top = mEnvMin.length;
+        long  mm = scan( 0, top, 0, mSize[ top ] );
+        for (int c=1; c<mChannels; c++)    mm = combine( mm, scan( c, top, 0, mSize[ top ] ) );
+        if (mLoaded > 0) {
+            mMin = Parallel.min( mm ) - mZero;
+            mMax = Parallel.max( mm ) - mZero;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Convert samples (bytes) to stored values (offset by mZero
+     *  for 8 and 16 bit samples; sign extended otherwise).
+     *  \param bytes the samples read
+     *  \param samples the stored values
+     *  \param count number of samples
+     *  \param signed true for PCM_SIGNED; false for PCM_UNSIGNED
+     *  \param bigEndian byte order of the samples
+     *  \returns nothing (void)
+     */
+    private void decode ( byte[] bytes, int[] samples, int count, boolean signed, boolean bigEndian ) {
+        //the common cases are straight line code
+        if (mBits == 8) {
+            final int  flip = signed ? 0x80 : 0;
+            for (int i=0; i<count; i++)    samples[ i ] = (bytes[ i ] & 0xff) ^ flip;
+            return;
+        }
+        if (mBits == 16) {
+            final int  flip = signed ? 0x8000 : 0, hi = bigEndian ? 0 : 1;
+            for (int i=0, b=0; i<count; i++, b+=2)
+                samples[ i ] = (((bytes[ b+hi ] & 0xff) << 8) | (bytes[ b+1-hi ] & 0xff)) ^ flip;
+            return;
+        }
+        final int  bytesPerSample = mBits / 8;
+        for (int i=0, b=0; i<count; i++, b+=bytesPerSample) {
+            int  u = 0;
+            for (int j=0; j<bytesPerSample; j++)
+                u = (u << 8) | (bytes[ b + (bigEndian ? j : bytesPerSample-1-j) ] & 0xff);
+            if (signed)    samples[ i ] = (u << (32 - mBits)) >> (32 - mBits);
+            else           samples[ i ] = u - (1 << (mBits - 1));
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Frames [f0..f1) (and all before them) have been read.
+     *  Update the envelope entries that contain them.  Level 1 is made
+     *  from the samples just read (rather than from mOriginalData).
+     *  \param f0 first frame (a multiple of BLOCK)
+     *  \param f1 one past the last frame
+     *  \param samples stored values of frames [f0..f1)
+     *  \returns nothing (void)
+     */
+    private void updateEnvelope ( final int f0, final int f1, final int[] samples ) {
+        assert f0 % BLOCK == 0;
+        if (mEnvMin.length == 0)    return;
+        int  a = f0 / BLOCK, b = (f1 + BLOCK - 1) / BLOCK;
+        final int  first = a;
+        Parallel.forEachBand( b - a, BLOCK * mChannels, (y0, y1) -> {
+            for (int e=first+y0; e<first+y1; e++) {
+                final int  i0 = (e*BLOCK - f0) * mChannels, i1 = (Math.min( (e+1)*BLOCK, f1 ) - f0) * mChannels;
+                for (int c=0; c<mChannels; c++) {
+                    int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                    for (int i=i0+c; i<i1; i+=mChannels) {
+                        final int  v = samples[ i ];
+                        if (v < min)    min = v;
+                        if (v > max)    max = v;
+                    }
+                    mEnvMin[ 0 ].set( e*mChannels + c, min );
+                    mEnvMax[ 0 ].set( e*mChannels + c, max );
+                }
+            }
+        } );
+        for (int L=2; L<=mEnvMin.length; L++) {
+            final int  k = factor( L-1 ), valid = b;
+            a = a / k;
+            b = (b + k - 1) / k;
+            final int  lvl = L, e0 = a;
+            Parallel.forEachBand( b - a, k * mChannels, (y0, y1) -> {
+                for (int e=e0+y0; e<e0+y1; e++) {
+                    for (int c=0; c<mChannels; c++) {
+                        long  mm = scan( c, lvl-1, e*k, Math.min( (e+1)*k, valid ) );
+                        mEnvMin[ lvl-1 ].set( e*mChannels + c, Parallel.min( mm ) );
+                        mEnvMax[ lvl-1 ].set( e*mChannels + c, Parallel.max( mm ) );
+                    }
+                }
+            } );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the combined (packed) min/max of two packed min/max */
+    private static long combine ( long a, long b ) {
+        return Parallel.pack( Math.min( Parallel.min(a), Parallel.min(b) ),
+                              Math.max( Parallel.max(a), Parallel.max(b) ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the min and max (stored values) of entries [a..b)
+     *  of level L (frames if L is 0) of a channel by reading them.
+     *  \returns min in the upper 32 bits and max in the lower 32 bits
+     */
+    private long scan ( int c, int L, int a, int b ) {
+        int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        if (L == 0) {
+            for (int i=a; i<b; i++) {
+                int  v = mOriginalData.get( i*mChannels + c );
+                if (v < min)    min = v;
+                if (v > max)    max = v;
+            }
+        } else {
+            final PixelBuffer  lo = mEnvMin[ L-1 ], hi = mEnvMax[ L-1 ];
+            for (int i=a; i<b; i++) {
+                min = Math.min( min, lo.get( i*mChannels + c ) );
+                max = Math.max( max, hi.get( i*mChannels + c ) );
+            }
+        }
+        return Parallel.pack( min, max );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the min and max (stored values) of entries [a..b)
+     *  of level L (frames if L is 0) of a channel.  The entries of the
+     *  next level that lie within [a..b) are used for the middle (so only
+     *  the ends are read at each level).
+     *  \returns min in the upper 32 bits and max in the lower 32 bits
+     */
+    private long range ( int c, int L, int a, int b ) {
+        if (L < mEnvMin.length) {
+            final int  k = factor( L );
+            int  ia = (a + k - 1) / k, ib = (b == mSize[ L ]) ? mSize[ L+1 ] : b / k;
+            if (ia < ib) {
+                long  mm = range( c, L+1, ia, ib );
+                mm = combine( mm, scan( c, L, a, ia*k ) );
+                return combine( mm, scan( c, L, Math.min( b, ib*k ), b ) );
+            }
+        }
+        return scan( c, L, a, b );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of channels (samples per frame) */
+    public int getChannels ( ) {  return mChannels;  }
+    //----------------------------------------------------------------------
+    /** \returns the number of frames read so far (mW when done) */
+    public int getLoadedFrames ( ) {  return mLoaded;  }
+    //----------------------------------------------------------------------
+    /** \brief Determine the min and max of frames [f0..f1) of a channel
+     *  (from the envelope).
+     *  \param channel the channel
+     *  \param f0 first frame
+     *  \param f1 one past the last frame
+     *  \returns min in the upper 32 bits and max in the lower 32 bits
+     */
+    public long minMax ( int channel, int f0, int f1 ) {
+        long  mm = range( channel, 0, f0, f1 );
+        return Parallel.pack( Parallel.min( mm ) - mZero, Parallel.max( mm ) - mZero );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the spectrogram (see Spectrogram) w/ the default
+     *  size and half overlapped columns.
+     *  \returns a new gray image (time to the right, frequency up)
+     */
+    public GrayImageData spectrogram ( ) {
+        return spectrogram( Spectrogram.SIZE, Spectrogram.SIZE / 2 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the spectrogram (see Spectrogram) of the frames
+     *  read so far.
+     *  \param size frames per column (a power of 2)
+     *  \param hop frames between columns
+     *  \returns a new gray image of the log magnitudes (in 10ths of a dB)
+     *  \throws IllegalArgumentException if the image would not fit in
+     *  (half of) the heap
+     */
+    public GrayImageData spectrogram ( int size, int hop ) {
+        Spectrogram  s = new Spectrogram( size, hop );
+        final int  frames = mLoaded;
+        //checked up front (rather than catching OutOfMemoryError).  each
+        // value is a short (in [0..10*RANGE]) plus a byte of mDisplayImage.
+        final long  bytes = (long)s.getColumns( frames ) * s.getRows() * (2 + 1);
+        if (bytes > Runtime.getRuntime().maxMemory() / 2)
+            throw new IllegalArgumentException( "AudioData:spectrogram: too large ("
+                    + s.getColumns( frames ) + " x " + s.getRows() + ")" );
+        return new GrayImageData( s.compute( mOriginalData, frames, mChannels, mZero, mFullScale ),
+                                  s.getColumns( frames ), s.getRows() );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Given a frame and a channel, this function
+     *  \param row ignored (the waveform of a channel is LANE rows high)
+     *  \param col frame
+     *  \param band channel
+     *  \returns the (signed) sample's value.
+     */
+    @Override
+    public int getSample ( int row, int col, int band ) {
+        return mOriginalData.get( col*mChannels + band ) - mZero;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    protected void refreshDisplayRows ( int y0, int y1 ) { }
+    //----------------------------------------------------------------------
+    @Override
+    public void refreshDisplay ( ) { }
+    //----------------------------------------------------------------------
+    /** \brief Not supported (there are no display data to copy).
+     *  \returns nothing (void)
+     */
+    @Override
+    public void makePermanent ( ) {
+        System.err.println( "AudioData:makePermanent: not supported" );
+    }
+    //----------------------------------------------------------------------
+    /** \brief There are no ROI statistics for audio.
+     *  \returns null
+     */
+    @Override
+    public SummedAreaTable getStatistics ( ) {  return null;  }
+    //----------------------------------------------------------------------
+    @Override
+    protected void buildStatistics ( ) { }
+    //----------------------------------------------------------------------
+    /** \brief There are no display data to window/level (so auto contrast
+     *  does nothing).
+     *  \returns null
+     */
+    @Override
+    public Histogram getHistogram ( ) {  return null;  }
+    //----------------------------------------------------------------------
+    /** \brief Save the samples to a wav file (8 bit unsigned or 16, 24, or
+     *  32 bit signed, little endian PCM).  The samples are encoded as they
+     *  are written (w/out a copy).
+     *  \param fileName name of output audio file
+     *  \param binary ignored
+     *  \returns true if successful; false otherwise
+     */
+    @Override
+    public boolean save ( String fileName, boolean binary ) {
+        final AudioFormat  f = new AudioFormat( mBits <= 8 ? AudioFormat.Encoding.PCM_UNSIGNED
+                                                           : AudioFormat.Encoding.PCM_SIGNED,
+                mRate, mBits, mChannels, mChannels * mBits / 8, mRate, false );
+        try (AudioInputStream  out = new AudioInputStream( new SampleStream(), f, mLoaded )) {
+            AudioSystem.write( out, AudioFileFormat.Type.WAVE, new File(fileName) );
+        } catch (Exception e) {
+            System.err.println( "AudioData:save: " + e );
+            return false;
+        }
+        return true;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public long sizeInBytes ( ) {
+        long  n = mOriginalData.sizeInBytes();
+        for (int L=0; L<mEnvMin.length; L++)
+            n += mEnvMin[ L ].sizeInBytes() + mEnvMax[ L ].sizeInBytes();
+        return n;
+    }
+
+    //======================================================================
+    /** \brief the samples encoded as (little endian) bytes (for save()). */
+    private final class SampleStream extends InputStream {
+        private final int  mBytesPerSample = mBits / 8;
+        private final long mLength = (long)mLoaded * mChannels * mBytesPerSample;
+        private long  mPos = 0;  ///< next byte
+
+        @Override public int read ( ) {
+            if (mPos >= mLength)    return -1;
+            int  i = (int)(mPos / mBytesPerSample), j = (int)(mPos % mBytesPerSample);
+            ++mPos;
+            int  v = mOriginalData.get( i );
+            if (mBits > 8)    v -= mZero;  //8 bit wav is unsigned
+            return (v >>> (8*j)) & 0xff;
+        }
+        @Override public int read ( byte[] b, int off, int len ) {
+            if (mPos >= mLength)    return -1;
+            int  n = (int)Math.min( len, mLength - mPos );
+            for (int i=0; i<n; i++)    b[ off+i ] = (byte)read();
+            return n;
+        }
+    }
+
+    //======================================================================
+    /** \brief draws the waveform (one lane per channel) from the envelope. */
+    private final class WaveformPyramid extends ImagePyramid {
+        WaveformPyramid ( int w, int h ) {  super( w, h );  }
+        //------------------------------------------------------------------
+        /** \returns the y of a (stored) value in the lane of channel c */
+        private int yOf ( int c, int v ) {
+            return c*LANE + LANE/2 - (int)Math.round( (v - mZero) / mFullScale * (LANE/2 - 2) );
+        }
+        //------------------------------------------------------------------
+        /** \brief Draw the part of the waveform that intersects clip.
+         *  Zoom only applies to time (lanes are always LANE high).  When
+         *  there is more than one frame per pixel, each column is a
+         *  vertical line from the min to the max of its frames (and the
+         *  first frame of the next column, so that columns connect).
+         *  Otherwise, the samples are connected by lines.
+         *  \param g graphics context (in panel coordinates)
+         *  \param clip area to draw (in panel coordinates)
+         *  \param zoom pixels per frame
+         *  \param hint ignored
+         *  \returns nothing (void)
+         */
+        @Override
+        public void paint ( Graphics2D g, Rectangle clip, double zoom, Object hint ) {
+            final int  loaded = mLoaded;
+            final int  x0 = Math.max( 0, clip.x );
+            final int  x1 = (int)Math.min( clip.x + clip.width, Math.ceil( mW * zoom ) );
+            if (x0 >= x1)    return;
+            for (int c=0; c<mChannels; c++) {
+                final int  top = c * LANE;
+                if (top >= clip.y + clip.height || top + LANE <= clip.y)    continue;
+                g.setColor( Color.BLACK );
+                g.fillRect( x0, top, x1 - x0, LANE );
+                g.setColor( Color.DARK_GRAY );
+                g.drawLine( x0, top + LANE/2, x1 - 1, top + LANE/2 );
+                g.setColor( Color.GREEN );
+                if (zoom > 1) {
+                    int  f0 = Math.max( 0, (int)Math.floor( x0 / zoom ) );
+                    int  f1 = Math.min( loaded - 1, (int)Math.ceil( x1 / zoom ) );
+                    int  px = 0, py = 0;
+                    for (int f=f0; f<=f1; f++) {
+                        int  x = (int)Math.round( f * zoom ), y = yOf( c, mOriginalData.get( f*mChannels + c ) );
+                        if (f == f0)    g.drawLine( x, y, x, y );
+                        else            g.drawLine( px, py, x, y );
+                        px = x;
+                        py = y;
+                    }
+                    continue;
+                }
+                for (int x=x0; x<x1; x++) {
+                    int  a = (int)Math.floor( x / zoom );
+                    if (a >= loaded)    break;
+                    int  b = Math.min( loaded, Math.max( a + 1, (int)Math.floor( (x+1) / zoom ) ) + 1 );
+                    long  mm = range( c, 0, a, b );
+                    g.drawLine( x, yOf( c, Parallel.max( mm ) ), x, yOf( c, Parallel.min( mm ) ) );
+                }
+            }
+        }
+    }
+
+}
+//----------------------------------------------------------------------
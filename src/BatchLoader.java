@@ -0,0 +1,212 @@
+/**
+    \file   BatchLoader.java
+    \brief  contains BatchLoader class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+//----------------------------------------------------------------------
+/** \brief loads many image files concurrently (e.g., all of the files
+ *  selected in the Open dialog or specified on the command line) and
+ *  opens a window for each one in the order in which they finish.
+ *
+ *  At most PARALLELISM files are decoded at once (one per core by
+ *  default).  In addition, the (estimated) heap needed by the files that
+ *  are being decoded at the same time is limited to a budget (half of the
+ *  max heap by default, or -Djimageviewer.batchMB=n) so that many large
+ *  files do not run out of memory all at once.  A summary of the total
+ *  and per file load times is printed when all files are done.
+ */
+public class BatchLoader implements ImageLoader.Client {
+    /** max number of files decoded at once */
+    public static final int  PARALLELISM = Math.max( 1, Integer.getInteger(
+            "jimageviewer.batchParallelism", Runtime.getRuntime().availableProcessors() ) );
+    /** budget (in MB) for the files that are decoded at once */
+    public static final long BUDGET_MB = Long.getLong( "jimageviewer.batchMB",
+            Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024) );
+
+    private final List< String >  mFiles;        ///< files to load
+    private JImageViewer          mTarget;       ///< (empty) window for the first image (may be null)
+    private final Timer           mTimer = new Timer();  ///< total time
+    private final ArrayList< ImageLoader >  mDone = new ArrayList<>();  ///< in completion order
+    private int                   mFailed = 0;   ///< number of files that could not be loaded
+    private ExecutorService       mPool;         ///< decodes the files
+    private final CountDownLatch  mFinished = new CountDownLatch( 1 );  ///< counted down when all files are done
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Call start() to begin loading.
+     *  \param files names of input image files
+     *  \param target an empty window in which the first image to finish
+     *         is displayed (or null to open a new window for each image)
+     *  \returns nothing (ctor)
+     */
+    public BatchLoader ( List< String > files, JImageViewer target ) {
+        mFiles  = new ArrayList<>( files );
+        mTarget = target;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Start loading all of the files (in the background).
+     *  \returns nothing (void)
+     */
+    public void start ( ) {
+        final int  threads = Math.min( PARALLELISM, mFiles.size() );
+        System.out.println( "BatchLoader: loading " + mFiles.size() + " files ("
+                          + threads + " at once, " + BUDGET_MB + " MB budget)." );
+        mPool = Executors.newFixedThreadPool( Math.max( 1, threads ), r -> {
+            Thread  t = new Thread( r, "BatchLoader" );
+            t.setDaemon( true );
+            return t;
+        } );
+        //permits are MB of (estimated) heap
+        final int        budget = (int)Math.max( 1, Math.min( Integer.MAX_VALUE, BUDGET_MB ) );
+        final Semaphore  memory = new Semaphore( budget, true );
+        for (String f : mFiles) {
+            final ImageLoader  loader = new ImageLoader( f, this );
+            mPool.execute( () -> {
+                //a file larger than the budget waits for all of it
+                int  mb = (int)Math.min( budget, (estimateBytes( f ) >> 20) + 1 );
+                memory.acquireUninterruptibly( mb );
+                try {
+                    loader.run();
+                } finally {
+                    memory.release( mb );
+                }
+            } );
+        }
+        mPool.shutdown();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Estimate the heap needed to load an image file (w/out
+     *  decoding it).
+     *  \param fileName name of input image file
+     *  \returns the (approx.) number of bytes
+     */
+    public static long estimateBytes ( String fileName ) {
+        String  up = fileName.toUpperCase();
+        try {
+            if (up.endsWith(".PPM") || up.endsWith(".PNM") || up.endsWith(".PGM")) {
+                PNMHelper  hdr = PNMHelper.readHeader( fileName );
+                if (TiledImageData.shouldTile( hdr ))
+                    return (long)TiledImageData.OVERVIEW * TiledImageData.OVERVIEW * 4;
+                return TiledImageData.heapBytes( hdr );
+            }
+            //read only the size (not the pixels).  allow for the decoded
+            // image, original and display data, and the display image.
+            try (ImageInputStream  in = ImageIO.createImageInputStream( new File(fileName) )) {
+                Iterator< ImageReader >  it = (in == null) ? null : ImageIO.getImageReaders( in );
+                if (it != null && it.hasNext()) {
+                    ImageReader  reader = it.next();
+                    try {
+                        reader.setInput( in, true, true );
+                        return 14L * reader.getWidth( 0 ) * reader.getHeight( 0 );
+                    } finally {
+                        reader.dispose();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println( "BatchLoader:estimateBytes: " + e );
+        }
+        return 4 * new File( fileName ).length();
+    }
+    //----------------------------------------------------------------------
+    /** unused (each image is displayed when it is complete) */
+    @Override
+    public void imageAvailable ( ImageLoader loader, ImageData image ) { }
+    //----------------------------------------------------------------------
+    /** unused */
+    @Override
+    public void rowsLoaded ( ImageLoader loader, int y0, int y1 ) { }
+    //----------------------------------------------------------------------
+    /** \brief Display an image (on the EDT) as soon as it is loaded.
+     *  \param loader the load that is done
+     *  \returns nothing (void)
+     */
+    @Override
+    public void loadDone ( ImageLoader loader ) {
+        mDone.add( loader );
+        try {
+            ImageData  image = loader.get();
+            if (mTarget != null && mTarget.mImage == null && mTarget.mLoader == null) {
+                mTarget.display( image, loader.getFileName() );
+            } else {
+                new JImageViewer( image, loader.getFileName() );
+            }
+            mTarget = null;
+            if (!image.mIsAudio)    ImageData.warnRange( image.mMin, image.mMax );
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println( "BatchLoader:loadDone: " + loader.getFileName() + ": " + e );
+            mFailed++;
+        } finally {
+            if (mDone.size() == mFiles.size()) {
+                printSummary();
+                mFinished.countDown();
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Wait until all of the files are done (and their windows are
+     *  open).  The workers are daemon threads, so main() must call this
+     *  (or the JVM exits before any window opens).
+     *  \returns nothing (void)
+     */
+    public void await ( ) {
+        try {
+            mFinished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Print the total and per file load times.
+     *  \returns nothing (void)
+     */
+    private void printSummary ( ) {
+        double  total = mTimer.getElapsedTimeNano();
+        double  sum   = 0;
+        System.out.println( "BatchLoader: per file load times (in completion order):" );
+        for (ImageLoader l : mDone) {
+            sum += l.getElapsedTime();
+            System.out.printf( "  %8.3f s  %s%n", l.getElapsedTime(), l.getFileName() );
+        }
+        System.out.printf( "BatchLoader: %d files (%d failed) in %.3f s; sum of per file "
+                + "times %.3f s (%.2fx overlap)%n", mDone.size(), mFailed, total, sum,
+                (total > 0) ? sum / total : 0 );
+        System.out.println( "BatchLoader: " + ImageCache.shared() );
+    }
+
+}
+//----------------------------------------------------------------------
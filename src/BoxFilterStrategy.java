@@ -0,0 +1,179 @@
+/**
+    \file   BoxFilterStrategy.java
+    \brief  contains BoxFilterStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.Arrays;
+//----------------------------------------------------------------------
+/** \brief box (mean) filter w/ O(1) operations per pixel (regardless of
+ *  the radius).  Several passes (of possibly different radii) approximate
+ *  a Gaussian (see gaussianRadii()).
+ *
+ *  Rows are filtered w/ running (prefix) sums and columns w/ a running
+ *  sum of rows (one per pass), so each pass costs a few additions per
+ *  sample.  Sums are not divided until the end, so the result is exact
+ *  (the sums of integers are exact in a double up to 2^53).  As in
+ *  ConvolutionStrategy, the bands of a color image are filtered directly
+ *  in the interleaved layout.
+ */
+public class BoxFilterStrategy implements NeighborhoodStrategy {
+    private final int[]  mRadii;   ///< radius of each pass
+    private final ConvolutionStrategy.Border  mBorder;  ///< border mode
+    private final int    mRadius;  ///< sum of the radii
+    //----------------------------------------------------------------------
+    /** \brief Ctor for a single pass (w/ Border.CLAMP).
+     *  \param radius the window is (2*radius+1) x (2*radius+1)
+     *  \returns nothing (ctor)
+     */
+    public BoxFilterStrategy ( int radius ) {
+        this( new int[]{ radius }, ConvolutionStrategy.Border.CLAMP );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param radii radius of each pass
+     *  \param border border mode
+     *  \returns nothing (ctor)
+     */
+    public BoxFilterStrategy ( int[] radii, ConvolutionStrategy.Border border ) {
+        mRadii  = radii.clone();
+        mBorder = border;
+        int  r = 0;
+        for (int i=0; i<mRadii.length; i++) {
+            mRadii[ i ] = Math.max( 0, mRadii[i] );
+            r += mRadii[ i ];
+        }
+        mRadius = r;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the radii of box filters that (when applied one
+     *  after the other) approximate a Gaussian.  See W. Wells, "Efficient
+     *  synthesis of Gaussian filters by cascaded uniform filters," IEEE
+     *  PAMI 8(2), 1986, and P. Kovesi, "Fast almost-Gaussian filtering,"
+     *  DICTA 2010.
+     *  \param sigma standard deviation (in pixels)
+     *  \param passes number of boxes (3 is usually good enough)
+     *  \returns the radii
+     */
+    public static int[] gaussianRadii ( double sigma, int passes ) {
+        final double  v = 12 * sigma * sigma;
+        int  wl = (int)Math.floor( Math.sqrt( v / passes + 1 ) );
+        if (wl % 2 == 0)    wl--;
+        wl = Math.max( 1, wl );
+        //number of boxes of width wl (the rest are wl+2)
+        long  m = Math.round( (v - passes*wl*wl - 4.0*passes*wl - 3*passes) / (-4.0*wl - 4) );
+        int[]  radii = new int[ passes ];
+        for (int i=0; i<passes; i++)    radii[ i ] = (i < m) ? (wl-1) / 2 : (wl+1) / 2;
+        return radii;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int radius ( ) {  return mRadius;  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {
+        if (mBorder == ConvolutionStrategy.Border.ZERO)
+            return Parallel.pack( Math.min( min, 0 ), Math.max( max, 0 ) );
+        return Parallel.pack( min, max );
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                            int w, int h, int samples, int min, int max, int y0, int y1 )
+    {
+        final int  rowLength = w * samples;
+        final long range = range( min, max );
+        double  scale = 1;
+        for (int r : mRadii)    scale *= (2.0*r + 1) * (2.0*r + 1);
+        //one running sum of rows per pass
+        Column[]  columns = new Column[ mRadii.length ];
+        for (int i=0; i<mRadii.length; i++)    columns[ i ] = new Column( mRadii[i], rowLength );
+        int[]     in     = new int[ (w + 2*mRadius) * samples ];
+        double[]  row    = new double[ in.length ];
+        double[]  prefix = new double[ in.length + samples ];
+        int[]     out    = new int[ rowLength ];
+        int       y      = y0;
+        for (int r=y0-mRadius; r<y1+mRadius; r++) {
+            filterRow( src, srcY0, r, h, w, samples, in, row, prefix );
+            //push the row through the column passes
+            double[]  sum = row;
+            for (Column c : columns) {
+                sum = c.push( sum );
+                if (sum == null)    break;
+            }
+            if (sum == null)    continue;
+            ConvolutionStrategy.store( sum, scale, out, Parallel.min(range), Parallel.max(range) );
+            dst.setRange( y * rowLength, out, 0, rowLength );
+            y++;
+        }
+        assert y == y1;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Read input row r (which may be beyond the borders) and apply
+     *  the row (horizontal) passes.
+     *  \param in (padded) temporary row
+     *  \param row the result (in the first w*samples entries)
+     *  \param prefix temporary prefix sums
+     *  \returns nothing (void)
+     */
+    private void filterRow ( PixelBuffer src, int srcY0, int r, int h, int w, int samples,
+                             int[] in, double[] row, double[] prefix )
+    {
+        ConvolutionStrategy.readRow( src, srcY0, r, h, w, samples, mRadius, mBorder, in );
+        int  length = in.length;
+        for (int i=0; i<length; i++)    row[ i ] = in[ i ];
+        for (int radius : mRadii) {
+            //prefix[i+samples] = sum of row[i], row[i-samples], ...
+            Arrays.fill( prefix, 0, samples, 0 );
+            for (int i=0; i<length; i++)    prefix[ i+samples ] = prefix[ i ] + row[ i ];
+            final int  width = (2*radius + 1) * samples;
+            length -= 2 * radius * samples;
+            for (int i=0; i<length; i++)    row[ i ] = prefix[ i+width ] - prefix[ i ];
+        }
+    }
+
+    //======================================================================
+    /** \brief a running sum of the last 2*radius+1 rows pushed */
+    private static final class Column {
+        private final double[][]  mRing;   ///< the last rows
+        private final double[]    mSum;    ///< their sum
+        private int               mCount = 0;  ///< number of rows pushed
+        Column ( int radius, int rowLength ) {
+            mRing = new double[ 2*radius + 1 ][ rowLength ];
+            mSum  = new double[ rowLength ];
+        }
+        /** \returns the sum of the window that ends w/ row (or null if
+         *  the window is not full yet) */
+        double[] push ( double[] row ) {
+            final double[]  old = mRing[ mCount % mRing.length ];
+            for (int i=0; i<mSum.length; i++)    mSum[ i ] += row[ i ] - old[ i ];
+            System.arraycopy( row, 0, old, 0, mSum.length );
+            mCount++;
+            return (mCount >= mRing.length) ? mSum : null;
+        }
+    }
+
+}
+//----------------------------------------------------------------------
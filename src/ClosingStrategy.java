@@ -0,0 +1,51 @@
+/**
+    \file   ClosingStrategy.java
+    \brief  contains ClosingStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief gray scale closing (a dilation followed by an erosion w/ the
+ *  same structuring element), which removes dark details smaller than
+ *  the element.
+ *  See MorphologyStrategy (van Herk/Gil-Werman, O(1) per pixel).
+ */
+public class ClosingStrategy extends MorphologyStrategy {
+    //----------------------------------------------------------------------
+    /** \brief Ctor for a square structuring element.
+     *  \param radius the element is (2*radius+1) x (2*radius+1)
+     *  \returns nothing (ctor)
+     */
+    public ClosingStrategy ( int radius ) {  this( radius, radius );  }
+    //----------------------------------------------------------------------
+    /** \brief Ctor for a rectangular (or line) structuring element.
+     *  \param rx the element is (2*rx+1) pixels wide (0 for a vertical line)
+     *  \param ry the element is (2*ry+1) pixels high (0 for a horizontal line)
+     *  \returns nothing (ctor)
+     */
+    public ClosingStrategy ( int rx, int ry ) {  super( new boolean[]{ false, true }, rx, ry );  }
+
+}
+//----------------------------------------------------------------------
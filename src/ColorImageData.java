@@ -26,13 +26,14 @@
  */
 //package jimageviewer;
 
-import javax.swing.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 //----------------------------------------------------------------------
 /** \brief class containing the actual pixel data for a color image
  *  (3 values per pixel - red, green, and blue)
  */
 public class ColorImageData extends ImageData {
+    private int[]  mPacked;  ///< the pixels of mDisplayImage (see newDisplayImage())
     /** \brief Color image data represented as a 2D array (of rgb values).
      *  \todo allocate and initialize to speed up 2D array indexing.
      */
@@ -47,17 +48,8 @@ public class ColorImageData extends ImageData {
      *  \returns nothing (ctor)
      */
     protected ColorImageData ( BufferedImage bi, int w, int h  ) {
-        mOriginalData = bi.getData().getPixels( 0, 0, w, h, (int[])null );
-        System.out.println( mOriginalData.length );
-        System.out.println( w*h );
-        System.out.println( bi.getType() );
-        assert bi.getType() == BufferedImage.TYPE_3BYTE_BGR;
-        if (bi.getType() != BufferedImage.TYPE_3BYTE_BGR) {
-            JOptionPane.showMessageDialog( null,
-                    "Warning: \n\nUnsupported image type: " + bi.getType() + ". \n ",
-                    "Warning", JOptionPane.WARNING_MESSAGE );
-        }
-        //BufferedImage.TYPE_BYTE_INDEXED
+        assert !RasterDecoder.isGray( bi );
+        mOriginalData = RasterDecoder.decode( bi );  //(any type; alpha is ignored)
         init( w, h );
     }
     //----------------------------------------------------------------------
@@ -69,58 +61,141 @@ public class ColorImageData extends ImageData {
      *  \returns nothing (ctor)
      */
     public ColorImageData ( int[] unpacked, int w, int h ) {
+        this( PixelBuffer.compact( unpacked ), w, h );
+    }
+    //----------------------------------------------------------------------
+    /** \brief This ctor constructs a ColorImageData object from a buffer
+     *  of rgb pixel values and the width and height of the image.
+     *  \param unpacked buffer of rgb values
+     *  \param w image width
+     *  \param h image height
+     *  \returns nothing (ctor)
+     */
+    public ColorImageData ( PixelBuffer unpacked, int w, int h ) {
         mOriginalData = unpacked;
         init( w, h );
     }
     //----------------------------------------------------------------------
+    /** \brief This function constructs a ColorImageData object that uses
+     *  (does not copy or scan) a buffer of rgb values.  mMin, mMax, and
+     *  mDisplayImage are not determined; the caller must do so (e.g.,
+     *  ImageLoader fills in the pixels via originalDataChanged() while
+     *  decoding, and clone() copies them from the other image).
+     *  \param pixels buffer of rgb values (shared copy on write)
+     *  \param w image width
+     *  \param h image height
+     *  \returns the image
+     */
+    static ColorImageData createShared ( PixelBuffer pixels, int w, int h ) {
+        ColorImageData  image = new ColorImageData();
+        image.mOriginalData = CowPixelBuffer.wrap( pixels );
+        image.mDisplayData  = image.mOriginalData.copy();
+        image.mW = w;
+        image.mH = h;
+        image.mIsColor = true;
+        image.newDisplayImage();
+        return image;
+    }
+    /** \brief used by createShared() */
+    private ColorImageData ( ) { }
+    //----------------------------------------------------------------------
     private void init ( int w, int h ) {
         mW = w;
         mH = h;
         mIsColor = true;
 
-        //determine the min and max values
-        mMin = mMax = mOriginalData[ 0 ];
-        if (mDisplayData == null)
-            mDisplayData = new int[ mOriginalData.length ];
-        for (int i=0; i<mOriginalData.length; i++) {
-            if (mOriginalData[i] < mMin)    mMin = mOriginalData[i];
-            if (mOriginalData[i] > mMax)    mMax = mOriginalData[i];
-            mDisplayData[i] = mOriginalData[i];
-        }
+        //determine the min and max values (band parallel for large images)
+        long  mm = minMax( mOriginalData );
+        mMin = Parallel.min( mm );
+        mMax = Parallel.max( mm );
+        //the display data start out as a (copy on write) copy of the original
+        mOriginalData = CowPixelBuffer.wrap( mOriginalData );
+        mDisplayData  = mOriginalData.copy();
 
-        if (mDisplayImage == null)
-            mDisplayImage = new BufferedImage( mW, mH, BufferedImage.TYPE_INT_RGB );
-        unpackedRGB2packedRGB( mDisplayData );
-        System.out.println( "min=" + mMin + ", max=" + mMax );
+        if (mDisplayImage == null)    newDisplayImage();
+        initWindowLevel();
+        refreshDisplay();
+        getHistogram();  //(in parallel) at load
+        buildStatistics();  //(in the background) for ROI statistics
+        System.out.println( "min=" + mMin + ", max=" + mMax
+                          + ", " + sizeInBytes() + " bytes" );
     }
     //----------------------------------------------------------------------
     /** \brief This function takes an unpacked int array of rgb pixel values
      *  and packs them into a single int and puts the packed value in the
      *  output array.  mDisplayImage is changed to these values as well.
-     *  \param unpacked unpacked int array of rgb values
+     *  \param unpacked unpacked buffer of rgb values
+     *  \returns nothing (void)
+     */
+    public void unpackedRGB2packedRGB ( PixelBuffer unpacked ) {
+        Parallel.forEachBand( mH, 3*mW, (y0, y1) -> unpackedRGB2packedRGB( unpacked, y0, y1 ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Same as above but only for rows [y0..y1).
+     *
+     *  The packed values are written directly into the pixels of
+     *  mDisplayImage (mPacked; see newDisplayImage()), so no temporary
+     *  array is created and no per pixel color model conversion (as in
+     *  setRGB) is performed.
+     *  \param unpacked unpacked buffer of rgb values
+     *  \param y0 first row
+     *  \param y1 one past the last row
      *  \returns nothing (void)
      */
-    public void unpackedRGB2packedRGB ( int[] unpacked ) {
+    public void unpackedRGB2packedRGB ( PixelBuffer unpacked, int y0, int y1 ) {
         assert unpacked != null;
         assert mIsColor;
-        assert unpacked.length == mW*mH*3;
+        assert unpacked.length() == mW*mH*3;
 
-        int[] packed = new int[ mW*mH ];
-        for (int i=0,j=0; i<packed.length; i++) {
-            int r = unpacked[j++];
-            int g = unpacked[j++];
-            int b = unpacked[j++];
+        final int[]  packed = mPacked;
+        //visit the contiguous runs (pages) of unpacked.  pages hold whole
+        // pixels (their size is a multiple of 3).
+        final DisplayLut  lut = (mLut == null || mLut.isIdentity()) ? null : mLut;
+        unpacked.forEachSegment( 3 * y0 * mW, 3 * y1 * mW, (buf, bufPos, pos, n) -> {
+            final int  from = pos / 3, to = (pos + n) / 3;
+            if (lut != null) {
+                //each sample is mapped through the window/level
+                for (int i=from,j=bufPos; i<to; i++,j+=3)
+                    packed[i] = (lut.map( buf.get(j) )<<16) | (lut.map( buf.get(j+1) )<<8) | lut.map( buf.get(j+2) );
+                return;
+            }
+            if (buf instanceof PixelBuffer.Bytes) {
+                //8-bit samples need not be clamped
+                byte[]  src = ((PixelBuffer.Bytes)buf).mData;
+                for (int i=from,j=bufPos; i<to; i++,j+=3)
+                    packed[i] = ((src[j]&0xff)<<16) | ((src[j+1]&0xff)<<8) | (src[j+2]&0xff);
+                return;
+            }
+            for (int i=from,j=bufPos; i<to; i++) {
+                int r = buf.get( j++ );
+                int g = buf.get( j++ );
+                int b = buf.get( j++ );
 
-            if (r < 0)      r = 0;
-            if (r > 255)    r = 255;
-            if (g < 0)      g = 0;
-            if (g > 255)    g = 255;
-            if (b < 0)      b = 0;
-            if (b > 255)    b = 255;
+                if (r < 0)      r = 0;
+                if (r > 255)    r = 255;
+                if (g < 0)      g = 0;
+                if (g > 255)    g = 255;
+                if (b < 0)      b = 0;
+                if (b > 255)    b = 255;
 
-            packed[i] = (r<<16) | (g<<8) | b;
-        }
-        mDisplayImage.setRGB( 0, 0, mW, mH, packed, 0, mW );
+                packed[i] = (r<<16) | (g<<8) | b;
+            }
+        } );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make mDisplayImage (TYPE_INT_RGB, mW x mH) and keep its
+     *  pixels in mPacked (see unpackedRGB2packedRGB()).  The array is taken
+     *  once; mDisplayImage is then unmanaged (see ImageData.mDisplayImage).
+     *  \returns nothing (void)
+     */
+    private void newDisplayImage ( ) {
+        mDisplayImage = new BufferedImage( mW, mH, BufferedImage.TYPE_INT_RGB );
+        mPacked = ((DataBufferInt)mDisplayImage.getRaster().getDataBuffer()).getData();
+    }
+    //----------------------------------------------------------------------
+    @Override
+    protected void refreshDisplayRows ( int y0, int y1 ) {
+        unpackedRGB2packedRGB( mDisplayData, y0, y1 );
     }
     //----------------------------------------------------------------------
     /** \brief Given a pixel's row and column location, this function
@@ -130,7 +205,7 @@ public class ColorImageData extends ImageData {
      */
     public int getRed ( int row, int col ) {
         int offset = 3 * (row*mW + col);
-        return mOriginalData[ offset ];
+        return mOriginalData.get( offset );
     }
     /** \brief Given a pixel's row and column location, this function
      *  \param row image row
@@ -139,7 +214,7 @@ public class ColorImageData extends ImageData {
      */
     public int getGreen ( int row, int col ) {
         int offset = 3 * (row*mW + col);
-        return mOriginalData[ offset+1 ];
+        return mOriginalData.get( offset+1 );
     }
     /** \brief Given a pixel's row and column location, this function
      *  \param row image row
@@ -148,7 +223,7 @@ public class ColorImageData extends ImageData {
      */
     public int getBlue ( int row, int col ) {
         int offset = 3 * (row*mW + col);
-        return mOriginalData[ offset+2 ];
+        return mOriginalData.get( offset+2 );
     }
 
 }
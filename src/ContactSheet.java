@@ -0,0 +1,556 @@
+/**
+    \file   ContactSheet.java
+    \brief  contains ContactSheet class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+//----------------------------------------------------------------------
+/** \brief a window that shows the thumbnails of all of the image files in
+ *  a directory (a contact sheet).  Double click a thumbnail to open the
+ *  image in a JImageViewer.
+ *
+ *  The thumbnails are made in parallel (BatchLoader.PARALLELISM at once)
+ *  in the background, those that are visible first.  A thumbnail is
+ *  the embedded (JFIF or EXIF) thumbnail of the file if it is large
+ *  enough and has the same shape as the image.  Otherwise the image is
+ *  decoded subsampled (see ImageData.loadRegion) and scaled down.  The
+ *  thumbnails are saved in the ThumbnailIndex, so when a directory is
+ *  shown again only the files that have changed are decoded.  Only
+ *  (about) RECENT thumbnails are kept in memory; the others are read
+ *  from the (memory mapped) index when they are drawn.
+ */
+public class ContactSheet extends JFrame {
+    /** extensions of the files that are shown */
+    public static final String[]  EXTENSIONS = {
+        "bmp", "gif", "jpeg", "jpg", "pgm", "png", "pnm", "ppm", "tif", "tiff" };
+    /** max number of thumbnails (that are also in the index) kept in memory */
+    public static final int  RECENT = 1024;
+
+    private static final byte  PENDING = 0;  ///< thumbnail is not made yet
+    private static final byte  CLAIMED = 1;  ///< thumbnail is being made
+    private static final byte  DONE    = 2;  ///< thumbnail is available
+    private static final byte  FAILED  = 3;  ///< file could not be read
+    private static final int   GAP     = 8;  ///< between thumbnails
+    private static final int   LABEL   = 16; ///< height of a file name
+
+    private final File            mDir;     ///< the directory
+    private final File[]          mFiles;   ///< the image files (sorted by name)
+    private final byte[]          mState;   ///< of each thumbnail (guarded by this)
+    private final ThumbnailIndex  mIndex;   ///< saved thumbnails
+    private final int             mSize;    ///< thumbnail size
+    private final int             mThreads; ///< max number of workers
+    private final ExecutorService  mPool;   ///< makes the thumbnails
+    private int                   mWorkers = 0;  ///< number of workers running (guarded by this)
+    private int                   mFirst   = 0;  ///< no PENDING thumbnails before this one (guarded by this)
+    private int                   mVisible0 = 0, mVisible1 = 0;  ///< visible thumbnails [mVisible0..mVisible1) (guarded by this)
+    private int                   mDone    = 0;  ///< number of thumbnails that are DONE or FAILED
+    private int                   mSelected = -1;  ///< selected thumbnail (if any)
+    private final Timer           mTimer   = new Timer();  ///< time to make all of the thumbnails
+    private volatile boolean      mClosed  = false;  ///< the window was closed
+    /** thumbnails that are not in the index (EDT only) */
+    private final HashMap< Integer, BufferedImage >  mKept = new HashMap<>();
+    /** the most recently drawn thumbnails (EDT only) */
+    private final LinkedHashMap< Integer, BufferedImage >  mRecent = new LinkedHashMap< Integer, BufferedImage >( 64, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry ( Map.Entry< Integer, BufferedImage > eldest ) {
+            return size() > RECENT;
+        }
+    };
+    private final Sheet           mSheet = new Sheet();  ///< draws the thumbnails
+    //----------------------------------------------------------------------
+    /** \brief the panel in which the thumbnails are drawn (as many per row
+     *  as fit in the width of the window).
+     */
+    private class Sheet extends JPanel implements Scrollable {
+        //------------------------------------------------------------------
+        /** \returns the width (and height w/out the name) of a cell */
+        int cellWidth ( ) {  return mSize + GAP;  }
+        /** \returns the height of a cell */
+        int cellHeight ( ) {  return mSize + GAP + LABEL;  }
+        /** \returns the number of cells per row */
+        int columns ( ) {  return Math.max( 1, getWidth() / cellWidth() );  }
+        //------------------------------------------------------------------
+        /** \returns the bounds of a cell
+         *  \param i index of the cell
+         */
+        Rectangle cellBounds ( int i ) {
+            int  c = columns();
+            return new Rectangle( (i % c) * cellWidth(), (i / c) * cellHeight(), cellWidth(), cellHeight() );
+        }
+        //------------------------------------------------------------------
+        /** \returns the index of the cell at a point (or -1 if none)
+         *  \param x x coordinate
+         *  \param y y coordinate
+         */
+        int cellAt ( int x, int y ) {
+            int  col = x / cellWidth();
+            int  i   = (y / cellHeight()) * columns() + col;
+            return (x < 0 || y < 0 || col >= columns() || i >= mFiles.length) ? -1 : i;
+        }
+        //------------------------------------------------------------------
+        /** \brief Draw the visible thumbnails.
+         *  \param g graphics context
+         *  \returns nothing (void)
+         */
+        @Override
+        protected void paintComponent ( Graphics g ) {
+            super.paintComponent( g );
+            Rectangle  clip = g.getClipBounds();
+            if (clip == null)    clip = new Rectangle( 0, 0, getWidth(), getHeight() );
+            int  c   = columns();
+            int  i0  = Math.max( 0, clip.y / cellHeight() * c );
+            int  i1  = Math.min( mFiles.length, ((clip.y + clip.height - 1) / cellHeight() + 1) * c );
+            Rectangle  view = getVisibleRect();
+            setVisibleCells( view.y / cellHeight() * c, ((view.y + view.height - 1) / cellHeight() + 1) * c );
+            FontMetrics  fm = g.getFontMetrics();
+            for (int i=i0; i<i1; i++) {
+                Rectangle  r = cellBounds( i );
+                if (!r.intersects( clip ))    continue;
+                int  x = r.x + GAP / 2, y = r.y + GAP / 2;
+                if (i == mSelected) {
+                    g.setColor( getBackground().darker() );
+                    g.fillRect( r.x, r.y, r.width, r.height );
+                }
+                BufferedImage  t = thumbnail( i );
+                if (t != null) {
+                    g.drawImage( t, x + (mSize - t.getWidth()) / 2, y + (mSize - t.getHeight()) / 2, null );
+                } else {
+                    g.setColor( Color.GRAY );
+                    g.drawRect( x, y, mSize - 1, mSize - 1 );
+                    if (state( i ) == FAILED) {
+                        g.drawLine( x, y, x + mSize - 1, y + mSize - 1 );
+                        g.drawLine( x, y + mSize - 1, x + mSize - 1, y );
+                    }
+                }
+                g.setColor( getForeground() );
+                String  name = mFiles[ i ].getName();
+                while (name.length() > 1 && fm.stringWidth( name ) > mSize)
+                    name = name.substring( 0, name.length() - 2 ) + "\u2026";
+                g.drawString( name, x + (mSize - fm.stringWidth( name )) / 2,
+                              y + mSize + fm.getAscent() );
+            }
+        }
+        //------------------------------------------------------------------
+        /** \returns the size needed for all of the thumbnails (at the
+         *  current width)
+         */
+        @Override
+        public Dimension getPreferredSize ( ) {
+            int  w = Math.max( getWidth(), cellWidth() );
+            int  c = Math.max( 1, w / cellWidth() );
+            return new Dimension( w, (mFiles.length + c - 1) / c * cellHeight() );
+        }
+        /** \returns the size of the window */
+        @Override
+        public Dimension getPreferredScrollableViewportSize ( ) {  return new Dimension( 800, 600 );  }
+        /** \returns scroll by a fraction of a row */
+        @Override
+        public int getScrollableUnitIncrement ( Rectangle r, int orientation, int direction ) {
+            return cellHeight() / 4;
+        }
+        /** \returns scroll by (about) a window */
+        @Override
+        public int getScrollableBlockIncrement ( Rectangle r, int orientation, int direction ) {
+            return Math.max( cellHeight(), r.height / cellHeight() * cellHeight() );
+        }
+        /** \returns true (the thumbnails are wrapped to the width) */
+        @Override
+        public boolean getScrollableTracksViewportWidth ( ) {  return true;  }
+        /** \returns false (the thumbnails scroll vertically) */
+        @Override
+        public boolean getScrollableTracksViewportHeight ( ) {  return false;  }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Shows the window and starts making the thumbnails
+     *  (in the background).
+     *  \param dir the directory
+     *  \returns nothing (ctor)
+     */
+    public ContactSheet ( File dir ) {
+        mDir     = dir;
+        mFiles   = listImages( dir );
+        mState   = new byte[ mFiles.length ];
+        mIndex   = ThumbnailIndex.shared();
+        mSize    = mIndex.getSize();
+        mThreads = Math.max( 1, Math.min( BatchLoader.PARALLELISM, mFiles.length ) );
+        mPool    = Executors.newFixedThreadPool( mThreads, r -> {
+            Thread  t = new Thread( r, "ContactSheet" );
+            t.setDaemon( true );
+            return t;
+        } );
+        setDefaultCloseOperation( WindowConstants.DISPOSE_ON_CLOSE );
+        setTitle( "JImageViewer: " + dir.getAbsolutePath() );
+        JScrollPane  jsp = new JScrollPane( mSheet, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+                                            JScrollPane.HORIZONTAL_SCROLLBAR_NEVER );
+        add( jsp );
+        mSheet.addMouseListener( new MouseAdapter() {
+            @Override
+            public void mouseClicked ( MouseEvent e ) {
+                int  i = mSheet.cellAt( e.getX(), e.getY() );
+                if (i != mSelected) {
+                    if (mSelected >= 0)    mSheet.repaint( mSheet.cellBounds( mSelected ) );
+                    mSelected = i;
+                    if (i >= 0)    mSheet.repaint( mSheet.cellBounds( i ) );
+                }
+                if (i >= 0 && e.getClickCount() == 2)
+                    new JImageViewer( mFiles[ i ].getAbsolutePath() );
+            }
+        } );
+        //the number of rows depends on the width
+        mSheet.addComponentListener( new ComponentAdapter() {
+            @Override
+            public void componentResized ( ComponentEvent e ) {  mSheet.revalidate();  }
+        } );
+        addWindowListener( new WindowAdapter() {
+            @Override
+            public void windowClosed ( WindowEvent e ) {
+                mClosed = true;
+                mPool.shutdownNow();
+            }
+        } );
+        pack();
+        setVisible( true );
+        System.out.println( "ContactSheet: " + mFiles.length + " image files in " + dir );
+        synchronized (this) {
+            for (int w=0; w<mThreads; w++)    startWorker();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the image files in a directory (sorted by name)
+     *  \param dir the directory
+     */
+    public static File[] listImages ( File dir ) {
+        File[]  files = dir.listFiles( f -> {
+            if (!f.isFile())    return false;
+            String  n = f.getName().toLowerCase();
+            for (String ext : EXTENSIONS)
+                if (n.endsWith( "." + ext ))    return true;
+            return false;
+        } );
+        if (files == null)    return new File[ 0 ];
+        Arrays.sort( files );
+        return files;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Start a worker (that makes thumbnails until there are no
+     *  more to make).  The caller must hold the lock on this.
+     *  \returns nothing (void)
+     */
+    private void startWorker ( ) {
+        if (mWorkers >= mThreads || mClosed)    return;
+        mWorkers++;
+        mPool.execute( this::work );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make thumbnails (those in the index are only checked) until
+     *  there are no more to make.
+     *  \returns nothing (void)
+     */
+    private void work ( ) {
+        for (int i; !mClosed && (i = claim()) >= 0; ) {
+            File  f = mFiles[ i ];
+            if (mIndex.contains( f )) {
+                finish( i, null, false, false );
+                continue;
+            }
+            long  length   = f.length();
+            long  modified = f.lastModified();
+            BufferedImage  t = null;
+            try {
+                t = makeThumbnail( f.getPath(), mSize );
+            } catch (RuntimeException e) {  //(marked FAILED below)
+                System.err.println( "ContactSheet:work: " + f + ": " + e );
+            }
+            boolean  saved = (t != null) && mIndex.put( f, length, modified, t );
+            finish( i, t, t != null && !saved, t == null );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Claim the next thumbnail to make (visible ones first).  The
+     *  worker that calls this stops if there is none.
+     *  \returns the index of the thumbnail (or -1 if there is none)
+     */
+    private synchronized int claim ( ) {
+        int  i = -1;
+        for (int j=mVisible0; j<mVisible1 && j<mState.length; j++)
+            if (mState[ j ] == PENDING) {  i = j;  break;  }
+        if (i < 0) {
+            while (mFirst < mState.length && mState[ mFirst ] != PENDING)    mFirst++;
+            if (mFirst < mState.length)    i = mFirst;
+        }
+        if (i < 0) {
+            mWorkers--;
+            return -1;
+        }
+        mState[ i ] = CLAIMED;
+        return i;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make a thumbnail available (on the EDT) and draw it.
+     *  \param i index of the thumbnail
+     *  \param t the thumbnail (null if it is in the index or if the file
+     *         could not be read)
+     *  \param keep true if t is not in the index (so it must be kept in
+     *         memory)
+     *  \param failed true if the file could not be read
+     *  \returns nothing (void)
+     */
+    private void finish ( final int i, final BufferedImage t, final boolean keep, final boolean failed ) {
+        SwingUtilities.invokeLater( () -> {
+            if (keep)                  mKept.put( i, t );
+            else if (t != null)        mRecent.put( i, t );
+            synchronized (this) {  mState[ i ] = failed ? FAILED : DONE;  }
+            mSheet.repaint( mSheet.cellBounds( i ) );
+            if (++mDone == mFiles.length || (mDone & 63) == 0)
+                setTitle( "JImageViewer: " + mDir.getAbsolutePath() + " (" + mDone + " of "
+                        + mFiles.length + " thumbnails)" );
+            if (mDone == mFiles.length)
+                System.out.println( "ContactSheet: " + mFiles.length + " thumbnails in "
+                                  + mTimer.getElapsedTimeNano() + " s; " + mIndex );
+        } );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the state of a thumbnail
+     *  \param i index of the thumbnail
+     */
+    private synchronized byte state ( int i ) {  return mState[ i ];  }
+    //----------------------------------------------------------------------
+    /** \brief Record the visible thumbnails (so that they are made first).
+     *  \param i0 first visible thumbnail
+     *  \param i1 one past the last visible thumbnail
+     *  \returns nothing (void)
+     */
+    private synchronized void setVisibleCells ( int i0, int i1 ) {
+        mVisible0 = Math.max( 0, i0 );
+        mVisible1 = Math.min( mState.length, i1 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get a thumbnail to draw (on the EDT).  If it is in the index
+     *  but was changed since it was made, it is made again.
+     *  \param i index of the thumbnail
+     *  \returns the thumbnail (or null if it is not available)
+     */
+    private BufferedImage thumbnail ( int i ) {
+        if (state( i ) != DONE)    return null;
+        BufferedImage  t = mKept.get( i );
+        if (t == null)    t = mRecent.get( i );
+        if (t == null) {
+            t = mIndex.get( mFiles[ i ] );
+            if (t != null) {
+                mRecent.put( i, t );
+            } else synchronized (this) {  //file changed
+                mState[ i ] = PENDING;
+                mFirst = Math.min( mFirst, i );
+                mDone--;
+                startWorker();
+            }
+        }
+        return t;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make the thumbnail of an image file.  This is the embedded
+     *  thumbnail of the file (if it is suitable) or else the image is
+     *  decoded subsampled (to about 2 to 4 times the size) and scaled down.
+     *  \param fileName name of input image file
+     *  \param size max width and height of the thumbnail
+     *  \returns the thumbnail (TYPE_BYTE_GRAY or TYPE_INT_RGB) or null if
+     *  the file could not be read
+     */
+    public static BufferedImage makeThumbnail ( String fileName, int size ) {
+        BufferedImage  t = embeddedThumbnail( fileName, size );
+        if (t == null) {
+            Rectangle  all = ImageData.imageSize( fileName );
+            if (all == null)    return null;
+            int  step = Math.max( 1, Math.max( all.width, all.height ) / (2 * size) );
+            ImageData  image = ImageData.loadRegion( fileName, null, step );
+            if (image == null || image.mDisplayImage == null)    return null;
+            t = image.mDisplayImage;
+        }
+        return scaleToFit( t, size );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the embedded thumbnail of an image file (the smallest
+     *  one that is at least size wide or high and has the same shape as
+     *  the image).  These are the thumbnails that an ImageReader reports
+     *  (e.g., JFIF thumbnails) and, for JPEG files, the EXIF thumbnail.
+     *  \param fileName name of input image file
+     *  \param size wanted width or height
+     *  \returns the thumbnail (or null if none is suitable)
+     */
+    public static BufferedImage embeddedThumbnail ( String fileName, int size ) {
+        try (ImageInputStream  in = ImageIO.createImageInputStream( new File( fileName ) )) {
+            Iterator< ImageReader >  it = (in == null) ? null : ImageIO.getImageReaders( in );
+            if (it == null || !it.hasNext())    return null;
+            ImageReader  reader = it.next();
+            try {
+                reader.setInput( in, false, false );
+                int  w = reader.getWidth( 0 ), h = reader.getHeight( 0 );
+                try {
+                    int  best = -1, bestSize = Integer.MAX_VALUE;
+                    for (int i=0; i<reader.getNumThumbnails( 0 ); i++) {
+                        int  tw = reader.getThumbnailWidth( 0, i ), th = reader.getThumbnailHeight( 0, i );
+                        if (Math.max( tw, th ) >= size && sameShape( tw, th, w, h ) && tw < bestSize) {
+                            best = i;
+                            bestSize = tw;
+                        }
+                    }
+                    if (best >= 0)    return reader.readThumbnail( 0, best );
+                } catch (IOException e) {
+                    //e.g., the JPEG reader does not accept an EXIF file w/out
+                    // a JFIF (APP0) segment
+                }
+                if (!"jpeg".equalsIgnoreCase( reader.getFormatName() ))    return null;
+                BufferedImage  t = exifThumbnail( fileName );
+                if (t != null && Math.max( t.getWidth(), t.getHeight() ) >= size
+                              && sameShape( t.getWidth(), t.getHeight(), w, h ))
+                    return t;
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns true if a thumbnail has the same aspect ratio as the image
+     *  (within a pixel), i.e., it is not padded or cropped
+     *  \param tw thumbnail width
+     *  \param th thumbnail height
+     *  \param w image width
+     *  \param h image height
+     */
+    private static boolean sameShape ( int tw, int th, int w, int h ) {
+        return Math.abs( (double)tw * h / w - th ) <= 1;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the (JPEG compressed) thumbnail in the EXIF (APP1)
+     *  segment of a JPEG file.  Only the segments before the image data
+     *  are read.
+     *  \param fileName name of input JPEG file
+     *  \returns the thumbnail (or null if there is none)
+     */
+    public static BufferedImage exifThumbnail ( String fileName ) throws IOException {
+        try (DataInputStream  in = new DataInputStream( new BufferedInputStream(
+                new FileInputStream( fileName ) ) )) {
+            if (in.readUnsignedShort() != 0xffd8)    return null;  //not JPEG
+            for (int segment=0; segment<32; segment++) {
+                int  marker = in.readUnsignedShort();
+                if ((marker & 0xff00) != 0xff00 || marker == 0xffda || marker == 0xffd9)
+                    return null;  //image data (or not a marker)
+                int  length = in.readUnsignedShort() - 2;
+                if (marker != 0xffe1 || length < 14) {
+                    in.skipNBytes( length );
+                    continue;
+                }
+                byte[]  s = new byte[ length ];
+                in.readFully( s );
+                if (s[0] != 'E' || s[1] != 'x' || s[2] != 'i' || s[3] != 'f' || s[4] != 0 || s[5] != 0)
+                    continue;
+                //TIFF header and IFD0, then IFD1 (the thumbnail)
+                ByteBuffer  tiff = ByteBuffer.wrap( s, 6, length - 6 ).slice();
+                tiff.order( s[6] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN );
+                int  ifd0 = tiff.getInt( 4 );
+                int  ifd1 = tiff.getInt( ifd0 + 2 + 12 * (tiff.getShort( ifd0 ) & 0xffff) );
+                if (ifd1 <= 0)    return null;
+                int  offset = -1, bytes = -1;
+                for (int e=0, n=tiff.getShort( ifd1 ) & 0xffff; e<n; e++) {
+                    int  entry = ifd1 + 2 + 12 * e;
+                    int  tag   = tiff.getShort( entry ) & 0xffff;
+                    if (tag == 0x0201)    offset = tiff.getInt( entry + 8 );  //JPEGInterchangeFormat
+                    if (tag == 0x0202)    bytes  = tiff.getInt( entry + 8 );  //JPEGInterchangeFormatLength
+                }
+                if (offset <= 0 || bytes <= 0 || offset + bytes > tiff.capacity())    return null;
+                return ImageIO.read( new ByteArrayInputStream( s, 6 + offset, bytes ) );
+            }
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println( "ContactSheet:exifThumbnail: " + fileName + ": " + e );
+        }
+        return null;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Scale an image down (if needed) so that its width and height
+     *  are at most size.  Each halving is bilinear (i.e., averages 2x2
+     *  pixels) so that the result is not aliased.
+     *  \param image the image
+     *  \param size max width and height
+     *  \returns the result (TYPE_BYTE_GRAY or TYPE_INT_RGB)
+     */
+    public static BufferedImage scaleToFit ( BufferedImage image, int size ) {
+        int  type = (image.getColorModel().getNumColorComponents() == 1) ? BufferedImage.TYPE_BYTE_GRAY
+                                                                        : BufferedImage.TYPE_INT_RGB;
+        int  w = image.getWidth(), h = image.getHeight();
+        if (image.getType() == type && w <= size && h <= size)    return image;
+        double  scale = Math.min( 1.0, (double)size / Math.max( w, h ) );
+        int  tw = Math.max( 1, (int)Math.round( w * scale ) );
+        int  th = Math.max( 1, (int)Math.round( h * scale ) );
+        do {
+            w = Math.max( tw, w / 2 );
+            h = Math.max( th, h / 2 );
+            BufferedImage  out = new BufferedImage( w, h, type );
+            Graphics2D     g   = out.createGraphics();
+            g.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+            g.drawImage( image, 0, 0, w, h, null );
+            g.dispose();
+            image = out;
+        } while (w > tw || h > th);
+        return image;
+    }
+
+}
+//----------------------------------------------------------------------
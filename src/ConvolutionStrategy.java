@@ -0,0 +1,232 @@
+/**
+    \file   ConvolutionStrategy.java
+    \brief  contains ConvolutionStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.Arrays;
+//----------------------------------------------------------------------
+/** \brief convolution w/ a separable kernel (a row kernel followed by a
+ *  column kernel), e.g., a Gaussian.
+ *
+ *  Each band of a color image is filtered separately, directly in the
+ *  interleaved (rgbrgb...) layout:  the neighbors of a sample are
+ *  samples-per-pixel entries apart, so no deinterleaved copies are made.
+ *  Each input row is filtered by the row kernel once (into a ring of
+ *  rows) and the column kernel is then applied to whole rows.  The inner
+ *  loops are simple loops over float arrays (one multiply-add per sample
+ *  per kernel entry) that the JIT compiler can vectorize.  Values beyond
+ *  the image borders are determined by a Border mode.
+ *  <br/>
+ *  The static methods are also used by the other filters (BoxFilterStrategy,
+ *  SobelStrategy).
+ */
+public class ConvolutionStrategy implements NeighborhoodStrategy {
+    /** \brief how values beyond the image borders are determined */
+    public enum Border {
+        CLAMP,   ///< the nearest border value (aaa|abc...)
+        MIRROR,  ///< the border is mirrored (cba|abc...)
+        ZERO     ///< 0
+    }
+
+    private final float[]  mRow;     ///< row (horizontal) kernel (odd length)
+    private final float[]  mCol;     ///< column (vertical) kernel (odd length)
+    private final Border   mBorder;  ///< border mode
+    private final boolean  mClamp;   ///< clamp results to the input range
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param row row (horizontal) kernel (odd length)
+     *  \param col column (vertical) kernel (odd length)
+     *  \param border border mode
+     *  \param clamp if true, results are clamped to the range of the input
+     *         (e.g., for smoothing); otherwise, the output range is that of
+     *         the kernel (e.g., for derivatives, which may be negative)
+     *  \returns nothing (ctor)
+     */
+    public ConvolutionStrategy ( float[] row, float[] col, Border border, boolean clamp ) {
+        if (row.length % 2 == 0 || col.length % 2 == 0)
+            throw new IllegalArgumentException( "ConvolutionStrategy: kernels must have odd lengths" );
+        mRow    = row.clone();
+        mCol    = col.clone();
+        mBorder = border;
+        mClamp  = clamp;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor for a symmetric smoothing filter (the same kernel for
+     *  rows and columns, clamped to the input range).
+     *  \param kernel the kernel (odd length)
+     *  \param border border mode
+     *  \returns nothing (ctor)
+     */
+    public ConvolutionStrategy ( float[] kernel, Border border ) {
+        this( kernel, kernel, border, true );
+    }
+    //----------------------------------------------------------------------
+    /** \returns a (sampled, normalized) Gaussian kernel of radius ceil(3*sigma)
+     *  \param sigma standard deviation (in pixels)
+     */
+    public static float[] gaussianKernel ( double sigma ) {
+        final int  r = Math.max( 1, (int)Math.ceil( 3 * sigma ) );
+        float[]  k = new float[ 2*r + 1 ];
+        double   sum = 0;
+        for (int i=-r; i<=r; i++)    sum += Math.exp( -i*i / (2*sigma*sigma) );
+        for (int i=-r; i<=r; i++)    k[ i+r ] = (float)(Math.exp( -i*i / (2*sigma*sigma) ) / sum);
+        return k;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int radius ( ) {  return mCol.length / 2;  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {
+        if (mBorder == Border.ZERO) {
+            min = Math.min( min, 0 );
+            max = Math.max( max, 0 );
+        }
+        if (mClamp)    return Parallel.pack( min, max );
+        //sums of the positive and negative entries of the 2D kernel
+        double  rp = 0, rn = 0, cp = 0, cn = 0;
+        for (float k : mRow) {  if (k > 0) rp += k;  else rn += k;  }
+        for (float k : mCol) {  if (k > 0) cp += k;  else cn += k;  }
+        double  pos = rp*cp + rn*cn, neg = rp*cn + rn*cp;
+        double  lo = Math.floor( pos*min + neg*max ), hi = Math.ceil( pos*max + neg*min );
+        return Parallel.pack( (int)Math.max( Integer.MIN_VALUE, lo ), (int)Math.min( Integer.MAX_VALUE, hi ) );
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                            int w, int h, int samples, int min, int max, int y0, int y1 )
+    {
+        final int  rowLength = w * samples;
+        final int  rx = mRow.length / 2, ry = mCol.length / 2, n = mCol.length;
+        final long range = range( min, max );
+        int[]      in    = new int[ (w + 2*rx) * samples ];  //padded input row
+        float[][]  ring  = new float[ n ][ rowLength ];      //rows filtered by mRow
+        float[]    acc   = new float[ rowLength ];
+        int[]      out   = new int[ rowLength ];
+        for (int r=y0-ry; r<y0+ry; r++)
+            filterRow( src, srcY0, r, h, w, samples, in, ring[ Math.floorMod(r, n) ] );
+        for (int y=y0; y<y1; y++) {
+            filterRow( src, srcY0, y+ry, h, w, samples, in, ring[ Math.floorMod(y+ry, n) ] );
+            Arrays.fill( acc, 0 );
+            for (int j=0; j<n; j++) {
+                final float    k   = mCol[ j ];
+                final float[]  row = ring[ Math.floorMod(y-ry+j, n) ];
+                if (k == 0)    continue;
+                for (int i=0; i<rowLength; i++)    acc[ i ] += k * row[ i ];
+            }
+            store( acc, out, Parallel.min(range), Parallel.max(range) );
+            dst.setRange( y * rowLength, out, 0, rowLength );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Read input row r (which may be beyond the borders) and
+     *  filter it w/ the row kernel.
+     *  \param in (padded) temporary row
+     *  \param out the filtered row
+     *  \returns nothing (void)
+     */
+    private void filterRow ( PixelBuffer src, int srcY0, int r, int h, int w, int samples,
+                             int[] in, float[] out )
+    {
+        final int  rx = mRow.length / 2;
+        readRow( src, srcY0, r, h, w, samples, rx, mBorder, in );
+        Arrays.fill( out, 0 );
+        for (int j=0; j<mRow.length; j++) {
+            final float  k = mRow[ j ];
+            final int    off = j * samples;
+            if (k == 0)    continue;
+            for (int i=0; i<out.length; i++)    out[ i ] += k * in[ i + off ];
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the index (in [0..n)) of the value at i (which may be
+     *  beyond the borders) or -1 if it is 0 (Border.ZERO)
+     *  \param i index
+     *  \param n number of values
+     *  \param border border mode
+     */
+    static int resolve ( int i, int n, Border border ) {
+        if (i >= 0 && i < n)    return i;
+        switch (border) {
+            case CLAMP:   return (i < 0) ? 0 : n-1;
+            case MIRROR:  i = Math.floorMod( i, 2*n );
+                          return (i < n) ? i : 2*n - 1 - i;
+            default:      return -1;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Read a row of samples into out, padded by pad pixels on each
+     *  side (according to the border mode).
+     *  \param src input samples of rows [srcY0..)
+     *  \param srcY0 first row in src
+     *  \param y row (which may be beyond the top or bottom border)
+     *  \param h image height
+     *  \param w image width
+     *  \param samples samples per pixel
+     *  \param pad number of pixels of padding (on each side)
+     *  \param border border mode
+     *  \param out (w + 2*pad) * samples values
+     *  \returns nothing (void)
+     */
+    static void readRow ( PixelBuffer src, int srcY0, int y, int h, int w, int samples,
+                          int pad, Border border, int[] out )
+    {
+        final int  r = resolve( y, h, border );
+        if (r < 0) {
+            Arrays.fill( out, 0 );
+            return;
+        }
+        src.getRange( (r - srcY0) * w * samples, out, pad * samples, w * samples );
+        for (int x=-pad; x<0; x++) {
+            int  c = resolve( x, w, border );
+            for (int b=0; b<samples; b++)
+                out[ (x+pad)*samples + b ] = (c < 0) ? 0 : out[ (c+pad)*samples + b ];
+        }
+        for (int x=w; x<w+pad; x++) {
+            int  c = resolve( x, w, border );
+            for (int b=0; b<samples; b++)
+                out[ (x+pad)*samples + b ] = (c < 0) ? 0 : out[ (c+pad)*samples + b ];
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Round acc to ints (clamped to [lo..hi]).
+     *  \returns nothing (void)
+     */
+    static void store ( float[] acc, int[] out, int lo, int hi ) {
+        for (int i=0; i<acc.length; i++)
+            out[ i ] = Math.max( lo, Math.min( hi, Math.round( acc[i] ) ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Round acc/scale to ints (clamped to [lo..hi]).
+     *  \returns nothing (void)
+     */
+    static void store ( double[] acc, double scale, int[] out, int lo, int hi ) {
+        for (int i=0; i<acc.length; i++)
+            out[ i ] = (int)Math.max( lo, Math.min( hi, Math.round( acc[i] / scale ) ) );
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,288 @@
+/**
+    \file   CowPixelBuffer.java
+    \brief  contains CowPixelBuffer class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+//----------------------------------------------------------------------
+/** \brief a copy on write pixel buffer.
+ *
+ *  The samples are split into pages of PAGE samples (a multiple of 3 so
+ *  that a color pixel never straddles pages).  copy() is cheap:  the new
+ *  buffer shares all of the pages (and each page's reference count is
+ *  incremented).  A shared page is only copied when it is first written,
+ *  so two buffers that differ in a few rows only need memory for those
+ *  rows.  copyFrom() between buffers that share pages does nothing for
+ *  those pages and adopts (shares) the pages that it completely covers.
+ *  <br/>
+ *  A buffer releases (decrements the count of) a page when it stops
+ *  using it:  when it copies the page (see writable()), when it adopts
+ *  another page in its place (see copyFrom()), and, since Java has no
+ *  destructors, when the buffer itself is garbage collected (see
+ *  CLEANER).  Until the collector gets to a discarded copy, the other
+ *  buffers still treat its pages as shared and copy (once) each one that
+ *  they write.  A page whose count is 1 belongs to exactly one buffer, so
+ *  band parallel passes may write it w/out locking.
+ *  <br/>
+ *  Initially (see wrap()) the pages are views of an ordinary (flat)
+ *  buffer, so wrapping does not copy anything either.
+ */
+public final class CowPixelBuffer extends PixelBuffer {
+    /** number of samples per page (64K pixels of color, 192K of gray) */
+    public static final int  PAGE = 3 * 64 * 1024;
+
+    /** \brief a (possibly shared) part of a flat buffer */
+    private static final class Page {
+        final PixelBuffer    mData;    ///< flat (Bytes, Shorts, or Ints) buffer
+        final int            mOffset;  ///< index of the page's first sample in mData
+        final AtomicInteger  mRefs = new AtomicInteger( 1 );  ///< number of buffers that use this page
+        Page ( PixelBuffer data, int offset ) {  mData = data;  mOffset = offset;  }
+    }
+
+    /** releases the pages of buffers that have been garbage collected */
+    private static final Cleaner  CLEANER = Cleaner.create();
+
+    /** the pages (an atomic array so that a page made writable by one
+     *  thread is seen by the others; see writable()) */
+    private final AtomicReferenceArray<Page>  mPages;
+    private final PixelBuffer  mKind;   ///< a flat buffer w/ the same backing (for min/max value)
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param length number of samples
+     *  \param pages the pages (not yet shared)
+     *  \param kind a flat buffer w/ the same backing
+     *  \returns nothing (ctor)
+     */
+    private CowPixelBuffer ( int length, AtomicReferenceArray<Page> pages, PixelBuffer kind ) {
+        super( length );
+        mPages = pages;
+        mKind  = kind;
+        //(the action must not refer to this buffer or it would never be
+        // collected)
+        CLEANER.register( this, () -> {
+            for (int p=0; p<pages.length(); p++)    pages.get( p ).mRefs.decrementAndGet();
+        } );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make a copy on write buffer whose pages are views of a flat
+     *  buffer (nothing is copied).  From now on, the flat buffer should
+     *  only be accessed via the returned buffer.  If buf is already a
+     *  CowPixelBuffer, a copy (that shares its pages) is returned.
+     *  \param buf the buffer
+     *  \returns the copy on write buffer
+     */
+    public static CowPixelBuffer wrap ( PixelBuffer buf ) {
+        if (buf instanceof CowPixelBuffer)    return (CowPixelBuffer)buf.copy();
+        final int  n = (buf.mLength + PAGE - 1) / PAGE;
+        AtomicReferenceArray<Page>  pages = new AtomicReferenceArray<>( n );
+        for (int p=0; p<n; p++)    pages.set( p, new Page( buf, p * PAGE ) );
+        return new CowPixelBuffer( buf.mLength, pages, buf );
+    }
+    //----------------------------------------------------------------------
+    @Override public int  get ( int i ) {
+        Page  pg = mPages.get( i / PAGE );
+        return pg.mData.get( pg.mOffset + i % PAGE );
+    }
+    @Override public void set ( int i, int v ) {
+        Page  pg = writable( i / PAGE );
+        pg.mData.set( pg.mOffset + i % PAGE, v );
+    }
+    @Override public int  minValue ( )        {  return mKind.minValue();  }
+    @Override public int  maxValue ( )        {  return mKind.maxValue();  }
+    @Override public int  bytesPerSample ( )  {  return mKind.bytesPerSample();  }
+    //----------------------------------------------------------------------
+    /** \returns a buffer that shares all of the pages of this one */
+    @Override public PixelBuffer copy ( ) {
+        AtomicReferenceArray<Page>  pages = new AtomicReferenceArray<>( mPages.length() );
+        for (int p=0; p<pages.length(); p++) {
+            Page  pg = mPages.get( p );
+            pg.mRefs.incrementAndGet();
+            pages.set( p, pg );
+        }
+        return new CowPixelBuffer( mLength, pages, mKind );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of bytes of this buffer's pages that are not
+     *  also pages of other
+     *  \param other another buffer (e.g., the original data of an image)
+     */
+    public long unsharedBytes ( CowPixelBuffer other ) {
+        long  n = 0;
+        for (int p=0; p<mPages.length(); p++) {
+            if (p < other.mPages.length() && other.mPages.get( p ) == mPages.get( p ))    continue;
+            n += (long)pageLength( p ) * bytesPerSample();
+        }
+        return n;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Find the samples that may differ from those of another
+     *  buffer:  pages that are shared w/ other are the same.
+     *  \param other another buffer (e.g., the previous original data)
+     *  \returns [from..to) packed into a long (see Parallel.pack()); empty
+     *  (from == to) if all of the pages are shared
+     */
+    public long changedRange ( CowPixelBuffer other ) {
+        if (other.mLength != mLength || other.mKind.getClass() != mKind.getClass())
+            return Parallel.pack( 0, mLength );
+        int  first = mPages.length(), last = -1;
+        for (int p=0; p<mPages.length(); p++) {
+            if (other.mPages.get( p ) == mPages.get( p ))    continue;
+            first = Math.min( first, p );
+            last  = p;
+        }
+        if (last < 0)    return Parallel.pack( 0, 0 );
+        return Parallel.pack( first * PAGE, Math.min( mLength, (last + 1) * PAGE ) );
+    }
+    //----------------------------------------------------------------------
+    @Override public void forEachSegment ( int from, int to, Segment s ) {
+        for (int pos=from; pos<to; ) {
+            int   p  = pos / PAGE;
+            int   n  = Math.min( to, (p+1) * PAGE ) - pos;
+            Page  pg = mPages.get( p );
+            s.run( pg.mData, pg.mOffset + pos - p * PAGE, pos, n );
+            pos += n;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Same as forEachSegment() but the pages are made writable
+     *  (copied if they are shared) first.
+     */
+    void forEachWritableSegment ( int from, int to, Segment s ) {
+        for (int pos=from; pos<to; ) {
+            int   p  = pos / PAGE;
+            int   n  = Math.min( to, (p+1) * PAGE ) - pos;
+            Page  pg = writable( p );
+            s.run( pg.mData, pg.mOffset + pos - p * PAGE, pos, n );
+            pos += n;
+        }
+    }
+    //----------------------------------------------------------------------
+    @Override public void setRange ( int pos, int[] src, int srcPos, int n ) {
+        forEachWritableSegment( pos, pos+n,
+                (buf, bufPos, p, m) -> buf.setRange( bufPos, src, srcPos + p - pos, m ) );
+    }
+    @Override public void getRange ( int pos, int[] dst, int dstPos, int n ) {
+        forEachSegment( pos, pos+n,
+                (buf, bufPos, p, m) -> buf.getRange( bufPos, dst, dstPos + p - pos, m ) );
+    }
+    @Override public void setUnsignedBytes ( int pos, byte[] src, int srcPos, int n ) {
+        forEachWritableSegment( pos, pos+n,
+                (buf, bufPos, p, m) -> buf.setUnsignedBytes( bufPos, src, srcPos + p - pos, m ) );
+    }
+    @Override public void setUnsignedShorts ( int pos, short[] src, int srcPos, int n ) {
+        forEachWritableSegment( pos, pos+n,
+                (buf, bufPos, p, m) -> buf.setUnsignedShorts( bufPos, src, srcPos + p - pos, m ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy samples [pos..pos+n) of other into this buffer.  Pages
+     *  that are already shared w/ other are skipped and pages of other
+     *  that are completely covered (and have the same backing) are
+     *  shared rather than copied.
+     */
+    @Override public void copyFrom ( PixelBuffer other, int pos, int n ) {
+        if (!(other instanceof CowPixelBuffer) || ((CowPixelBuffer)other).mKind.getClass() != mKind.getClass()) {
+            arraycopy( other, pos, this, pos, n );
+            return;
+        }
+        final CowPixelBuffer  o = (CowPixelBuffer)other;
+        for (int from=pos, to=pos+n; from<to; ) {
+            int  p = from / PAGE;
+            int  m = Math.min( to, (p+1) * PAGE ) - from;
+            if (o.mPages.get( p ) != mPages.get( p )) {
+                if (m == pageLength( p )) {
+                    synchronized (this) {
+                        Page  pg = o.mPages.get( p );
+                        pg.mRefs.incrementAndGet();
+                        mPages.getAndSet( p, pg ).mRefs.decrementAndGet();
+                    }
+                } else {
+                    arraycopy( other, from, this, from, m );
+                }
+            }
+            from += m;
+        }
+    }
+    //----------------------------------------------------------------------
+    @Override public long minMax ( int from, int to ) {
+        int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int pos=from; pos<to; ) {
+            int   p  = pos / PAGE;
+            int   n  = Math.min( to, (p+1) * PAGE ) - pos;
+            Page  pg = mPages.get( p );
+            int   off = pg.mOffset + pos - p * PAGE;
+            long  mm = pg.mData.minMax( off, off+n );
+            min = Math.min( min, Parallel.min( mm ) );
+            max = Math.max( max, Parallel.max( mm ) );
+            pos += n;
+        }
+        return Parallel.pack( min, max );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of samples in a page */
+    private int pageLength ( int p ) {  return Math.min( PAGE, mLength - p * PAGE );  }
+    //----------------------------------------------------------------------
+    /** \brief Make sure that page p belongs only to this buffer (by
+     *  copying it if it is shared).
+     *  <br/>
+     *  The fast path does not lock, so two races must be avoided:
+     *  <ul>
+     *  <li>While a thread copies page p, other buffers may release it.
+     *  Its count would then reach 1 and another thread of this buffer
+     *  could write the page in place, and that write would be missing
+     *  from the copy.  So the copying thread adds a (temporary) reference
+     *  to the page first.</li>
+     *  <li>A thread may read page p just before another thread replaces
+     *  it and releases it.  The old page can then have a count of 1 and
+     *  belong to another buffer.  The replacement is stored before the
+     *  old page is released, so reading the slot again after the count
+     *  tells whether pg is still ours.</li>
+     *  </ul>
+     *  \param p page number
+     *  \returns the page
+     */
+    private Page writable ( int p ) {
+        Page  pg = mPages.get( p );
+        if (pg.mRefs.get() == 1 && mPages.get( p ) == pg)    return pg;
+        synchronized (this) {
+            pg = mPages.get( p );
+            if (pg.mRefs.incrementAndGet() == 2) {  //only ours
+                pg.mRefs.decrementAndGet();
+                return pg;
+            }
+            final int  n = pageLength( p );
+            PixelBuffer  data = PixelBuffer.allocate( n, minValue(), maxValue() );
+            arraycopy( pg.mData, pg.mOffset, data, 0, n );
+            Page  copy = new Page( data, 0 );
+            mPages.set( p, copy );
+            pg.mRefs.addAndGet( -2 );  //ours and the temporary one (after the new page is visible)
+            return copy;
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,126 @@
+/**
+    \file   DisplayLut.java
+    \brief  contains DisplayLut class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief maps (raw) sample values to displayed gray values [0..255] for
+ *  a window (width) and level (center):  values <= level-window/2 are
+ *  black, values >= level+window/2 are white, and values in between are
+ *  linearly scaled.
+ *
+ *  The mapping is a lookup table of at most SIZE (64K) entries, so
+ *  changing the window/level only makes a new table (and the display is
+ *  then re-mapped through it); no statistics are recomputed.  A window
+ *  that spans more than SIZE values uses one entry per 2^n values.  A
+ *  DisplayLut is immutable, so it may be shared by the threads that
+ *  refresh the display.
+ */
+public final class DisplayLut {
+    /** max number of table entries */
+    public static final int  SIZE = 1 << 16;
+
+    private final double  mWindow;  ///< width of the window
+    private final double  mLevel;   ///< center of the window
+    private final int     mLo;      ///< values <= mLo map to table[0]
+    private final int     mHi;      ///< values >= mHi map to the last entry
+    private final int     mShift;   ///< entry = (value - mLo) >> mShift
+    private final byte[]  mTable;   ///< the gray values
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param window width of the window (at least 1)
+     *  \param level center of the window
+     *  \returns nothing (ctor)
+     */
+    public DisplayLut ( double window, double level ) {
+        mWindow = Math.max( 1, window );
+        mLevel  = level;
+        final double  lo = mLevel - mWindow / 2, hi = mLevel + mWindow / 2;
+        mLo = (int)Math.max( Integer.MIN_VALUE, Math.floor( lo ) );
+        mHi = (int)Math.min( Integer.MAX_VALUE, Math.ceil( hi ) );
+        final long  span = (long)mHi - mLo;
+        int  shift = 0;
+        while ((span >> shift) >= SIZE)    shift++;
+        mShift = shift;
+        mTable = new byte[ (int)(span >> shift) + 1 ];
+        for (int i=0; i<mTable.length; i++) {
+            double  v = mLo + ((long)i << shift);
+            long    g = Math.round( (v - lo) * 255 / (hi - lo) );
+            mTable[ i ] = (byte)Math.max( 0, Math.min( 255, g ) );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns a table for the range [min..max] (the full range is shown)
+     *  \param min smallest value (black)
+     *  \param max largest value (white)
+     */
+    public static DisplayLut forRange ( int min, int max ) {
+        return new DisplayLut( Math.max( 1, (double)max - min ), ((double)min + max) / 2 );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the width of the window */
+    public double getWindow ( )  {  return mWindow;  }
+    /** \returns the center of the window */
+    public double getLevel ( )   {  return mLevel;   }
+    //----------------------------------------------------------------------
+    /** \returns true if values in [0..255] map to themselves (so 8-bit
+     *  samples may be copied) */
+    public boolean isIdentity ( ) {
+        if (mLo != 0 || mHi != 255 || mShift != 0)    return false;
+        for (int i=0; i<256; i++) {
+            if ((mTable[ i ] & 0xff) != i)    return false;
+        }
+        return true;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the gray value [0..255] of a sample */
+    public int map ( int v ) {
+        final int  c = Math.max( mLo, Math.min( mHi, v ) );
+        return mTable[ (int)(((long)c - mLo) >>> mShift) ] & 0xff;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Map n samples of a flat buffer (starting at bufPos) to gray
+     *  values (out[outPos...]).
+     *  \returns nothing (void)
+     */
+    public void map ( PixelBuffer buf, int bufPos, byte[] out, int outPos, int n ) {
+        final byte[]  t = mTable;
+        final int     lo = mLo, hi = mHi;
+        if (buf instanceof PixelBuffer.Bytes && mShift == 0) {
+            final byte[]  s = ((PixelBuffer.Bytes)buf).mData;
+            for (int i=0; i<n; i++)
+                out[ outPos+i ] = t[ Math.max( lo, Math.min( hi, s[bufPos+i] & 0xff ) ) - lo ];
+        } else if (buf instanceof PixelBuffer.Shorts && mShift == 0) {
+            final short[]  s = ((PixelBuffer.Shorts)buf).mData;
+            for (int i=0; i<n; i++)
+                out[ outPos+i ] = t[ Math.max( lo, Math.min( hi, s[bufPos+i] & 0xffff ) ) - lo ];
+        } else {
+            for (int i=0; i<n; i++)    out[ outPos+i ] = (byte)map( buf.get( bufPos+i ) );
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,166 @@
+/**
+    \file   DistanceTransform.java
+    \brief  contains DistanceTransform class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.Arrays;
+//----------------------------------------------------------------------
+/** \brief exact Euclidean distance transform (EDT) of a binary image in
+ *  O(N) time.
+ *
+ *  Pixels whose values are greater than a threshold are foreground; the
+ *  others are background.  The result is, for each pixel, the distance to
+ *  the nearest background pixel (0 for background pixels).  The squared
+ *  distance is separable:  the first (column) phase determines the
+ *  distance to the nearest background pixel in the same column (a
+ *  forward and a backward pass over whole rows), and the second (row)
+ *  phase determines the lower envelope of the parabolas (x-q)^2 + g(q)^2
+ *  along each row.  Both phases are band parallel (the first over
+ *  strips of columns, the second over bands of rows).  If the image has
+ *  no background pixels, every distance is w+h.
+ *  <br/>
+ *  See P. Felzenszwalb and D. Huttenlocher, "Distance transforms of
+ *  sampled functions," Theory of Computing 8, 2012, and C. Maurer, R. Qi,
+ *  and V. Raghavan, "A linear time algorithm for computing exact
+ *  Euclidean distance transforms of binary images in arbitrary
+ *  dimensions," IEEE PAMI 25(2), 2003.
+ */
+public final class DistanceTransform {
+    /** \brief not used (only static methods) */
+    private DistanceTransform ( ) { }
+    //----------------------------------------------------------------------
+    /** \brief Determine the (rounded) Euclidean distance of each pixel to
+     *  the nearest background pixel.
+     *  \param in samples of a gray image
+     *  \param w image width
+     *  \param h image height
+     *  \param threshold values greater than this are foreground
+     *  \returns the distances (in the narrowest buffer that can hold them)
+     */
+    public static PixelBuffer euclidean ( PixelBuffer in, int w, int h, int threshold ) {
+        return compute( in, w, h, threshold, false );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the (exact) squared Euclidean distance of each pixel
+     *  to the nearest background pixel.
+     *  \param in samples of a gray image
+     *  \param w image width
+     *  \param h image height
+     *  \param threshold values greater than this are foreground
+     *  \returns the squared distances (32-bit ints; (w+h)^2 if there is
+     *  no background)
+     */
+    public static PixelBuffer squared ( PixelBuffer in, int w, int h, int threshold ) {
+        return compute( in, w, h, threshold, true );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Both phases.  The output buffer holds the column distances
+     *  (at most w+h) after the first phase and is overwritten row by row
+     *  by the second phase.
+     *  \returns the distances
+     */
+    private static PixelBuffer compute ( PixelBuffer in, int w, int h, int threshold,
+                                         boolean squared )
+    {
+        final int  none = w + h;  //column distance when a column has no background
+        if ((long)w * w + (long)h * h >= Integer.MAX_VALUE
+                || (squared && (long)none * none >= Integer.MAX_VALUE))
+            throw new IllegalArgumentException( "DistanceTransform: image too large" );
+        Timer  t = new Timer();
+        final long  none2 = (long)none * none;
+        final PixelBuffer  out = squared ? PixelBuffer.wrap( new int[ w*h ] )
+                                         : PixelBuffer.allocate( w*h, 0, none );
+        //column phase (over strips of columns)
+        Parallel.forEachBand( w, h, (x0, x1) -> {
+            final int  n = x1 - x0;
+            int[]  row = new int[ n ], g = new int[ n ];
+            Arrays.fill( g, none );
+            for (int y=0; y<h; y++) {  //down
+                in.getRange( y*w + x0, row, 0, n );
+                for (int i=0; i<n; i++)
+                    g[ i ] = (row[ i ] > threshold) ? Math.min( none, g[ i ] + 1 ) : 0;
+                out.setRange( y*w + x0, g, 0, n );
+            }
+            for (int y=h-2; y>=0; y--) {  //up
+                out.getRange( y*w + x0, row, 0, n );
+                for (int i=0; i<n; i++)    g[ i ] = Math.min( row[ i ], g[ i ] + 1 );
+                out.setRange( y*w + x0, g, 0, n );
+            }
+        } );
+        //row phase
+        Parallel.forEachBand( h, w, (y0, y1) -> {
+            int[]     g = new int[ w ], d = new int[ w ];
+            long[]    f = new long[ w ];        //g^2
+            int[]     v = new int[ w ];         //parabolas in the lower envelope
+            double[]  z = new double[ w + 1 ];  //boundaries between them
+            for (int y=y0; y<y1; y++) {
+                out.getRange( y*w, g, 0, w );
+                for (int q=0; q<w; q++)    f[ q ] = (long)g[ q ] * g[ q ];
+                envelope( f, w, v, z );
+                for (int x=0, k=0; x<w; x++) {
+                    while (z[ k+1 ] < x)    k++;
+                    final long  dx = x - v[ k ];
+                    //(no background at all:  every distance is none)
+                    final long  d2 = (f[ v[k] ] == none2) ? none2 : dx * dx + f[ v[k] ];
+                    d[ x ] = squared ? (int)d2 : (int)Math.min( none, Math.round( Math.sqrt( d2 ) ) );
+                }
+                out.setRange( y*w, d, 0, w );
+            }
+        } );
+        System.out.println( "DistanceTransform: " + w + "x" + h + " in " + t.getElapsedTimeNano() + " s" );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the lower envelope of the parabolas (x-q)^2 + f[q].
+     *  \param f the heights of the parabolas
+     *  \param n number of parabolas
+     *  \param v the parabolas in the envelope (in order)
+     *  \param z parabola v[k] is the lowest in [z[k]..z[k+1]]
+     *  \returns nothing (void)
+     */
+    private static void envelope ( long[] f, int n, int[] v, double[] z ) {
+        int  k = 0;
+        v[ 0 ] = 0;
+        z[ 0 ] = Double.NEGATIVE_INFINITY;
+        z[ 1 ] = Double.POSITIVE_INFINITY;
+        for (int q=1; q<n; q++) {
+            //intersection of the parabolas of q and v[k] (the last one)
+            double  s = intersect( f, q, v[k] );
+            while (s <= z[ k ])    s = intersect( f, q, v[ --k ] );
+            k++;
+            v[ k ]   = q;
+            z[ k ]   = s;
+            z[ k+1 ] = Double.POSITIVE_INFINITY;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the x where the parabolas of q and p (p < q) intersect */
+    private static double intersect ( long[] f, int q, int p ) {
+        return ((f[ q ] + (long)q*q) - (f[ p ] + (long)p*p)) / (2.0 * (q - p));
+    }
+
+}
+//----------------------------------------------------------------------
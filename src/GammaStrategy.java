@@ -0,0 +1,53 @@
+/**
+    \file   GammaStrategy.java
+    \brief  contains GammaStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief gamma correction:  values are normalized to [0..1] (using the
+ *  range of the image), raised to the power gamma, and mapped back.
+ */
+public class GammaStrategy implements PointStrategy {
+    private final double  mGamma;  ///< exponent
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param gamma exponent (< 1 brightens, > 1 darkens)
+     *  \returns nothing (ctor)
+     */
+    public GammaStrategy ( double gamma ) {  mGamma = gamma;  }
+    //----------------------------------------------------------------------
+    @Override
+    public int map ( int v, int min, int max ) {
+        if (max <= min)    return v;
+        double  f = Math.pow( (v - (double)min) / ((double)max - min), mGamma );
+        return (int)Math.round( min + f * ((double)max - min) );
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {  return Parallel.pack( min, max );  }
+
+}
+//----------------------------------------------------------------------
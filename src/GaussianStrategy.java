@@ -0,0 +1,77 @@
+/**
+    \file   GaussianStrategy.java
+    \brief  contains GaussianStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief Gaussian blur.  Small sigmas use a (sampled) separable Gaussian
+ *  kernel (ConvolutionStrategy).  Larger sigmas use 3 box filters
+ *  (BoxFilterStrategy), whose cost per pixel does not depend upon sigma.
+ */
+public class GaussianStrategy implements NeighborhoodStrategy {
+    /** sigmas larger than this use box filters */
+    public static final double  BOX_SIGMA = 2.0;
+
+    private final double                mSigma;  ///< standard deviation
+    private final NeighborhoodStrategy  mImpl;   ///< the filter that does the work
+    //----------------------------------------------------------------------
+    /** \brief Ctor (w/ Border.CLAMP).
+     *  \param sigma standard deviation (in pixels)
+     *  \returns nothing (ctor)
+     */
+    public GaussianStrategy ( double sigma ) {  this( sigma, ConvolutionStrategy.Border.CLAMP );  }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param sigma standard deviation (in pixels)
+     *  \param border border mode
+     *  \returns nothing (ctor)
+     */
+    public GaussianStrategy ( double sigma, ConvolutionStrategy.Border border ) {
+        mSigma = sigma;
+        if (sigma <= BOX_SIGMA)
+            mImpl = new ConvolutionStrategy( ConvolutionStrategy.gaussianKernel( sigma ), border );
+        else
+            mImpl = new BoxFilterStrategy( BoxFilterStrategy.gaussianRadii( sigma, 3 ), border );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the standard deviation */
+    public double getSigma ( ) {  return mSigma;  }
+    //----------------------------------------------------------------------
+    @Override
+    public int radius ( ) {  return mImpl.radius();  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {  return mImpl.range( min, max );  }
+    //----------------------------------------------------------------------
+    @Override
+    public void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                            int w, int h, int samples, int min, int max, int y0, int y1 )
+    {
+        mImpl.applyRows( src, srcY0, dst, w, h, samples, min, max, y0, y1 );
+    }
+
+}
+//----------------------------------------------------------------------
@@ -27,12 +27,13 @@
 //package jimageviewer;
 
 import java.awt.image.BufferedImage;
-import javax.swing.JOptionPane;
+import java.awt.image.DataBufferByte;
 //----------------------------------------------------------------------
 /** \brief class containing the actual pixel data for a gray image
  *  (one value per pixel)
  */
 public class GrayImageData extends ImageData {
+    private byte[]  mPacked;  ///< the pixels of mDisplayImage (see newDisplayImage())
     /** \brief Gray image data represented as a 2D array.
      *  \todo allocate and initialize to speed up 2D array indexing.
      */
@@ -47,7 +48,8 @@ public class GrayImageData extends ImageData {
      *  \returns nothing (ctor)
      */
     protected GrayImageData ( BufferedImage bi, int w, int h ) {
-        mOriginalData = bi.getData().getPixels( 0, 0, w, h, (int[])null );
+        assert RasterDecoder.isGray( bi );
+        mOriginalData = RasterDecoder.decode( bi );
         init( w, h );
     }
     //----------------------------------------------------------------------
@@ -59,10 +61,44 @@ public class GrayImageData extends ImageData {
      *  \returns nothing (ctor)
      */
     public GrayImageData ( int[] unpacked, int w, int h ) {
+        this( PixelBuffer.compact( unpacked ), w, h );
+    }
+    //----------------------------------------------------------------------
+    /** \brief This ctor constructs a GrayImageData object from a buffer
+     *  of gray pixel values and the width and height of the image.
+     *  \param unpacked gray values used to construct an instance of this class
+     *  \param w image width
+     *  \param h image height
+     *  \returns nothing (ctor)
+     */
+    public GrayImageData ( PixelBuffer unpacked, int w, int h ) {
         mOriginalData = unpacked;
         init( w, h );
     }
     //----------------------------------------------------------------------
+    /** \brief This function constructs a GrayImageData object that uses
+     *  (does not copy or scan) a buffer of gray values.  mMin, mMax, and
+     *  mDisplayImage are not determined; the caller must do so (e.g.,
+     *  ImageLoader fills in the pixels via originalDataChanged() while
+     *  decoding, and clone() copies them from the other image).
+     *  \param pixels buffer of gray values (shared copy on write)
+     *  \param w image width
+     *  \param h image height
+     *  \returns the image
+     */
+    static GrayImageData createShared ( PixelBuffer pixels, int w, int h ) {
+        GrayImageData  image = new GrayImageData();
+        image.mOriginalData = CowPixelBuffer.wrap( pixels );
+        image.mDisplayData  = image.mOriginalData.copy();
+        image.mW = w;
+        image.mH = h;
+        image.mIsColor = false;
+        image.newDisplayImage();
+        return image;
+    }
+    /** \brief used by createShared() */
+    private GrayImageData ( ) { }
+    //----------------------------------------------------------------------
     /**
      * this function copies the original data to the (unpacked) display data,
      * determines the min and max values,
@@ -74,44 +110,87 @@ public class GrayImageData extends ImageData {
         mH = h;
         mIsColor = false;
 
-        //determine the min and max values
-        mMin = mMax = mOriginalData[ 0 ];
-        if (mDisplayData == null)
-            mDisplayData = new int[ mOriginalData.length ];
-        for (int i=0; i<mOriginalData.length; i++) {
-            if (mOriginalData[i] < mMin)    mMin = mOriginalData[i];
-            if (mOriginalData[i] > mMax)    mMax = mOriginalData[i];
-            mDisplayData[i] = mOriginalData[i];
-        }
+        //determine the min and max values (band parallel for large images)
+        long  mm = minMax( mOriginalData );
+        mMin = Parallel.min( mm );
+        mMax = Parallel.max( mm );
+        //the display data start out as a (copy on write) copy of the original
+        mOriginalData = CowPixelBuffer.wrap( mOriginalData );
+        mDisplayData  = mOriginalData.copy();
 
-        if (mDisplayImage == null)
-            mDisplayImage = new BufferedImage( mW, mH, BufferedImage.TYPE_INT_RGB );
-        unpackedGray2packedRGB( mDisplayData );
-        System.out.println( "min=" + mMin + ", max=" + mMax );
+        if (mDisplayImage == null)    newDisplayImage();
+        initWindowLevel();
+        refreshDisplay();
+        getHistogram();  //(in parallel) at load
+        buildStatistics();  //(in the background) for ROI statistics
+        System.out.println( "min=" + mMin + ", max=" + mMax
+                          + ", " + sizeInBytes() + " bytes" );
     }
     //----------------------------------------------------------------------
     /** \brief This function converts the raw gray pixel data values <b>in
-     *  the specified unpacked array parameter</b> to rgb values and creates a
-     *  displayable image.  This is required because only color (rgb) images
-     *  can be displayed/drawn in a window.  The gray values in unpacked will
-     *  be converted to clamped rgb values.  This is required because each
-     *  individual r, g, or b component must be in the range of [0..255].
+     *  the specified unpacked array parameter</b> to displayable values in
+     *  mDisplayImage.  The gray values in unpacked will be mapped through
+     *  the window/level (mLut) or, if there is none, converted to clamped
+     *  values.  This is required because each displayed value must be in
+     *  the range of [0..255].
+     *  \param unpacked - unpacked gray input values
+     *  \returns nothing (void)
+     */
+    public void unpackedGray2packedRGB ( PixelBuffer unpacked ) {
+        Parallel.forEachBand( mH, mW, (y0, y1) -> unpackedGray2packedRGB( unpacked, y0, y1 ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Same as above but only for rows [y0..y1).
+     *
+     *  The clamped values are written directly into the pixels of
+     *  mDisplayImage (mPacked; see newDisplayImage()), so no temporary
+     *  array is created and no per pixel color model conversion (as in
+     *  setRGB) is performed.  8-bit data are simply copied (a page at a
+     *  time for a CowPixelBuffer).
      *  \param unpacked - unpacked gray input values
+     *  \param y0 first row
+     *  \param y1 one past the last row
      *  \returns nothing (void)
      */
-    public void unpackedGray2packedRGB ( int[] unpacked ) {
+    public void unpackedGray2packedRGB ( PixelBuffer unpacked, int y0, int y1 ) {
         assert unpacked != null;
         assert !mIsColor;
-        assert unpacked.length == mW*mH;
+        assert unpacked.length() == mW*mH;
 
-        int[] packed = new int[ unpacked.length ];
-        for (int i=0; i<unpacked.length; i++) {
-            int g = unpacked[i];
-            if (g < 0)      g = 0;
-            if (g > 255)    g = 255;
-            packed[i] = (g<<16) | (g<<8) | g;
-        }
-        mDisplayImage.setRGB( 0, 0, mW, mH, packed, 0, mW );
+        final byte[]  packed = mPacked;
+        final DisplayLut  lut = (mLut == null || mLut.isIdentity()) ? null : mLut;
+        //visit the contiguous runs (pages) of unpacked
+        unpacked.forEachSegment( y0 * mW, y1 * mW, (buf, bufPos, pos, n) -> {
+            if (lut != null) {
+                lut.map( buf, bufPos, packed, pos, n );
+                return;
+            }
+            if (buf instanceof PixelBuffer.Bytes) {
+                System.arraycopy( ((PixelBuffer.Bytes)buf).mData, bufPos, packed, pos, n );
+                return;
+            }
+            for (int i=0; i<n; i++) {
+                int g = buf.get( bufPos+i );
+                if (g < 0)      g = 0;
+                if (g > 255)    g = 255;
+                packed[pos+i] = (byte)g;
+            }
+        } );
+    }
+    //----------------------------------------------------------------------
+    @Override
+    protected void refreshDisplayRows ( int y0, int y1 ) {
+        unpackedGray2packedRGB( mDisplayData, y0, y1 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make mDisplayImage (TYPE_BYTE_GRAY, mW x mH) and keep its
+     *  pixels in mPacked (see unpackedGray2packedRGB()).  The array is taken
+     *  once; mDisplayImage is then unmanaged (see ImageData.mDisplayImage).
+     *  \returns nothing (void)
+     */
+    private void newDisplayImage ( ) {
+        mDisplayImage = new BufferedImage( mW, mH, BufferedImage.TYPE_BYTE_GRAY );
+        mPacked = ((DataBufferByte)mDisplayImage.getRaster().getDataBuffer()).getData();
     }
     //----------------------------------------------------------------------
     /** \brief Given a pixel's row and column location, this function
@@ -121,7 +200,26 @@ public class GrayImageData extends ImageData {
      */
     public int getGray ( int row, int col ) {
         int  offset = row*mW + col;
-        return mOriginalData[ offset ];
+        return mOriginalData.get( offset );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the exact Euclidean distance transform (see
+     *  DistanceTransform) of this (binary) image.  Pixels greater than
+     *  (mMin+mMax)/2 are foreground.
+     *  \returns a new image of the (rounded) distances
+     */
+    public GrayImageData distanceTransform ( ) {
+        return distanceTransform( (int)(((long)mMin + mMax) / 2) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the exact Euclidean distance transform (see
+     *  DistanceTransform) of this image.
+     *  \param threshold pixels greater than this are foreground
+     *  \returns a new image of the (rounded) distances to the nearest
+     *  background pixel
+     */
+    public GrayImageData distanceTransform ( int threshold ) {
+        return new GrayImageData( DistanceTransform.euclidean( mOriginalData, mW, mH, threshold ), mW, mH );
     }
 
 }
@@ -0,0 +1,150 @@
+/**
+    \file   Histogram.java
+    \brief  contains Histogram class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief a histogram of the samples of an image (all bands together).
+ *
+ *  8- and 16-bit samples have one bin per value (256 or 65536 bins, so
+ *  no min/max pass is needed).  Wider ranges are split into at most
+ *  MAX_BINS bins of 2^n values each.  of() builds the histogram in
+ *  parallel bands (each band counts into its own bins, which are then
+ *  added).  Rows may also be added incrementally (add()).
+ */
+public class Histogram {
+    /** max number of bins */
+    public static final int  MAX_BINS = 1 << 16;
+
+    private final int     mMin;    ///< smallest value that is counted
+    private final int     mMax;    ///< largest value that is counted
+    private final int     mShift;  ///< bin = (value - min) >> shift
+    private final long[]  mCounts; ///< the bins
+    private long          mTotal = 0;  ///< number of values counted
+    //----------------------------------------------------------------------
+    /** \brief Ctor (w/ all bins empty).
+     *  \param min smallest value that will be counted
+     *  \param max largest value that will be counted
+     *  \returns nothing (ctor)
+     */
+    public Histogram ( int min, int max ) {
+        mMin = min;
+        mMax = Math.max( min, max );
+        long  span = (long)mMax - mMin;
+        int   shift = 0;
+        while ((span >> shift) >= MAX_BINS)    shift++;
+        mShift  = shift;
+        mCounts = new long[ (int)(span >> shift) + 1 ];
+    }
+    //----------------------------------------------------------------------
+    /** \brief Build the histogram of an image buffer (in parallel bands).
+     *  \param buf the samples (e.g., mDisplayData)
+     *  \param rows number of rows in buf
+     *  \returns the histogram
+     */
+    public static Histogram of ( PixelBuffer buf, int rows ) {
+        final int  rowLength = buf.length() / Math.max( 1, rows );
+        int  min = buf.minValue(), max = buf.maxValue();
+        if ((long)max - min >= MAX_BINS) {
+            long  mm = Parallel.minMax( rows, rowLength,
+                    (y0, y1) -> buf.minMax( y0*rowLength, y1*rowLength ) );
+            min = Parallel.min( mm );
+            max = Parallel.max( mm );
+        }
+        final Histogram  h = new Histogram( min, max );
+        final int  lo = min, hi = max;
+        Parallel.forEachBand( rows, rowLength, (y0, y1) -> {
+            Histogram  band = new Histogram( lo, hi );
+            band.add( buf, y0*rowLength, y1*rowLength );
+            h.add( band );
+        } );
+        return h;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Count samples [from..to) of a buffer (values outside of
+     *  [getMin()..getMax()] are counted in the first or last bin).
+     *  \returns nothing (void)
+     */
+    public void add ( PixelBuffer buf, int from, int to ) {
+        final long[]  c = mCounts;
+        buf.forEachSegment( from, to, (b, bufPos, pos, n) -> {
+            if (b instanceof PixelBuffer.Bytes && mMin == 0 && mShift == 0 && c.length == 256) {
+                byte[]  d = ((PixelBuffer.Bytes)b).mData;
+                for (int i=0; i<n; i++)    c[ d[bufPos+i] & 0xff ]++;
+            } else if (b instanceof PixelBuffer.Shorts && mMin == 0 && mShift == 0 && c.length == 65536) {
+                short[]  d = ((PixelBuffer.Shorts)b).mData;
+                for (int i=0; i<n; i++)    c[ d[bufPos+i] & 0xffff ]++;
+            } else {
+                for (int i=0; i<n; i++)    c[ bin( b.get(bufPos+i) ) ]++;
+            }
+        } );
+        synchronized (this) {  mTotal += to - from;  }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Add the counts of another histogram (w/ the same range).
+     *  \returns nothing (void)
+     */
+    public synchronized void add ( Histogram other ) {
+        assert other.mMin == mMin && other.mCounts.length == mCounts.length;
+        for (int i=0; i<mCounts.length; i++)    mCounts[ i ] += other.mCounts[ i ];
+        mTotal += other.mTotal;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the bin of a value (clamped to the first or last bin) */
+    public int bin ( int v ) {
+        if (v <= mMin)    return 0;
+        if (v >= mMax)    return mCounts.length - 1;
+        return (int)(((long)v - mMin) >> mShift);
+    }
+    /** \returns the smallest value in a bin */
+    public int binValue ( int bin )  {  return (int)(mMin + ((long)bin << mShift));  }
+    /** \returns the number of bins */
+    public int getBins ( )           {  return mCounts.length;  }
+    /** \returns the number of values in a bin */
+    public long getCount ( int bin ) {  return mCounts[ bin ];  }
+    /** \returns the number of values counted */
+    public synchronized long getTotal ( )  {  return mTotal;  }
+    /** \returns the smallest value that is counted */
+    public int getMin ( )            {  return mMin;  }
+    /** \returns the largest value that is counted */
+    public int getMax ( )            {  return mMax;  }
+    //----------------------------------------------------------------------
+    /** \returns the smallest value v such that at least fraction p of the
+     *  values are <= v (to the resolution of a bin)
+     *  \param p fraction in [0..1] (e.g., 0.005 for the 0.5th percentile)
+     */
+    public synchronized int percentile ( double p ) {
+        final double  target = Math.max( 1, Math.ceil( p * mTotal ) );
+        long  sum = 0;
+        for (int i=0; i<mCounts.length; i++) {
+            sum += mCounts[ i ];
+            if (sum >= target)    return Math.min( mMax, binValue( i + 1 ) - 1 );
+        }
+        return mMax;
+    }
+
+}
+//----------------------------------------------------------------------
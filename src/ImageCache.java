@@ -0,0 +1,194 @@
+/**
+    \file   ImageCache.java
+    \brief  contains ImageCache class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+//----------------------------------------------------------------------
+/** \brief a process wide, least recently used (LRU) cache of decoded
+ *  images (shared by all windows) with a limit on the total number of
+ *  bytes.
+ *
+ *  The decoded (original) pixels of each image file are kept so that
+ *  opening the same file again does not decode it again.  An entry is
+ *  keyed by the canonical path of the file, its modification time, and
+ *  its size (so a file that has changed is decoded again).  The pixels
+ *  are shared (copy on write; see CowPixelBuffer) by the cache and
+ *  every ImageData made from them.  The default budget is 25%
+ *  of the max heap and may be changed with -Djimageviewer.imageCacheMB=n
+ *  (0 disables the cache).  Images that are tiled (TiledImageData) are
+ *  not cached (they are cheap to open).
+ */
+public class ImageCache {
+    /** \brief a cached, decoded image */
+    public static class Entry {
+        public final PixelBuffer  mPixels;   ///< original (decoded) samples
+        public final int          mW;        ///< image width
+        public final int          mH;        ///< image height
+        public final boolean      mIsColor;  ///< true if color, false if gray
+        public final int          mMin;      ///< min pixel value
+        public final int          mMax;      ///< max pixel value
+        Entry ( ImageData image ) {
+            mPixels  = image.mOriginalData.copy();  //shared until changed
+            mW       = image.mW;
+            mH       = image.mH;
+            mIsColor = image.mIsColor;
+            mMin     = image.mMin;
+            mMax     = image.mMax;
+        }
+        /** \returns the (approx.) number of bytes used by this entry */
+        public long sizeInBytes ( ) {  return 64 + mPixels.sizeInBytes();  }
+    }
+
+    private static ImageCache  sShared = null;  ///< created when first needed
+
+    private final LinkedHashMap< String, Entry >  mImages = new LinkedHashMap<>( 64, 0.75f, true );  ///< in LRU order
+    private long  mBudget;  ///< max number of bytes
+    private long  mBytes;   ///< current number of bytes
+    private long  mHits, mMisses;  ///< statistics
+    //----------------------------------------------------------------------
+    /** \brief Ctor w/ the default budget.
+     *  \returns nothing (ctor)
+     */
+    public ImageCache ( ) {
+        this( Long.getLong( "jimageviewer.imageCacheMB",
+                            Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024) ) * 1024 * 1024 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param budget max number of bytes
+     *  \returns nothing (ctor)
+     */
+    public ImageCache ( long budget ) {  mBudget = budget;  }
+    //----------------------------------------------------------------------
+    /** \returns the cache shared by all windows */
+    public static synchronized ImageCache shared ( ) {
+        if (sShared == null)    sShared = new ImageCache();
+        return sShared;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the key for a file (canonical path, modification time,
+     *  and size) or null if the file cannot be accessed
+     *  \param fileName name of image file
+     */
+    public static String key ( String fileName ) {
+        try {
+            File  f = new File( fileName ).getCanonicalFile();
+            if (!f.isFile())    return null;
+            return f.getPath() + "|" + f.lastModified() + "|" + f.length();
+        } catch (IOException e) {
+            System.err.println( "ImageCache:key: " + e );
+            return null;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make a new ImageData for a file from the cache.
+     *  \param fileName name of image file
+     *  \returns the image (or null if it is not cached)
+     */
+    public ImageData get ( String fileName ) {
+        String  k = key( fileName );
+        Entry   e;
+        synchronized (this) {
+            e = (k == null) ? null : mImages.get( k );
+            if (e == null)    mMisses++;
+            else              mHits++;
+        }
+        if (e == null)    return null;
+        //min and max are known so only the display data and image are made
+        ImageData  image = e.mIsColor ? ColorImageData.createShared( e.mPixels, e.mW, e.mH )
+                                      : GrayImageData.createShared(  e.mPixels, e.mW, e.mH );
+        image.mMin = e.mMin;
+        image.mMax = e.mMax;
+        image.initWindowLevel();
+        image.refreshDisplay();
+        image.buildStatistics();
+        return image;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Add a (completely loaded) image to the cache (evicting least
+     *  recently used images as needed).
+     *  \param fileName name of image file
+     *  \param image the image loaded from the file
+     *  \returns nothing (void)
+     */
+    public void put ( String fileName, ImageData image ) {
+        if (image == null || image instanceof TiledImageData || image.mIsAudio
+                          || image.mOriginalData == null)
+            return;
+        String  k = key( fileName );
+        if (k == null)    return;
+        Entry  e = new Entry( image );
+        synchronized (this) {
+            if (e.sizeInBytes() > mBudget)    return;  //would evict everything else
+            Entry  old = mImages.put( k, e );
+            if (old != null)    mBytes -= old.sizeInBytes();
+            mBytes += e.sizeInBytes();
+            evict();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Change the budget (evicting images as needed). */
+    public synchronized void setBudget ( long budget ) {
+        mBudget = budget;
+        evict();
+    }
+    /** \returns the budget (in bytes) */
+    public synchronized long getBudget ( ) {  return mBudget;  }
+    /** \returns the number of bytes currently cached */
+    public synchronized long getBytes  ( ) {  return mBytes;  }
+    /** \returns the number of times that get() found the image */
+    public synchronized long getHits   ( ) {  return mHits;  }
+    /** \returns the number of times that get() did not find the image */
+    public synchronized long getMisses ( ) {  return mMisses;  }
+    //----------------------------------------------------------------------
+    /** \brief Remove all images. */
+    public synchronized void clear ( ) {
+        mImages.clear();
+        mBytes = 0;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public synchronized String toString ( ) {
+        return "ImageCache: " + mImages.size() + " images, " + (mBytes >> 20) + "/"
+             + (mBudget >> 20) + " MB, hits=" + mHits + ", misses=" + mMisses;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Evict least recently used images until we are within budget. */
+    private void evict ( ) {
+        Iterator< Map.Entry<String,Entry> >  it = mImages.entrySet().iterator();
+        while (mBytes > mBudget && it.hasNext()) {
+            mBytes -= it.next().getValue().sizeInBytes();
+            it.remove();
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -27,10 +27,16 @@
  */
 //package jimageviewer;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 import javax.imageio.ImageIO;
-import javax.swing.JOptionPane;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 //----------------------------------------------------------------------
 /** \brief class containing the actual pixel data values (note that this
  *  class is abstract)
@@ -63,17 +69,34 @@ abstract public class ImageData {
       *  first pixel's red value, mImageData[1] is the first pixel's green
       *  value, mImageData[2] is the first pixel's blue value, mImageData[3]
       *  is the second pixel's red value, and so on.
+      *  <br/>
+      *  The samples are stored in the narrowest backing (byte, short, or
+      *  int) that can hold them (see PixelBuffer).
       */
-    protected int[]  mOriginalData;
+    protected PixelBuffer  mOriginalData;
 
     /** \brief Almost displayable ("almost" because it may be used to
      *  create a BufferedImage but only a BufferedImage may be actually
      *  drawn in a window) packed (each array element contains an rgb
      *  value) version of the above unpacked pixel data.
+     *  Processing results are written here (see widenDisplayData()).
      */
-    public int[]  mDisplayData;
+    public PixelBuffer  mDisplayData;
 
-    public BufferedImage  mDisplayImage  = null;  ///< \brief (possibly modified input) image drawn on screen
+    /** \brief (possibly modified input) image drawn on screen.
+     *  Subclasses write its pixel array directly, so Java2D does not
+     *  manage (cache in video memory) it.  It is drawn via mPyramid into
+     *  ImagePanel's VolatileImage layer, where only changed rows are redrawn.
+     */
+    public BufferedImage  mDisplayImage  = null;
+    protected ImagePyramid  mPyramid     = null;  ///< \brief tiled levels of mDisplayImage (made when first drawn)
+    /** \brief maps mDisplayData to the gray values of mDisplayImage (the
+     *  window/level); null to clamp to [0..255] */
+    protected volatile DisplayLut  mLut  = null;
+    private Histogram    mHistogram      = null;  ///< \brief of mHistogramOf (made when first needed)
+    private PixelBuffer  mHistogramOf    = null;  ///< \brief the buffer that mHistogram counts
+    private volatile SummedAreaTable  mStatistics = null;  ///< \brief ROI statistics of mOriginalData (made when first needed)
+    private final Object     mStatisticsLock = new Object();  ///< \brief guards mStatistics
     //----------------------------------------------------------------------
     /** \brief Given the name of an input image file, this method determine
      *  the type of image and then invokes the appropriate constructor.
@@ -84,25 +107,52 @@ abstract public class ImageData {
      *  \returns an instance of the ImageData class
      */
     public static ImageData load ( String fileName ) {
+        //was it loaded before?
+        ImageData  image = ImageCache.shared().get( fileName );
+        if (image != null)    return image;
+        image = decode( fileName );
+        ImageCache.shared().put( fileName, image );
+        return image;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Given the name of an input image file, this method decodes
+     *  it (w/out using ImageCache).
+     *  \param fileName name of input image file
+     *  \returns an instance of the ImageData class (or null on error)
+     */
+    static ImageData decode ( String fileName ) {
         //load the image
         String up = fileName.toUpperCase();
         if (up.endsWith(".PPM") || up.endsWith(".PNM") || up.endsWith(".PGM")) {
-            PNMHelper p = new PNMHelper( fileName );
-            if (p.mMin < 0) {
-                JOptionPane.showMessageDialog( null,
-                        "Warning: \n\nMin value of " + p.mMin + " is less than 0. \n ",
-                        "Warning", JOptionPane.WARNING_MESSAGE );
+            try {
+                PNMHelper hdr = PNMHelper.readHeader( fileName );
+                //images that are too large for memory are read on demand
+                if (TiledImageData.shouldTile( hdr ))
+                    return new TiledImageData( hdr, TiledImageData.sharedCache() );
+                //(a truncated or corrupt file throws rather than leaving
+                // part of the image 0)
+                PixelBuffer  pixels = PixelBuffer.allocate( hdr.mW * hdr.mH * hdr.mSamplesPerPixel,
+                                                            0, hdr.mMax );
+                hdr.readData( pixels, null );
+                warnRange( hdr.mMin, hdr.mMax );
+                if (hdr.mSamplesPerPixel == 1) {
+                    return new GrayImageData( pixels, hdr.mW, hdr.mH );
+                } else {
+                    assert hdr.mSamplesPerPixel == 3;
+                    return new ColorImageData( pixels, hdr.mW, hdr.mH );
+                }
+            } catch (IOException e) {
+                System.err.println( "ImageData:load: " + e );
+                return null;
             }
-            if (p.mMax > 255) {
-                JOptionPane.showMessageDialog( null,
-                        "Warning: \n\nMax value of " + p.mMax + " exceeds limit of 255. \n ",
-                        "Warning", JOptionPane.WARNING_MESSAGE );
-            }
-            if (p.mSamplesPerPixel == 1) {
-                return new GrayImageData( p.mData, p.mW, p.mH );
-            } else {
-                assert p.mSamplesPerPixel == 3;
-                return new ColorImageData( p.mData, p.mW, p.mH );
+        }
+
+        if (up.endsWith(".WAV")) {
+            try {
+                return AudioData.loadAudio( fileName );
+            } catch (IOException e) {
+                System.err.println( "ImageData:load: " + e );
+                return null;
             }
         }
 
@@ -114,15 +164,166 @@ abstract public class ImageData {
             System.err.println( "error reading file" );
         }
         assert bi != null;
+        return fromBufferedImage( bi );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Decode only a region of an image file, keeping every
+     *  step-th pixel in each direction (w/out using ImageCache).
+     *
+     *  PNM files are read by seeking in their binary data; other formats
+     *  use an ImageReader w/ setSourceRegion and setSourceSubsampling so
+     *  that the rest of the image is never decoded at full resolution.
+     *  The result is ceil(width/step) x ceil(height/step) of the region
+     *  (clamped to the image).
+     *  \param fileName name of input image file
+     *  \param region   region to decode (null for the whole image)
+     *  \param step     keep every step-th column and row (1 for all)
+     *  \returns an instance of the ImageData class (or null on error)
+     */
+    public static ImageData loadRegion ( String fileName, Rectangle region, int step ) {
+        assert step >= 1;
+        String up = fileName.toUpperCase();
+        try {
+            if (up.endsWith(".PPM") || up.endsWith(".PNM") || up.endsWith(".PGM")) {
+                PNMHelper    hdr  = PNMHelper.readHeader( fileName );
+                Rectangle    size = hdr.regionSize( region, step );
+                PixelBuffer  pixels = PixelBuffer.allocate(
+                    size.width * size.height * hdr.mSamplesPerPixel, 0, hdr.mMax );
+                hdr.readRegion( region, step, pixels );
+                if (hdr.mSamplesPerPixel == 1)
+                    return new GrayImageData( pixels, size.width, size.height );
+                assert hdr.mSamplesPerPixel == 3;
+                return new ColorImageData( pixels, size.width, size.height );
+            }
+
+            if (up.endsWith(".WAV"))    return decode( fileName );
+
+            ImageInputStream  in = ImageIO.createImageInputStream( new File( fileName ) );
+            if (in == null)    throw new IOException( "cannot open " + fileName );
+            try {
+                ImageReader  reader = findReader( in );
+                try {
+                    ImageReadParam  param = reader.getDefaultReadParam();
+                    Rectangle  all = new Rectangle( 0, 0, reader.getWidth( 0 ), reader.getHeight( 0 ) );
+                    param.setSourceRegion( (region == null) ? all : region.intersection( all ) );
+                    param.setSourceSubsampling( step, step, 0, 0 );
+                    return fromBufferedImage( reader.read( 0, param ) );
+                } finally {
+                    reader.dispose();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            System.err.println( "ImageData:loadRegion: " + e );
+            return null;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Decode a quick look at an image file whose width and height
+     *  are at most (about) maxSize (w/out using ImageCache).
+     *
+     *  The image is subsampled while it is decoded (see loadRegion) so
+     *  this is much faster than load() for large images.
+     *  \param fileName name of input image file
+     *  \param maxSize  largest width or height wanted
+     *  \returns an instance of the ImageData class (or null on error)
+     */
+    public static ImageData loadPreview ( String fileName, int maxSize ) {
+        if (fileName.toUpperCase().endsWith(".WAV"))    return decode( fileName );
+        Rectangle  all = imageSize( fileName );
+        if (all == null)    return null;
+        int  longest = Math.max( all.width, all.height );
+        int  step    = Math.max( 1, (longest + maxSize - 1) / maxSize );
+        return loadRegion( fileName, null, step );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the width and height of an image file (w/out
+     *  decoding its pixels).
+     *  \param fileName name of input image file
+     *  \returns the size (as a Rectangle at 0,0) or null on error
+     */
+    public static Rectangle imageSize ( String fileName ) {
+        String up = fileName.toUpperCase();
+        try {
+            if (up.endsWith(".PPM") || up.endsWith(".PNM") || up.endsWith(".PGM")) {
+                PNMHelper  hdr = PNMHelper.readHeader( fileName );
+                return new Rectangle( 0, 0, hdr.mW, hdr.mH );
+            }
+            if (up.endsWith(".WAV")) {
+                ImageData  audio = decode( fileName );
+                return (audio == null) ? null : new Rectangle( 0, 0, audio.mW, audio.mH );
+            }
+            ImageInputStream  in = ImageIO.createImageInputStream( new File( fileName ) );
+            if (in == null)    throw new IOException( "cannot open " + fileName );
+            try {
+                ImageReader  reader = findReader( in );
+                try {
+                    return new Rectangle( 0, 0, reader.getWidth( 0 ), reader.getHeight( 0 ) );
+                } finally {
+                    reader.dispose();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            System.err.println( "ImageData:imageSize: " + e );
+            return null;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Find an ImageReader for an image stream (and set its input).
+     *  \param in the image stream
+     *  \returns the reader (dispose() it when done)
+     */
+    private static ImageReader findReader ( ImageInputStream in ) throws IOException {
+        Iterator< ImageReader >  readers = ImageIO.getImageReaders( in );
+        if (!readers.hasNext())    throw new IOException( "unsupported image format" );
+        ImageReader  reader = readers.next();
+        reader.setInput( in, true, true );
+        return reader;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Start loading an image file in the background (so that the
+     *  caller, typically the Event Dispatch Thread, is not blocked).
+     *
+     *  The returned ImageLoader is a Future.  Use get() to wait for the
+     *  result, cancel() to stop the decode, and an ImageLoader.Client to
+     *  show progress and the rows of the image as they are decoded.
+     *  \param fileName name of input image file
+     *  \param client is notified (on the EDT) of progress (may be null)
+     *  \returns the (already started) loader
+     */
+    public static ImageLoader loadAsync ( String fileName, ImageLoader.Client client ) {
+        ImageLoader  loader = new ImageLoader( fileName, client );
+        loader.start();
+        return loader;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Tell the user about image values outside of [0..255].
+     *  Such images are displayed w/ a window/level (see DisplayLut) that
+     *  initially spans [min..max].
+     *  \param min min image value
+     *  \param max max image value
+     *  \returns nothing (void)
+     */
+    static void warnRange ( int min, int max ) {
+        if (min < 0 || max > 255) {
+            System.out.println( "ImageData: values in [" + min + ".." + max + "] are displayed"
+                              + " w/ window/level (right drag to adjust, A for auto contrast)." );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Construct the appropriate subclass of ImageData (gray or
+     *  color) for an image read by ImageIO.
+     *  \param bi the image
+     *  \returns an instance of the ImageData class
+     */
+    static ImageData fromBufferedImage ( BufferedImage bi ) {
         int w  = bi.getWidth();
         int h  = bi.getHeight();
-        if ( bi.getType() == BufferedImage.TYPE_USHORT_GRAY ||
-             bi.getType() == BufferedImage.TYPE_BYTE_GRAY   ||
-             bi.getType() == BufferedImage.TYPE_BYTE_BINARY ) {
-            return new GrayImageData( bi, w, h );
-        }
-        //otherwise, it must be color
-        //assert bi.getType() == BufferedImage.TYPE_INT_RGB;
+        //gray (incl. a palette of grays) or color (see RasterDecoder)
+        if (RasterDecoder.isGray( bi ))    return new GrayImageData( bi, w, h );
         return new ColorImageData( bi, w, h );
     }
     //----------------------------------------------------------------------
@@ -137,19 +338,54 @@ abstract public class ImageData {
      *            subclass of ImageData because ImageData is abstract)
      */
     static public ImageData clone ( ImageData other ) {
+        //the pixel data are copy on write (see CowPixelBuffer) so they are
+        // shared (not copied) until either image changes them.
+        ImageData copy;
         if (other instanceof GrayImageData) {
-            GrayImageData copy = new GrayImageData( other.mOriginalData, other.mW, other.mH );
-            copy.mIsAudio = other.mIsAudio;
-            copy.mRate = other.mRate;
-            return copy;
+            copy = GrayImageData.createShared( other.mOriginalData, other.mW, other.mH );
+        } else if (other instanceof ColorImageData) {
+            copy = ColorImageData.createShared( other.mOriginalData, other.mW, other.mH );
+        } else {
+            return null;
         }
-        if (other instanceof ColorImageData) {
-            ColorImageData copy = new ColorImageData( other.mOriginalData, other.mW, other.mH );
-            copy.mIsAudio = other.mIsAudio;
-            copy.mRate = other.mRate;
-            return copy;
+        copy.mMin = other.mMin;
+        copy.mMax = other.mMax;
+        copy.mLut = other.mLut;
+        copy.refreshDisplay();
+        copy.mIsAudio = other.mIsAudio;
+        copy.mRate = other.mRate;
+        return copy;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Given a pixel's row and column location and a band (0 for
+     *  gray; 0, 1, or 2 for red, green, or blue), this function
+     *  \param row image row
+     *  \param col image column
+     *  \param band sample within the pixel
+     *  \returns the sample's value.
+     */
+    public int getSample ( int row, int col, int band ) {
+        int  offset = (mIsColor ? 3 : 1) * (row*mW + col) + band;
+        return mOriginalData.get( offset );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Save the original image data to a pgm (gray) or ppm (color)
+     *  file.  The data are written directly from mOriginalData and the
+     *  known max is used, so no copy or extra pass over the data is needed.
+     *  \param fileName name of output image file
+     *  \param binary true for binary (P5/P6); false for ASCII (P2/P3)
+     *  \returns true if successful; false otherwise
+     */
+    public boolean save ( String fileName, boolean binary ) {
+        int  max = (mMax == mMin) ? Math.max( mMax, 255 ) : mMax;
+        try {
+            new PNMWriter().write( fileName, mOriginalData, mW, mH,
+                                   mIsColor ? 3 : 1, max, binary );
+        } catch (Exception e) {
+            System.err.println( "ImageData:save: " + e );
+            return false;
         }
-        return null;
+        return true;
     }
     //----------------------------------------------------------------------
     /** this function is NOT in the original start up app. it simply
@@ -161,13 +397,252 @@ abstract public class ImageData {
      * with any strategy: XStategy then makePermanent.
      */
     public void makePermanent ( ) {
-        this.mMax = this.mMin = this.mDisplayData[ 0 ];
-        for (int i = 0; i < this.mDisplayData.length; i++) {
-            int v = this.mDisplayData[ i ];
-            if (v < this.mMin) this.mMin = v;
-            if (v > this.mMax) this.mMax = v;
-            this.mOriginalData[ i ] = v;
+        long  mm = minMax( this.mDisplayData );
+        this.mMin = Parallel.min( mm );
+        this.mMax = Parallel.max( mm );
+        //the display data are copy on write, so this shares (rather than
+        // copies) them.  only the parts changed later are copied.
+        PixelBuffer  old = this.mOriginalData;
+        this.mOriginalData = this.mDisplayData.copy();
+        //only the rows whose pages are no longer shared w/ the old
+        // original data are summed again
+        synchronized (mStatisticsLock) {
+            if (mStatistics == null)    return;
+            long  r = Parallel.pack( 0, mOriginalData.length() );
+            if (old instanceof CowPixelBuffer && mOriginalData instanceof CowPixelBuffer)
+                r = ((CowPixelBuffer)mOriginalData).changedRange( (CowPixelBuffer)old );
+            final int  rowLength = mOriginalData.length() / mH;
+            mStatistics.update( mOriginalData, Parallel.min( r ) / rowLength,
+                                (Parallel.max( r ) + rowLength - 1) / rowLength );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the min and max of an image buffer (in parallel,
+     *  by row bands, for large images).
+     *  \param buf is mOriginalData or mDisplayData
+     *  \returns min and max packed into a long (see Parallel.pack())
+     */
+    protected long minMax ( PixelBuffer buf ) {
+        final int  rowLength = buf.length() / mH;
+        return Parallel.minMax( mH, rowLength,
+                (y0, y1) -> buf.minMax( y0*rowLength, y1*rowLength ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy src to dst (in parallel, by row bands, for large images).
+     *  \param src source (e.g., mOriginalData)
+     *  \param dst destination (whose values must fit)
+     *  \returns nothing (void)
+     */
+    protected void copy ( PixelBuffer src, PixelBuffer dst ) {
+        final int  rowLength = src.length() / mH;
+        Parallel.forEachBand( mH, rowLength,
+                (y0, y1) -> dst.copyFrom( src, y0*rowLength, (y1-y0)*rowLength ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Update mDisplayImage from mDisplayData (e.g., after a
+     *  Strategy has changed mDisplayData).
+     *  \returns nothing (void)
+     */
+    public void refreshDisplay ( ) {
+        Parallel.forEachBand( mH, mDisplayData.length() / mH, this::refreshDisplayRows );
+        if (mPyramid != null)    mPyramid.invalidate( 0, mH );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Update rows [y0..y1) of mDisplayImage from mDisplayData.
+     *  \param y0 first row
+     *  \param y1 one past the last row
+     *  \returns nothing (void)
+     */
+    public void refreshDisplay ( int y0, int y1 ) {
+        refreshDisplayRows( y0, y1 );
+        if (mPyramid != null)    mPyramid.invalidate( y0, y1 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Update rows [y0..y1) of mDisplayImage from mDisplayData.
+     *  The values are written directly into the image's DataBuffer.
+     *  \param y0 first row
+     *  \param y1 one past the last row
+     *  \returns nothing (void)
+     */
+    abstract protected void refreshDisplayRows ( int y0, int y1 );
+    //----------------------------------------------------------------------
+    /** \brief Rows [y0..y1) of mOriginalData have been filled in (e.g.,
+     *  by a decode that is still in progress).  They are copied to
+     *  mDisplayData and mDisplayImage.  This may be called from any thread.
+     *  \param y0 first row
+     *  \param y1 one past the last row
+     *  \returns nothing (void)
+     */
+    public void originalDataChanged ( int y0, int y1 ) {
+        final int  rowLength = mOriginalData.length() / mH;
+        mDisplayData.copyFrom( mOriginalData, y0*rowLength, (y1-y0)*rowLength );
+        refreshDisplay( y0, y1 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief All of mOriginalData has been filled in.  mMin and mMax are
+     *  recomputed.
+     *  \returns nothing (void)
+     */
+    public void originalDataLoaded ( ) {
+        long  mm = minMax( mOriginalData );
+        mMin = Parallel.min( mm );
+        mMax = Parallel.max( mm );
+        initWindowLevel();
+        if (mLut != null)    refreshDisplay();  //the rows were clamped while loading
+        getHistogram();
+        synchronized (mStatisticsLock) {  mStatistics = null;  }
+        buildStatistics();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Choose the initial window/level for [mMin..mMax]:  images
+     *  whose values are in [0..255] are displayed as is; others are scaled
+     *  so that mMin is black and mMax is white.  The display is not
+     *  refreshed.
+     *  \returns nothing (void)
+     */
+    protected void initWindowLevel ( ) {
+        mLut = (mMin >= 0 && mMax <= 255) ? null : DisplayLut.forRange( mMin, mMax );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Change the window/level.  Only the display image is re-mapped
+     *  (through a new lookup table); no statistics are recomputed.
+     *  \param window width of the window (values below level-window/2 are
+     *         black and above level+window/2 are white)
+     *  \param level center of the window
+     *  \returns nothing (void)
+     */
+    public void setWindowLevel ( double window, double level ) {
+        mLut = new DisplayLut( window, level );
+        refreshDisplay();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Restore the initial window/level (see initWindowLevel()).
+     *  \returns nothing (void)
+     */
+    public void resetWindowLevel ( ) {
+        initWindowLevel();
+        refreshDisplay();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Choose the window/level from the histogram so that the
+     *  darkest and brightest 0.5% of the displayed values are black and
+     *  white, respectively.
+     *  \returns nothing (void)
+     */
+    public void autoContrast ( ) {  autoContrast( 0.005 );  }
+    //----------------------------------------------------------------------
+    /** \brief Choose the window/level from the histogram.
+     *  \param fraction the darkest and brightest fraction of the
+     *         displayed values are black and white, respectively
+     *  \returns nothing (void)
+     */
+    public void autoContrast ( double fraction ) {
+        Histogram  h = getHistogram();
+        if (h == null)    return;
+        int  lo = h.percentile( fraction ), hi = h.percentile( 1 - fraction );
+        if (hi <= lo)    hi = lo + 1;
+        setWindowLevel( (double)hi - lo, ((double)lo + hi) / 2 );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the width of the window (see setWindowLevel()) */
+    public double getWindow ( ) {
+        DisplayLut  lut = mLut;
+        return (lut == null) ? 255 : lut.getWindow();
+    }
+    /** \returns the center of the window (see setWindowLevel()) */
+    public double getLevel ( ) {
+        DisplayLut  lut = mLut;
+        return (lut == null) ? 127.5 : lut.getLevel();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the histogram of mDisplayData.  It is built (in parallel)
+     *  when first needed and again when mDisplayData is replaced (e.g., by
+     *  a Pipeline).  Changing the window/level does not rebuild it.
+     *  \returns the histogram (or null if there are no display data)
+     */
+    public synchronized Histogram getHistogram ( ) {
+        if (mDisplayData == null)    return null;
+        if (mHistogram == null || mHistogramOf != mDisplayData) {
+            mHistogramOf = mDisplayData;
+            mHistogram   = Histogram.of( mDisplayData, mH );
+        }
+        return mHistogram;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the summed area tables of mOriginalData (for ROI
+     *  statistics).  They are built (in parallel) when first needed and
+     *  updated (only the changed rows) by makePermanent().
+     *  \returns the tables (or null if there are no original data)
+     */
+    public SummedAreaTable getStatistics ( ) {
+        synchronized (mStatisticsLock) {
+            if (mOriginalData == null)    return null;
+            if (mStatistics == null)
+                mStatistics = new SummedAreaTable( mOriginalData, mW, mH, mIsColor ? 3 : 1 );
+            return mStatistics;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the summed area tables of mOriginalData w/out waiting
+     *  (e.g., on the EDT) for them to be built.
+     *  \returns the tables or null if they are not built (yet); see
+     *  getStatistics()
+     */
+    public SummedAreaTable getStatisticsIfReady ( ) {  return mStatistics;  }
+    //----------------------------------------------------------------------
+    /** \brief Build the summed area tables in the background (so that
+     *  loading does not wait for them).
+     *  \returns nothing (void)
+     */
+    protected void buildStatistics ( ) {
+        ImageLoader.executor().execute( this::getStatistics );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the tiled, level of detail version of mDisplayImage that
+     *  is used to draw it.
+     *  \returns the pyramid (or null if there is no display image)
+     */
+    public ImagePyramid getPyramid ( ) {
+        if (mPyramid == null && mDisplayImage != null)
+            mPyramid = new ImagePyramid( mDisplayImage );
+        return mPyramid;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make sure that mDisplayData can hold values in [min..max].
+     *
+     *  mDisplayData starts out with the same (narrow) backing as
+     *  mOriginalData.  A Strategy whose results may fall outside of that
+     *  range (e.g., negative edge values) must call this first.  The
+     *  current display values are preserved.
+     *  \param min smallest value that will be stored
+     *  \param max largest value that will be stored
+     *  \returns nothing (void)
+     */
+    public void widenDisplayData ( int min, int max ) {
+        if (mDisplayData.canHold( min, max ))    return;
+        PixelBuffer  wider = PixelBuffer.allocate( mDisplayData.length(),
+                Math.min( min, mDisplayData.minValue() ),
+                Math.max( max, mDisplayData.maxValue() ) );
+        wider.copyFrom( mDisplayData );
+        mDisplayData = CowPixelBuffer.wrap( wider );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the (approx.) number of bytes of heap used by the pixel
+     *  data (original, display, and displayable image).
+     */
+    public long sizeInBytes ( ) {
+        long  n = 0;
+        if (mOriginalData != null)    n += mOriginalData.sizeInBytes();
+        if (mDisplayData instanceof CowPixelBuffer && mOriginalData instanceof CowPixelBuffer)
+            n += ((CowPixelBuffer)mDisplayData).unsharedBytes( (CowPixelBuffer)mOriginalData );
+        else if (mDisplayData != null && mDisplayData != mOriginalData)
+            n += mDisplayData.sizeInBytes();
+        if (mDisplayImage != null) {
+            DataBuffer  db = mDisplayImage.getRaster().getDataBuffer();
+            n += (long)db.getSize() * db.getNumBanks()
+               * DataBuffer.getDataTypeSize( db.getDataType() ) / 8;
         }
+        return n;
     }
 
 }
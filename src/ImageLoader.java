@@ -0,0 +1,277 @@
+/**
+    \file   ImageLoader.java
+    \brief  contains ImageLoader class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingWorker;
+//----------------------------------------------------------------------
+/** \brief loads an image file in the background (off of the Event
+ *  Dispatch Thread).  Use ImageData.loadAsync() to create one.
+ *
+ *  An ImageLoader is a Future<ImageData>: get() waits for the image and
+ *  cancel() stops the decode.  A Client is notified (on the EDT) as soon
+ *  as the image exists (for PNM images, before any pixels have been
+ *  decoded), as rows are decoded, and when loading is done.  Progress
+ *  (0..100) is also reported via the "progress" property.
+ *  <br/>
+ *  PNM images are decoded in bands of rows directly into the image (so
+ *  the first rows may be drawn while the rest are still being decoded).
+ *  Other formats are decoded by ImageIO (which reports progress but not
+ *  pixels) and the image appears when it is complete.
+ */
+public class ImageLoader extends SwingWorker< ImageData, int[] > {
+    /** \brief notified (on the EDT) of the progress of a load */
+    public interface Client {
+        /** \brief The image exists (but its pixels may not be decoded yet). */
+        void imageAvailable ( ImageLoader loader, ImageData image );
+        /** \brief Rows [y0..y1) of the image have been decoded. */
+        void rowsLoaded ( ImageLoader loader, int y0, int y1 );
+        /** \brief Loading is done (call get() for the result, which throws
+         *  if loading failed or was cancelled). */
+        void loadDone ( ImageLoader loader );
+    }
+
+    private static ExecutorService  sExecutor = null;  ///< created when first needed
+
+    private final String     mFileName;      ///< input image file name
+    private final Client     mClient;        ///< may be null
+    private volatile ImageData  mImage = null;   ///< partially loaded image
+    private boolean          mAnnounced = false;  ///< imageAvailable called (EDT only)
+    private volatile double  mSeconds = 0;   ///< time to load
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Call start() (or use ImageData.loadAsync()).
+     *  \param fileName name of input image file
+     *  \param client is notified of progress (may be null)
+     *  \returns nothing (ctor)
+     */
+    public ImageLoader ( String fileName, Client client ) {
+        mFileName = fileName;
+        mClient   = client;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the executor on which images are loaded (daemon threads,
+     *  so that a pending load does not keep the application alive)
+     */
+    public static synchronized ExecutorService executor ( ) {
+        if (sExecutor == null) {
+            sExecutor = Executors.newCachedThreadPool( r -> {
+                Thread  t = new Thread( r, "ImageLoader" );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+        return sExecutor;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Start loading (on executor()).
+     *  \returns nothing (void)
+     */
+    public void start ( ) {  executor().execute( this );  }
+    //----------------------------------------------------------------------
+    /** \returns the name of the file being loaded */
+    public String getFileName ( ) {  return mFileName;  }
+    //----------------------------------------------------------------------
+    /** \returns the image (which may still be loading) or null if it
+     *  does not exist yet
+     */
+    public ImageData getImage ( ) {  return mImage;  }
+    //----------------------------------------------------------------------
+    /** \returns the time (in seconds) that loading took, not counting
+     *  time spent waiting to start (0 until done) */
+    public double getElapsedTime ( ) {  return mSeconds;  }
+    //----------------------------------------------------------------------
+    /** \brief Load the image (on a background thread).
+     *  \returns the image
+     */
+    @Override
+    protected ImageData doInBackground ( ) throws Exception {
+        Timer  t = new Timer();  //time spent loading (not waiting to start)
+        try {
+            //was it loaded before?
+            ImageData  image = ImageCache.shared().get( mFileName );
+            if (image != null) {
+                announce( image );
+                publish( new int[]{ 0, image.mH } );
+                return image;
+            }
+            String up = mFileName.toUpperCase();
+            if (up.endsWith(".PPM") || up.endsWith(".PNM") || up.endsWith(".PGM"))
+                image = loadPNM();
+            else if (up.endsWith(".WAV"))
+                image = loadWAV();
+            else
+                image = loadImageIO();
+            ImageCache.shared().put( mFileName, image );
+            return image;
+        } finally {
+            mSeconds = t.getElapsedTimeNano();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Decode a PNM image directly into a (displayed) ImageData.
+     *  \returns the image
+     */
+    private ImageData loadPNM ( ) throws IOException {
+        PNMHelper  hdr = PNMHelper.readHeader( mFileName );
+        if (TiledImageData.shouldTile( hdr )) {
+            //only the header and an overview are read (on demand after that)
+            ImageData  image = new TiledImageData( hdr, TiledImageData.sharedCache() );
+            announce( image );
+            return image;
+        }
+        final int  length = hdr.mW * hdr.mH * hdr.mSamplesPerPixel;
+        PixelBuffer  pixels = PixelBuffer.allocate( length, 0, hdr.mMax );
+        final ImageData  image;
+        if (hdr.mSamplesPerPixel == 1)    image = GrayImageData.createShared(  pixels, hdr.mW, hdr.mH );
+        else                              image = ColorImageData.createShared( pixels, hdr.mW, hdr.mH );
+        announce( image );
+        //a truncated or corrupt file (or a value that does not fit in
+        // [0..max]) throws, so done() reports the failure and nothing is
+        // cached.  (cancel(true) interrupts us, which closes the channel.)
+        hdr.readData( pixels, (y0, y1) -> {
+            if (isCancelled())    return false;
+            image.originalDataChanged( y0, y1 );
+            publish( new int[]{ y0, y1 } );
+            setProgress( (int)(100L * y1 / hdr.mH) );
+            return true;
+        } );
+        image.originalDataLoaded();
+        return image;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Stream the samples of a wav file into an AudioData (which
+     *  is drawn as they are read).
+     *  \returns the audio data
+     */
+    private ImageData loadWAV ( ) throws IOException {
+        final AudioData  audio = AudioData.open( mFileName );
+        announce( audio );
+        audio.read( (f0, f1) -> {
+            if (isCancelled())    return false;
+            publish( new int[]{ 0, audio.mH } );
+            setProgress( (int)(100L * f1 / audio.mW) );
+            return true;
+        } );
+        if (isCancelled())    throw new InterruptedIOException( "ImageLoader: cancelled" );
+        return audio;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Decode an image via ImageIO (w/ progress).
+     *  \returns the image
+     */
+    private ImageData loadImageIO ( ) throws IOException {
+        try (ImageInputStream  in = ImageIO.createImageInputStream( new File(mFileName) )) {
+            if (in == null)    throw new IOException( "cannot open " + mFileName );
+            Iterator< ImageReader >  it = ImageIO.getImageReaders( in );
+            if (!it.hasNext())    throw new IOException( "unknown image format: " + mFileName );
+            final ImageReader  reader = it.next();
+            try {
+                reader.setInput( in, true, true );
+                reader.addIIOReadProgressListener( new ProgressListener() );
+                BufferedImage  bi = reader.read( 0 );
+                if (isCancelled())    throw new InterruptedIOException( "ImageLoader: cancelled" );
+                ImageData  image = ImageData.fromBufferedImage( bi );
+                announce( image );
+                publish( new int[]{ 0, image.mH } );
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make the (partially loaded) image available to the client.
+     *  \param image the image
+     *  \returns nothing (void)
+     */
+    private void announce ( ImageData image ) {
+        mImage = image;
+        publish( new int[]{ 0, 0 } );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Notify the client of decoded rows (on the EDT).
+     *  \param chunks row ranges [y0,y1) that have been decoded
+     *  \returns nothing (void)
+     */
+    @Override
+    protected void process ( List< int[] > chunks ) {
+        if (mClient == null || mImage == null)    return;
+        if (!mAnnounced) {
+            mAnnounced = true;
+            mClient.imageAvailable( this, mImage );
+        }
+        //coalesce the ranges
+        int  y0 = Integer.MAX_VALUE, y1 = Integer.MIN_VALUE;
+        for (int[] c : chunks) {
+            if (c[0] >= c[1])    continue;
+            y0 = Math.min( y0, c[0] );
+            y1 = Math.max( y1, c[1] );
+        }
+        if (y0 < y1)    mClient.rowsLoaded( this, y0, y1 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Notify the client that loading is done (on the EDT).
+     *  \returns nothing (void)
+     */
+    @Override
+    protected void done ( ) {
+        System.out.println( "ImageLoader: " + mFileName
+                + (isCancelled() ? " cancelled after " : " loaded in ")
+                + mSeconds + " seconds." );
+        if (mClient != null)    mClient.loadDone( this );
+    }
+
+    //======================================================================
+    /** \brief maps ImageIO progress to our progress (and cancels the read). */
+    private final class ProgressListener implements IIOReadProgressListener {
+        @Override public void imageProgress ( ImageReader source, float percentageDone ) {
+            if (isCancelled())    source.abort();
+            else                  setProgress( Math.max( 0, Math.min( 100, (int)percentageDone ) ) );
+        }
+        @Override public void sequenceStarted ( ImageReader source, int minIndex ) { }
+        @Override public void sequenceComplete ( ImageReader source ) { }
+        @Override public void imageStarted ( ImageReader source, int imageIndex ) { }
+        @Override public void imageComplete ( ImageReader source ) { }
+        @Override public void thumbnailStarted ( ImageReader source, int imageIndex, int thumbnailIndex ) { }
+        @Override public void thumbnailProgress ( ImageReader source, float percentageDone ) { }
+        @Override public void thumbnailComplete ( ImageReader source ) { }
+        @Override public void readAborted ( ImageReader source ) { }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -29,19 +29,56 @@
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.VolatileImage;
 
 import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
 //----------------------------------------------------------------------
 /** \brief class used to display an image (ImageData) in a JImageViewer
  *
+ *  Dragging w/ the right mouse button changes the window (horizontally)
+ *  and level (vertically) of the image.  Only the display is re-mapped
+ *  (see ImageData.setWindowLevel()), at most once per batch of drag
+ *  events.  Dragging w/ the left mouse button selects a rectangular
+ *  region of interest (ROI) whose statistics are displayed (see
+ *  SummedAreaTable).  The value of the pixel under the mouse is displayed
+ *  w/ its position.
+ *  <br/>
+ *  The text is drawn by the window's OverlayPanel, so moving the mouse
+ *  only repaints the text's old and new bounds.  The visible part of the
+ *  image is cached (at the current zoom) in a VolatileImage; a repaint
+ *  just copies the cache.  Only the strips exposed by scrolling and the
+ *  rows that have changed (see ImagePyramid.takeChangedRows()) are drawn
+ *  into the cache again.
+ *  <br/>
+ *  The mouse wheel (and +, -, and 0 in the JImageViewer) zooms about the
+ *  mouse position, and dragging w/ the middle mouse button (or w/ the
+ *  left button while Shift is down) pans.  While zooming or scrolling,
+ *  the image is drawn w/ nearest neighbor interpolation; once that has
+ *  stopped for SETTLE_MS, it is drawn again w/ mRH (whose scaled tiles
+ *  are kept by the ImagePyramid, so later paints at the same zoom do not
+ *  resample them).
+ *  <br/>
  *  Note:  To replace all extraneous ^M's use :%s/^M$//g in vi.
  *  BE SURE YOU MAKE the ^M USING "CTRL-V CTRL-M" NOT BY TYPING "CARROT M"!
  */
-class ImagePanel extends JPanel implements MouseMotionListener {
+class ImagePanel extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
+    /** min and max zoom */
+    public static final double  MIN_ZOOM = 1.0 / 64, MAX_ZOOM = 64;
+    /** zoom factor for one step of the mouse wheel (or + or -) */
+    public static final double  ZOOM_STEP = Math.pow( 2, 0.25 );
+    /** time (in ms) after the last zoom or scroll before mRH is used */
+    public static final int     SETTLE_MS = 250;
 
     JImageViewer     mParent;                  ///< reference to JImageViewer in which this ImagePanel appears
     private boolean  mMouseMoveValid = false;  ///< is mouse (x,y) below valid?
@@ -55,7 +92,26 @@ class ImagePanel extends JPanel implements MouseMotionListener {
      *   VALUE_INTERPOLATION_BILINEAR
      *   VALUE_INTERPOLATION_BICUBIC
      */
-    public  Object   mRH = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+    public  Object   mRH = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+    private boolean  mWindowLevelDrag = false; ///< is the right button down?
+    private int      mDragX, mDragY;           ///< where the right button was pressed
+    private double   mDragWindow, mDragLevel;  ///< window/level when the right button was pressed
+    private double   mNewWindow, mNewLevel;    ///< window/level to apply
+    private boolean  mRemapPending = false;    ///< has a re-map been scheduled?
+    private boolean  mRoiDrag = false;         ///< is the left button down?
+    private int      mRoiX, mRoiY;             ///< where the left button was pressed (image coordinates)
+    private Rectangle  mRoi = null;            ///< ROI (image coordinates) or null
+    private String[]   mRoiText = null;        ///< statistics of mRoi (one line per band)
+    private boolean    mRoiWaiting = false;    ///< waiting (in the background) for the statistics?
+    private VolatileImage  mCache = null;      ///< image layer of mCacheView (at mCacheZoom)
+    private Rectangle      mCacheView = null;  ///< visible rect (panel coordinates) in mCache
+    private double         mCacheZoom;         ///< zoom of mCache
+    private ImagePyramid   mCachePyramid = null;  ///< pyramid drawn in mCache
+    private Object         mCacheHint = null;  ///< interpolation of (all of) mCache; null if mixed
+    private boolean  mInteracting = false;     ///< zooming or scrolling (draw w/ nearest neighbor)
+    private final javax.swing.Timer  mSettle;  ///< ends mInteracting
+    private boolean  mPanDrag = false;         ///< is the image being panned?
+    private Point    mPanMouse, mPanView;      ///< mouse (screen) and view position when panning started
     //----------------------------------------------------------------------
     /** \brief Ctor.
      *  \param p refers to JImageViewer in which this ImagePanel appears
@@ -64,7 +120,14 @@ class ImagePanel extends JPanel implements MouseMotionListener {
     ImagePanel ( JImageViewer p ) {
         mParent = p;
         setDoubleBuffered( true );
+        addMouseListener( this );
         addMouseMotionListener( this );
+        addMouseWheelListener( this );
+        mSettle = new javax.swing.Timer( SETTLE_MS, e -> {
+            mInteracting = false;
+            repaint();
+        } );
+        mSettle.setRepeats( false );
     }
     //----------------------------------------------------------------------
     /** \brief Simply call paint.
@@ -78,48 +141,280 @@ class ImagePanel extends JPanel implements MouseMotionListener {
     //----------------------------------------------------------------------
     /** \brief Redraw the panel contents.
      *
-     *  To avoid flicker (when rapidly redrawing), we will draw everything
-     *  into a single image and then draw only that image to the panel.
-     *  This is called double buffering.
+     *  The visible part of the image is drawn from a cache (see
+     *  updateCache()), so a repaint of a small area (e.g., under the text
+     *  drawn by the OverlayPanel) only copies that area of the cache.
      *  \param g graphics context
      *  \returns nothing (void)
      */
     @Override
     public void paint ( Graphics g ) {
         Graphics2D g2 = (Graphics2D) g;
-        RenderingHints rh = new RenderingHints( RenderingHints.KEY_INTERPOLATION, mRH );
-        //if the size of the panel has changed, we need a new doublebuffer of
-        // the correct size
         Dimension  d = getSize();
-        //if ( mDoubleBuffer==null || mDoubleBuffer.getWidth(null)!=d.width
-        //  || mDoubleBuffer.getHeight(null)!=d.height ) {
-        //    mDoubleBuffer = createImage( d.width, d.height );
-        //}
+        Rectangle  clip = g.getClipBounds();
+        if (clip == null)    clip = new Rectangle( 0, 0, d.width, d.height );
 
-        //draw into the doublebuffer
-        //Graphics  dbg = mDoubleBuffer.getGraphics();
-        Graphics  dbg = g;
-        dbg.setColor( Color.DARK_GRAY );
-        dbg.fillRect( 0, 0, d.width, d.height );
-        if (mParent.mImage!=null && mParent.mImage.mDisplayImage!=null) {
-            dbg.drawImage( mParent.mImage.mDisplayImage, 0, 0,
-                    (int)(mParent.mImage.mW * mZoom + 0.5),
-                    (int)(mParent.mImage.mH * mZoom + 0.5), null );
+        ImagePyramid  pyramid = (mParent.mImage == null) ? null : mParent.mImage.getPyramid();
+        if (pyramid == null) {
+            mCache = null;
+            g.setColor( Color.DARK_GRAY );
+            g.fillRect( clip.x, clip.y, clip.width, clip.height );
+        } else {
+            final Rectangle  view = getVisibleRect();
+            do {
+                if (view.isEmpty() || !updateCache( view, pyramid )) {
+                    //no cache (e.g., not displayable yet)
+                    render( g2, clip, pyramid, quality() );
+                    break;
+                }
+                g.drawImage( mCache, view.x, view.y, null );
+            } while (mCache.contentsLost());
         }
 
-        if (mMouseMoveValid) {
-            //we must add offset when scrolled.
-            int xOff = mParent.mJsp.getViewport().getViewPosition().x;
-            int yOff = mParent.mJsp.getViewport().getViewPosition().y;
-            //report position
-            dbg.setColor( Color.BLACK );
-            dbg.drawString( "(" + mMouseX + "," + mMouseY + ")", 20+xOff, 40+yOff );
-            dbg.setColor( Color.WHITE );
-            dbg.drawString( "(" + mMouseX + "," + mMouseY + ")", 21+xOff, 41+yOff );
+        if (mRoi != null) {
+            Rectangle  r = roiBounds();
+            g.setColor( Color.YELLOW );
+            g.drawRect( r.x, r.y, r.width-1, r.height-1 );
         }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make sure that mCache holds the image layer of the visible
+     *  rect.  The cache is drawn again completely only if it is new (or
+     *  was lost), or the zoom or image has changed.  Otherwise, what is
+     *  still visible after scrolling is moved and only the exposed strips
+     *  and changed rows are drawn.
+     *  \param view visible rect (panel coordinates)
+     *  \param pyramid the image
+     *  \returns true if successful; false if there is no cache
+     */
+    private boolean updateCache ( Rectangle view, ImagePyramid pyramid ) {
+        boolean  all = false;
+        if (mCache == null || mCache.getWidth() != view.width || mCache.getHeight() != view.height) {
+            mCache = createVolatileImage( view.width, view.height );
+            if (mCache == null)    return false;
+            all = true;
+        }
+        int  v = mCache.validate( getGraphicsConfiguration() );
+        if (v == VolatileImage.IMAGE_INCOMPATIBLE) {
+            mCache = createVolatileImage( view.width, view.height );
+            if (mCache == null)    return false;
+            all = true;
+        } else if (v == VolatileImage.IMAGE_RESTORED) {
+            all = true;
+        }
+        final long  rows = pyramid.takeChangedRows();
+        if (pyramid != mCachePyramid || mZoom != mCacheZoom)    all = true;
+        //refine once the interaction has settled
+        final Object  hint = quality();
+        if (!mInteracting && mCacheHint != hint)    all = true;
 
-        //draw the doublebuffer on the panel
-        //g.drawImage( mDoubleBuffer, 0, 0, null );
+        Graphics2D  cg = mCache.createGraphics();
+        try {
+            cg.translate( -view.x, -view.y );  //panel coordinates
+            final int  dx = all ? 0 : view.x - mCacheView.x, dy = all ? 0 : view.y - mCacheView.y;
+            if (all || Math.abs( dx ) >= view.width || Math.abs( dy ) >= view.height) {
+                render( cg, view, pyramid, hint );
+                mCacheHint = hint;
+            } else {
+                if (mCacheHint != hint)    mCacheHint = null;  //parts will differ
+                if (dx != 0 || dy != 0) {
+                    //scrolled:  move what is still visible
+                    cg.copyArea( view.x, view.y, view.width, view.height, -dx, -dy );
+                    if (dx > 0)    render( cg, new Rectangle( view.x + view.width - dx, view.y, dx, view.height ), pyramid, hint );
+                    if (dx < 0)    render( cg, new Rectangle( view.x, view.y, -dx, view.height ), pyramid, hint );
+                    if (dy > 0)    render( cg, new Rectangle( view.x, view.y + view.height - dy, view.width, dy ), pyramid, hint );
+                    if (dy < 0)    render( cg, new Rectangle( view.x, view.y, view.width, -dy ), pyramid, hint );
+                }
+                if (Parallel.min( rows ) < Parallel.max( rows )) {
+                    int  y0 = (int)Math.floor( Parallel.min( rows ) * mZoom );
+                    int  y1 = (int)Math.ceil(  Parallel.max( rows ) * mZoom );
+                    Rectangle  r = view.intersection( new Rectangle( view.x, y0, view.width, y1 - y0 ) );
+                    if (!r.isEmpty())    render( cg, r, pyramid, hint );
+                }
+            }
+        } finally {
+            cg.dispose();
+        }
+        mCacheView    = new Rectangle( view );
+        mCacheZoom    = mZoom;
+        mCachePyramid = pyramid;
+        return true;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Draw part of the image (and the background around it).
+     *  \param g graphics context (in panel coordinates)
+     *  \param r area to draw (in panel coordinates)
+     *  \param pyramid the image
+     *  \param hint interpolation
+     *  \returns nothing (void)
+     */
+    private void render ( Graphics2D g, Rectangle r, ImagePyramid pyramid, Object hint ) {
+        Graphics2D  rg = (Graphics2D) g.create();
+        try {
+            rg.clipRect( r.x, r.y, r.width, r.height );
+            rg.setColor( Color.DARK_GRAY );
+            rg.fillRect( r.x, r.y, r.width, r.height );
+            pyramid.paint( rg, r, mZoom, hint );
+        } finally {
+            rg.dispose();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the interpolation to use now (nearest neighbor while
+     *  zooming or scrolling; mRH otherwise) */
+    private Object quality ( ) {
+        return mInteracting ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : mRH;
+    }
+    //----------------------------------------------------------------------
+    /** \brief The user is zooming or scrolling:  draw w/ nearest neighbor
+     *  until that has stopped for SETTLE_MS.
+     *  \returns nothing (void)
+     */
+    void interacting ( ) {
+        mInteracting = true;
+        mSettle.restart();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Use the next interpolation (nearest neighbor, bilinear, or
+     *  bicubic) for mRH.
+     *  \returns nothing (void)
+     */
+    void cycleQuality ( ) {
+        if (mRH == RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)
+            mRH = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        else if (mRH == RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+            mRH = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+        else
+            mRH = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+        System.out.println( "ImagePanel: quality " + mRH );
+        repaint();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make the preferred size of the panel that of the image at
+     *  the current zoom.
+     *  \returns nothing (void)
+     */
+    void updatePreferredSize ( ) {
+        ImageData  image = mParent.mImage;
+        if (image == null)    return;
+        //zoom only applies to time for audio
+        setPreferredSize( new Dimension( (int)Math.ceil( image.mW * mZoom ),
+                                         image.mIsAudio ? image.mH : (int)Math.ceil( image.mH * mZoom ) ) );
+        revalidate();
+    }
+    //----------------------------------------------------------------------
+    /** \returns the min zoom (for audio, small enough to fit the whole
+     *  recording in the window) */
+    private double minZoom ( ) {
+        ImageData  image = mParent.mImage;
+        if (image == null || !image.mIsAudio)    return MIN_ZOOM;
+        int  w = mParent.mJsp.getViewport().getExtentSize().width;
+        return Math.min( MIN_ZOOM, (double)Math.max( 1, w ) / Math.max( 1, image.mW ) );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the max zoom (for audio, small enough that the width of the
+     *  panel fits in an int) */
+    private double maxZoom ( ) {
+        ImageData  image = mParent.mImage;
+        if (image == null || !image.mIsAudio)    return MAX_ZOOM;
+        return Math.min( MAX_ZOOM, Integer.MAX_VALUE / 2.0 / Math.max( 1, image.mW ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Zoom so that the whole width of the image (e.g., an audio
+     *  recording) fits in the window (but not beyond 1:1).  The preferred
+     *  size is not updated.
+     *  \returns nothing (void)
+     */
+    void zoomToFitWidth ( ) {
+        ImageData  image = mParent.mImage;
+        if (image == null)    return;
+        int  w = mParent.mJsp.getViewport().getExtentSize().width;
+        if (w <= 0)    w = 1024;  //not shown yet
+        mZoom = Math.max( minZoom(), Math.min( 1.0, (double)w / Math.max( 1, image.mW ) ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Zoom by a factor about the mouse position (or the center of
+     *  the visible part of the image if the mouse is not over it).
+     *  \param factor e.g., ZOOM_STEP to zoom in
+     *  \returns nothing (void)
+     */
+    void zoomBy ( double factor ) {
+        Rectangle  view = getVisibleRect();
+        Point  anchor = new Point( mMouseX, mMouseY );
+        if (!mMouseMoveValid || !view.contains( anchor ))
+            anchor = new Point( view.x + view.width / 2, view.y + view.height / 2 );
+        zoomTo( mZoom * factor, anchor );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Zoom so that the image point under anchor stays there.
+     *  \param zoom new zoom (clamped to [minZoom()..maxZoom()])
+     *  \param anchor point (in panel coordinates)
+     *  \returns nothing (void)
+     */
+    void zoomTo ( double zoom, Point anchor ) {
+        if (mParent.mImage == null)    return;
+        zoom = Math.max( minZoom(), Math.min( maxZoom(), zoom ) );
+        if (Math.abs( zoom - 1 ) < 1e-9)    zoom = 1;  //so that 1:1 is exact
+        if (zoom == mZoom)    return;
+        final JViewport  vp = mParent.mJsp.getViewport();
+        final Point  pos = vp.getViewPosition();
+        //the image point under the anchor and where it is in the viewport
+        final boolean audio = mParent.mImage.mIsAudio;  //zoom only applies to x
+        final double  ix = anchor.x / mZoom, iy = audio ? anchor.y : anchor.y / mZoom;
+        final int     sx = anchor.x - pos.x, sy = anchor.y - pos.y;
+        mZoom = zoom;
+        interacting();
+        updatePreferredSize();
+        mParent.mJsp.validate();  //so that the new size is used now
+        Dimension  size = getPreferredSize(), extent = vp.getExtentSize();
+        int  x = (int)Math.round( ix * zoom ) - sx, y = (int)Math.round( audio ? iy : iy * zoom ) - sy;
+        x = Math.max( 0, Math.min( x, size.width  - extent.width  ) );
+        y = Math.max( 0, Math.min( y, size.height - extent.height ) );
+        vp.setViewPosition( new Point( x, y ) );
+        if (mMouseMoveValid) {
+            mMouseX = (int)Math.round( ix * zoom );
+            mMouseY = (int)Math.round( audio ? iy : iy * zoom );
+        }
+        updateOverlay();
+        repaint();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Zoom (about the mouse position) w/ the mouse wheel.
+     *  \param e mouse wheel event
+     *  \returns nothing (void)
+     */
+    @Override
+    public void mouseWheelMoved ( MouseWheelEvent e ) {
+        mMouseMoveValid = true;
+        zoomTo( mZoom * Math.pow( ZOOM_STEP, -e.getPreciseWheelRotation() ), e.getPoint() );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the bounds (in panel coordinates) of the outline of mRoi */
+    private Rectangle roiBounds ( ) {
+        int  x0 = (int)Math.floor( mRoi.x * mZoom ), y0 = (int)Math.floor( mRoi.y * mZoom );
+        int  x1 = (int)Math.ceil( (mRoi.x + mRoi.width) * mZoom );
+        int  y1 = (int)Math.ceil( (mRoi.y + mRoi.height) * mZoom );
+        return new Rectangle( x0, y0, Math.max( 1, x1 - x0 ), Math.max( 1, y1 - y0 ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Show the mouse position (and value), the window/level while
+     *  it is being changed, and the statistics of the ROI in the
+     *  OverlayPanel (which only repaints the text).
+     *  \returns nothing (void)
+     */
+    private void updateOverlay ( ) {
+        if (mParent.mOverlay == null)    return;
+        final int  n = (mRoiText == null) ? 0 : mRoiText.length;
+        String[]  lines = new String[ 2 + n ];
+        final ImageData  image = mParent.mImage;
+        if (mMouseMoveValid && image != null && image.mIsAudio)
+            lines[ 0 ] = String.format( "%.3f s", (mMouseX / mZoom) / Math.max( 1, image.mRate ) ) + sampleText();
+        else if (mMouseMoveValid)
+            lines[ 0 ] = "(" + (int)(mMouseX / mZoom) + "," + (int)(mMouseY / mZoom) + ")" + sampleText();
+        if (mMouseMoveValid && mWindowLevelDrag)
+            lines[ 1 ] = String.format( "W=%.0f L=%.0f", mNewWindow, mNewLevel );
+        for (int i=0; i<n; i++)    lines[ 2+i ] = mRoiText[ i ];
+        mParent.mOverlay.setLines( lines );
     }
     //----------------------------------------------------------------------
     /** \brief Track mouse movement when button is not down.
@@ -131,7 +426,7 @@ class ImagePanel extends JPanel implements MouseMotionListener {
         mMouseMoveValid = true;
         mMouseX = e.getX();
         mMouseY = e.getY();
-        repaint();
+        updateOverlay();
     }
     //----------------------------------------------------------------------
     /** \brief Track mouse movement when button is down.
@@ -143,7 +438,179 @@ class ImagePanel extends JPanel implements MouseMotionListener {
         mMouseMoveValid = true;
         mMouseX = e.getX();
         mMouseY = e.getY();
-        repaint();
+        if (mWindowLevelDrag)    dragWindowLevel( e );
+        if (mRoiDrag)            dragRoi( e );
+        if (mPanDrag)            dragPan( e );
+        updateOverlay();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Start changing the window/level (right button) or selecting
+     *  a ROI (left button).
+     *  \param e mouse event
+     *  \returns nothing (void)
+     */
+    @Override
+    public void mousePressed ( MouseEvent e ) {
+        if (mParent.mImage == null)    return;
+        if (SwingUtilities.isMiddleMouseButton( e )
+            || (SwingUtilities.isLeftMouseButton( e ) && e.isShiftDown())) {
+            mPanDrag  = true;
+            mPanMouse = e.getLocationOnScreen();
+            mPanView  = mParent.mJsp.getViewport().getViewPosition();
+            return;
+        }
+        if (SwingUtilities.isLeftMouseButton( e )) {
+            mRoiDrag = true;
+            mRoiX = (int)(e.getX() / mZoom);
+            mRoiY = (int)(e.getY() / mZoom);
+            if (mRoi != null)    repaint( roiBounds() );
+            mRoi = null;
+            mRoiText = null;
+            updateOverlay();
+            return;
+        }
+        if (!SwingUtilities.isRightMouseButton( e ))    return;
+        mWindowLevelDrag = true;
+        mDragX = e.getX();
+        mDragY = e.getY();
+        mDragWindow = mNewWindow = mParent.mImage.getWindow();
+        mDragLevel  = mNewLevel  = mParent.mImage.getLevel();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Stop changing the window/level or selecting a ROI.
+     *  \param e mouse event
+     *  \returns nothing (void)
+     */
+    @Override
+    public void mouseReleased ( MouseEvent e ) {
+        if (!mWindowLevelDrag && !mRoiDrag && !mPanDrag)    return;
+        mWindowLevelDrag = false;
+        mRoiDrag = false;
+        mPanDrag = false;
+        updateOverlay();
+    }
+    /** unused */
+    @Override
+    public void mouseClicked ( MouseEvent e ) { }
+    /** unused */
+    @Override
+    public void mouseEntered ( MouseEvent e ) { }
+    /** unused */
+    @Override
+    public void mouseExited ( MouseEvent e ) { }
+    //----------------------------------------------------------------------
+    /** \brief Change the window (w/ horizontal movement) and level (w/
+     *  vertical movement).  The re-map is done later on the EDT, so the
+     *  drag events that arrive meanwhile are coalesced into one re-map.
+     *  \param e mouse event
+     *  \returns nothing (void)
+     */
+    private void dragWindowLevel ( MouseEvent e ) {
+        final ImageData  image = mParent.mImage;
+        if (image == null)    return;
+        //one pixel of movement is 1/256 of the range of the image
+        final double  step = Math.max( 1, (double)image.mMax - image.mMin ) / 256;
+        mNewWindow = Math.max( 1, mDragWindow + (e.getX() - mDragX) * step );
+        mNewLevel  = mDragLevel + (e.getY() - mDragY) * step;
+        if (mRemapPending)    return;
+        mRemapPending = true;
+        SwingUtilities.invokeLater( () -> {
+            mRemapPending = false;
+            image.setWindowLevel( mNewWindow, mNewLevel );
+            repaint();
+        } );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Pan:  move the view by the distance the mouse has moved (on
+     *  the screen, since the panel moves w/ the view).
+     *  \param e mouse event
+     *  \returns nothing (void)
+     */
+    private void dragPan ( MouseEvent e ) {
+        final JViewport  vp = mParent.mJsp.getViewport();
+        Point      p = e.getLocationOnScreen();
+        Dimension  size = getPreferredSize(), extent = vp.getExtentSize();
+        int  x = mPanView.x - (p.x - mPanMouse.x), y = mPanView.y - (p.y - mPanMouse.y);
+        x = Math.max( 0, Math.min( x, size.width  - extent.width  ) );
+        y = Math.max( 0, Math.min( y, size.height - extent.height ) );
+        vp.setViewPosition( new Point( x, y ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Change the ROI and determine its statistics (from the
+     *  image's summed area tables, so this does not depend on the size of
+     *  the ROI).
+     *  \param e mouse event
+     *  \returns nothing (void)
+     */
+    private void dragRoi ( MouseEvent e ) {
+        final ImageData  image = mParent.mImage;
+        if (image == null || image.mIsAudio || image.mOriginalData == null)    return;
+        int  x = (int)(e.getX() / mZoom), y = (int)(e.getY() / mZoom);
+        //only the old and new outlines are repainted
+        if (mRoi != null)    repaint( roiBounds() );
+        mRoi = new Rectangle( Math.min( x, mRoiX ), Math.min( y, mRoiY ),
+                              Math.abs( x - mRoiX ) + 1, Math.abs( y - mRoiY ) + 1 );
+        repaint( roiBounds() );
+        updateRoiText();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the statistics of the ROI.  This does not wait
+     *  for the summed area tables.  If they are still being built (or were
+     *  never built), "computing..." is shown and the statistics are shown
+     *  when the tables are ready.
+     *  \returns nothing (void)
+     */
+    private void updateRoiText ( ) {
+        final ImageData  image = mParent.mImage;
+        if (mRoi == null || image == null)    return;
+        SummedAreaTable  sat = image.getStatisticsIfReady();
+        if (sat == null) {
+            mRoiText = new String[]{ "computing\u2026" };
+            if (!mRoiWaiting) {
+                mRoiWaiting = true;
+                ImageLoader.executor().execute( () -> {
+                    image.getStatistics();  //(waits for, or builds, them)
+                    SwingUtilities.invokeLater( () -> {
+                        mRoiWaiting = false;
+                        if (mParent.mImage != image || image.getStatisticsIfReady() == null)    return;
+                        updateRoiText();
+                        updateOverlay();
+                    } );
+                } );
+            }
+            return;
+        }
+        final String[]  names = image.mIsColor ? new String[]{ "r: ", "g: ", "b: " }
+                                               : new String[]{ "" };
+        String[]  text = new String[ names.length ];
+        for (int band=0; band<names.length; band++) {
+            text[ band ] = names[ band ] + sat.stats( mRoi.x, mRoi.y, mRoi.x + mRoi.width,
+                                                      mRoi.y + mRoi.height, band );
+        }
+        mRoiText = text;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the value of the pixel under the mouse (e.g., " = 12" or
+     *  " = 1,2,3"), the samples of the frame under the mouse for audio, or
+     *  "" if there is none
+     */
+    private String sampleText ( ) {
+        final ImageData  image = mParent.mImage;
+        if (image == null || image.mOriginalData == null)    return "";
+        if (image instanceof AudioData) {
+            final AudioData  audio = (AudioData)image;
+            int  f = (int)(mMouseX / mZoom);
+            if (f < 0 || f >= audio.getLoadedFrames())    return "";
+            StringBuilder  s = new StringBuilder( " = " );
+            for (int c=0; c<audio.getChannels(); c++)
+                s.append( c == 0 ? "" : "," ).append( audio.getSample( 0, f, c ) );
+            return s.toString();
+        }
+        int  x = (int)(mMouseX / mZoom), y = (int)(mMouseY / mZoom);
+        if (x < 0 || y < 0 || x >= image.mW || y >= image.mH)    return "";
+        if (!image.mIsColor)    return " = " + image.getSample( y, x, 0 );
+        return " = " + image.getSample( y, x, 0 ) + "," + image.getSample( y, x, 1 )
+                     + "," + image.getSample( y, x, 2 );
     }
 
 }
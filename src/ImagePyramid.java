@@ -0,0 +1,366 @@
+/**
+    \file   ImagePyramid.java
+    \brief  contains ImagePyramid class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+//----------------------------------------------------------------------
+/** \brief a tiled, level of detail (mipmap) version of a displayable
+ *  image used to draw it quickly at any zoom.
+ *
+ *  Level 0 is the image itself.  Each following level is half the width
+ *  and height of the previous one (each pixel is the average of 2x2
+ *  pixels), until the image fits in a single tile.  Each level is split
+ *  into TILE x TILE tiles (which share the level's pixels).  paint() only
+ *  draws the tiles that intersect the clip, from the level closest to
+ *  (but not smaller than) the zoom, so the cost of a paint depends upon
+ *  the size of the window rather than the size of the image.
+ *  <br/>
+ *  When the display image changes, call invalidate() with the changed
+ *  rows.  Only those rows of the levels are recomputed (at the next
+ *  paint).
+ *  <br/>
+ *  Tiles that are drawn w/ a smooth (bilinear or bicubic) interpolation
+ *  hint at a scale other than 1 are resampled once and the scaled tiles
+ *  are kept (up to SCALED_PIXELS pixels, least recently used first out),
+ *  so repeated paints at the same zoom (e.g., when scrolling) do not
+ *  resample them again.  They are discarded when the zoom or hint
+ *  changes, or when their rows are invalidated.
+ */
+public class ImagePyramid {
+    public static final int  TILE = 256;  ///< tile width and height
+    /** max number of pixels of the scaled tiles that are kept */
+    public static final int  SCALED_PIXELS = Integer.getInteger( "jimageviewer.scaledPixels", 8 << 20 );
+
+    protected final int  mW;  ///< width of level 0
+    protected final int  mH;  ///< height of level 0
+    protected final ArrayList< BufferedImage >    mLevels = new ArrayList<>();  ///< the levels
+    protected final ArrayList< BufferedImage[] >  mTiles  = new ArrayList<>();  ///< tiles of each level (made when first needed)
+    private int  mDirtyY0, mDirtyY1;  ///< rows of level 0 not yet propagated to the other levels
+    private int  mChangedY0, mChangedY1;  ///< rows of level 0 changed since takeChangedRows()
+    private final LinkedHashMap< Long, BufferedImage >  mScaled = new LinkedHashMap<>( 64, 0.75f, true );  ///< scaled tiles (LRU order)
+    private double  mScaledZoom = 0;       ///< zoom of the scaled tiles
+    private Object  mScaledHint = null;    ///< interpolation hint of the scaled tiles
+    private long    mScaledCount = 0;      ///< number of pixels of the scaled tiles
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  The levels are computed from the image.
+     *  \param image level 0 (e.g., ImageData.mDisplayImage)
+     *  \returns nothing (ctor)
+     */
+    public ImagePyramid ( BufferedImage image ) {
+        this( image.getWidth(), image.getHeight() );
+        mLevels.add( image );
+        mTiles.add( null );
+        int  w = mW, h = mH;
+        while (w > TILE || h > TILE) {
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+            mLevels.add( new BufferedImage( w, h, levelType(image) ) );
+            mTiles.add( null );
+        }
+        invalidate( 0, mH );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor for subclasses that supply their own levels.
+     *  \param w width of level 0
+     *  \param h height of level 0
+     *  \returns nothing (ctor)
+     */
+    protected ImagePyramid ( int w, int h ) {
+        mW = w;
+        mH = h;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of levels */
+    public int getLevelCount ( ) {  return mLevels.size();  }
+    //----------------------------------------------------------------------
+    /** \brief Rows [y0..y1) of level 0 have changed.
+     *  \param y0 first row
+     *  \param y1 one past the last row
+     *  \returns nothing (void)
+     */
+    public synchronized void invalidate ( int y0, int y1 ) {
+        if (mDirtyY0 >= mDirtyY1) {
+            mDirtyY0 = y0;
+            mDirtyY1 = y1;
+        } else {
+            mDirtyY0 = Math.min( mDirtyY0, y0 );
+            mDirtyY1 = Math.max( mDirtyY1, y1 );
+        }
+        if (mChangedY0 >= mChangedY1) {
+            mChangedY0 = y0;
+            mChangedY1 = y1;
+        } else {
+            mChangedY0 = Math.min( mChangedY0, y0 );
+            mChangedY1 = Math.max( mChangedY1, y1 );
+        }
+        //discard the scaled tiles of those rows
+        for (Iterator< Map.Entry<Long,BufferedImage> >  it = mScaled.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry< Long, BufferedImage >  e = it.next();
+            long  key = e.getKey();
+            int   L = (int)(key >>> 56), ty = (int)(key >>> 28) & 0xfffffff;
+            long  ty0 = ((long)ty * TILE) << L, ty1 = ((long)(ty + 1) * TILE) << L;
+            if (ty1 > y0 && ty0 < y1) {
+                mScaledCount -= (long)e.getValue().getWidth() * e.getValue().getHeight();
+                it.remove();
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get (and forget) the rows of level 0 that have changed since
+     *  the last call (e.g., to update a cached rendering of the image).
+     *  \returns [y0..y1) packed into a long (see Parallel.pack()); empty
+     *  (y0 == y1) if no rows have changed
+     */
+    public synchronized long takeChangedRows ( ) {
+        long  rows = Parallel.pack( mChangedY0, mChangedY1 );
+        mChangedY0 = mChangedY1 = 0;
+        return rows;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Recompute the changed rows of levels 1, 2, ....
+     *  \returns nothing (void)
+     */
+    protected synchronized void update ( ) {
+        if (mDirtyY0 >= mDirtyY1)    return;
+        int  y0 = mDirtyY0, y1 = mDirtyY1;
+        for (int L=1; L<mLevels.size(); L++) {
+            y0 = y0 / 2;
+            y1 = (y1 + 1) / 2;
+            final BufferedImage  src = mLevels.get( L-1 );
+            final BufferedImage  dst = mLevels.get( L );
+            final int  from = y0;
+            final int  to   = Math.min( y1, dst.getHeight() );
+            Parallel.forEachBand( to-from, dst.getWidth(),
+                    (a, b) -> reduce( src, dst, from+a, from+b ) );
+        }
+        mDirtyY0 = mDirtyY1 = 0;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the level to use for a given zoom.
+     *  \param zoom scale factor (1 = actual size)
+     *  \returns the largest level whose scale (1/2^level) is >= zoom
+     */
+    public int levelFor ( double zoom ) {
+        int  L = 0;
+        while (L+1 < mLevels.size() && zoom <= 1.0 / (2 << L))    L++;
+        return L;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Draw the part of the image that intersects clip.
+     *  \param g graphics context (in panel coordinates)
+     *  \param clip area to draw (in panel coordinates)
+     *  \param zoom scale factor (1 = actual size)
+     *  \returns nothing (void)
+     */
+    public void paint ( Graphics2D g, Rectangle clip, double zoom ) {
+        paint( g, clip, zoom, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Draw the part of the image that intersects clip.
+     *  \param g graphics context (in panel coordinates)
+     *  \param clip area to draw (in panel coordinates)
+     *  \param zoom scale factor (1 = actual size)
+     *  \param hint interpolation (RenderingHints.VALUE_INTERPOLATION_*);
+     *         tiles drawn w/ a smooth hint are resampled once (and kept)
+     *  \returns nothing (void)
+     */
+    public void paint ( Graphics2D g, Rectangle clip, double zoom, Object hint ) {
+        update();
+        g.setRenderingHint( RenderingHints.KEY_INTERPOLATION, hint );
+        final int     L     = levelFor( zoom );
+        final double  scale = zoom * (1 << L);  //level pixels -> panel pixels
+        final int  lw = levelWidth( L ), lh = levelHeight( L );
+        //tiles that intersect the clip
+        int  tx0 = Math.max( 0, (int)Math.floor( clip.x / scale ) / TILE );
+        int  ty0 = Math.max( 0, (int)Math.floor( clip.y / scale ) / TILE );
+        int  tx1 = Math.min( (lw-1) / TILE, (int)Math.floor( (clip.x + clip.width)  / scale ) / TILE );
+        int  ty1 = Math.min( (lh-1) / TILE, (int)Math.floor( (clip.y + clip.height) / scale ) / TILE );
+        for (int ty=ty0; ty<=ty1; ty++) {
+            int  y = ty * TILE, th = Math.min( TILE, lh-y );
+            int  dy0 = (int)Math.round( y * scale ), dy1 = (int)Math.round( (y+th) * scale );
+            for (int tx=tx0; tx<=tx1; tx++) {
+                int  x = tx * TILE, tw = Math.min( TILE, lw-x );
+                int  dx0 = (int)Math.round( x * scale ), dx1 = (int)Math.round( (x+tw) * scale );
+                BufferedImage  tile = getTile( L, tx, ty );
+                if (tile == null)    continue;
+                BufferedImage  scaled = scaled( tile, L, tx, ty, dx1-dx0, dy1-dy0, zoom, hint );
+                if (scaled != null)    g.drawImage( scaled, dx0, dy0, null );
+                else                   g.drawImage( tile, dx0, dy0, dx1, dy1, 0, 0, tw, th, null );
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get a scaled tile (resampled when first needed).
+     *  \param tile the tile
+     *  \param L level
+     *  \param tx tile column
+     *  \param ty tile row
+     *  \param w width of the scaled tile
+     *  \param h height of the scaled tile
+     *  \param zoom scale factor
+     *  \param hint interpolation
+     *  \returns the scaled tile or null if the tile should be drawn
+     *  directly (nearest neighbor, not scaled, or too big to keep)
+     */
+    private synchronized BufferedImage scaled ( BufferedImage tile, int L, int tx, int ty,
+                                                int w, int h, double zoom, Object hint ) {
+        if (hint == RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR)    return null;
+        if ((w == tile.getWidth() && h == tile.getHeight()) || w <= 0 || h <= 0)    return null;
+        if ((long)w * h > SCALED_PIXELS / 16)    return null;
+        if (zoom != mScaledZoom || hint != mScaledHint) {
+            mScaled.clear();
+            mScaledCount = 0;
+            mScaledZoom  = zoom;
+            mScaledHint  = hint;
+        }
+        final Long  key = ((long)L << 56) | ((long)ty << 28) | tx;
+        BufferedImage  s = mScaled.get( key );
+        if (s != null)    return s;
+        s = new BufferedImage( w, h, (tile.getType() == BufferedImage.TYPE_CUSTOM)
+                                     ? BufferedImage.TYPE_INT_RGB : tile.getType() );
+        Graphics2D  sg = s.createGraphics();
+        sg.setRenderingHint( RenderingHints.KEY_INTERPOLATION, hint );
+        sg.drawImage( tile, 0, 0, w, h, null );
+        sg.dispose();
+        mScaled.put( key, s );
+        mScaledCount += (long)w * h;
+        //evict the least recently used
+        for (Iterator< BufferedImage >  it = mScaled.values().iterator();
+             mScaledCount > SCALED_PIXELS && it.hasNext(); ) {
+            BufferedImage  old = it.next();
+            mScaledCount -= (long)old.getWidth() * old.getHeight();
+            it.remove();
+        }
+        return s;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the width of a level */
+    protected int levelWidth ( int L ) {
+        int  w = mW;
+        for (int i=0; i<L; i++)    w = (w + 1) / 2;
+        return w;
+    }
+    /** \returns the height of a level */
+    protected int levelHeight ( int L ) {
+        int  h = mH;
+        for (int i=0; i<L; i++)    h = (h + 1) / 2;
+        return h;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get a tile (which shares the pixels of its level).
+     *  \param L level
+     *  \param tx tile column
+     *  \param ty tile row
+     *  \returns the tile (or null if it is not available)
+     */
+    protected BufferedImage getTile ( int L, int tx, int ty ) {
+        BufferedImage    level = mLevels.get( L );
+        BufferedImage[]  tiles = mTiles.get( L );
+        int  nx = (level.getWidth()  + TILE - 1) / TILE;
+        int  ny = (level.getHeight() + TILE - 1) / TILE;
+        if (tiles == null) {
+            tiles = new BufferedImage[ nx * ny ];
+            mTiles.set( L, tiles );
+        }
+        BufferedImage  t = tiles[ ty*nx + tx ];
+        if (t == null) {
+            int  x = tx * TILE, y = ty * TILE;
+            t = level.getSubimage( x, y, Math.min( TILE, level.getWidth()-x ),
+                                         Math.min( TILE, level.getHeight()-y ) );
+            tiles[ ty*nx + tx ] = t;
+        }
+        return t;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the image type to use for levels 1, 2, ... */
+    private static int levelType ( BufferedImage image ) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY)    return BufferedImage.TYPE_BYTE_GRAY;
+        return BufferedImage.TYPE_INT_RGB;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Compute rows [y0..y1) of dst (each pixel is the average of
+     *  2x2 pixels in src).
+     *  \param src previous level
+     *  \param dst this level
+     *  \param y0 first row of dst
+     *  \param y1 one past the last row of dst
+     *  \returns nothing (void)
+     */
+    static void reduce ( BufferedImage src, BufferedImage dst, int y0, int y1 ) {
+        final int  sw = src.getWidth(), sh = src.getHeight(), dw = dst.getWidth();
+        if (src.getType() == BufferedImage.TYPE_BYTE_GRAY && src.getRaster().getParent() == null) {
+            byte[]  s = ((DataBufferByte)src.getRaster().getDataBuffer()).getData();
+            byte[]  d = ((DataBufferByte)dst.getRaster().getDataBuffer()).getData();
+            for (int y=y0; y<y1; y++) {
+                int  r0 = 2*y*sw, r1 = Math.min( 2*y+1, sh-1 ) * sw;
+                for (int x=0; x<dw; x++) {
+                    int  a = 2*x, b = Math.min( 2*x+1, sw-1 );
+                    int  v = (s[r0+a]&0xff) + (s[r0+b]&0xff) + (s[r1+a]&0xff) + (s[r1+b]&0xff);
+                    d[ y*dw + x ] = (byte)((v + 2) >> 2);
+                }
+            }
+        } else if (src.getType() == BufferedImage.TYPE_INT_RGB && src.getRaster().getParent() == null) {
+            int[]  s = ((DataBufferInt)src.getRaster().getDataBuffer()).getData();
+            int[]  d = ((DataBufferInt)dst.getRaster().getDataBuffer()).getData();
+            for (int y=y0; y<y1; y++) {
+                int  r0 = 2*y*sw, r1 = Math.min( 2*y+1, sh-1 ) * sw;
+                for (int x=0; x<dw; x++) {
+                    int  a = 2*x, b = Math.min( 2*x+1, sw-1 );
+                    d[ y*dw + x ] = average( s[r0+a], s[r0+b], s[r1+a], s[r1+b] );
+                }
+            }
+        } else {
+            for (int y=y0; y<y1; y++) {
+                int  r0 = 2*y, r1 = Math.min( 2*y+1, sh-1 );
+                for (int x=0; x<dw; x++) {
+                    int  a = 2*x, b = Math.min( 2*x+1, sw-1 );
+                    dst.setRGB( x, y, average( src.getRGB(a, r0), src.getRGB(b, r0),
+                                               src.getRGB(a, r1), src.getRGB(b, r1) ) );
+                }
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the average of 4 packed rgb values */
+    static int average ( int p, int q, int r, int s ) {
+        int  red = ((p>>16)&0xff) + ((q>>16)&0xff) + ((r>>16)&0xff) + ((s>>16)&0xff);
+        int  grn = ((p>> 8)&0xff) + ((q>> 8)&0xff) + ((r>> 8)&0xff) + ((s>> 8)&0xff);
+        int  blu = ( p     &0xff) + ( q     &0xff) + ( r     &0xff) + ( s     &0xff);
+        return (((red+2)>>2) << 16) | (((grn+2)>>2) << 8) | ((blu+2)>>2);
+    }
+
+}
+//----------------------------------------------------------------------
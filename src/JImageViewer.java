@@ -26,22 +26,27 @@
  */
 //package jimageviewer;
 
+import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 //----------------------------------------------------------------------
 /** \brief instantiate this class to display an image */
-public class JImageViewer extends JFrame implements ActionListener, KeyListener {
+public class JImageViewer extends JFrame implements ActionListener, KeyListener, ImageLoader.Client {
 
     JMenuBar    mMenuBar    = new JMenuBar();                   ///< menu bar
     JMenu       mFile       = new JMenu( "File" );           ///< file menu item
     JMenuItem   mOpen       = new JMenuItem( "Open" );     ///< open menu item
+    JMenuItem   mBrowse     = new JMenuItem( "Browse Folder" );  ///< contact sheet menu item
     JMenuItem   mClose      = new JMenuItem( "Close" );    ///< close menu item
     JMenuItem   mSave       = new JMenuItem( "Save" );     ///< save menu item
     JMenuItem   mSaveAs     = new JMenuItem( "Save As" );  ///< save as menu item
@@ -49,6 +54,11 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
     ImagePanel  mImagePanel = new ImagePanel( this );        ///< panel in which an image may be displayed
     ImageData   mImage;                                         ///< actual image data
     JScrollPane mJsp;                                           ///< image scroller
+    OverlayPanel mOverlay;                                      ///< text drawn over the image (glass pane)
+    JPanel       mStatus      = new JPanel( new BorderLayout() );  ///< shown while loading
+    JProgressBar mProgress    = new JProgressBar( 0, 100 );      ///< load progress
+    JButton      mCancel      = new JButton( "Cancel" );         ///< cancels the load
+    ImageLoader  mLoader;                                           ///< current load (if any)
 
     //better to migrate to file as opposed to using windows registry.
     // see http://www.davidc.net/programming/java/java-preferences-using-file-backing-store
@@ -71,6 +81,16 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
         init( fname );
     }
     //----------------------------------------------------------------------
+    /** \brief Ctor that displays an (already loaded) image in a window.
+     *  \param image the image
+     *  \param fname name of input image file
+     *  \returns nothing (ctor)
+     */
+    public JImageViewer ( ImageData image, String fname ) {
+        init( null );
+        display( image, fname );
+    }
+    //----------------------------------------------------------------------
     /** \brief Load and display an image.
      *  \param fn name of input image file
      *  \returns nothing (void)
@@ -78,21 +98,16 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
     private void init ( String fn ) {
         setDefaultCloseOperation( WindowConstants.EXIT_ON_CLOSE );
         setupMenu();
-        //was a file name specified?
-        if (fn != null) {
-            System.out.println( "Loading file. Please wait." );
-            Timer  t = new Timer();  //see how long this takes
-            mImage = ImageData.load( fn );
-            System.out.println( "Loading this image file required "
-                              + t.getElapsedTimeNano() + " seconds." );
-            mImagePanel.setPreferredSize( new Dimension(mImage.mW,mImage.mH) );
-            setTitle( "JImageViewer: " + fn   );
-        } else {
-            setTitle( "JImageViewer: <empty>" );
-        }
+        setTitle( "JImageViewer: <empty>" );
         mJsp = new JScrollPane( mImagePanel, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED );
         mJsp.setDoubleBuffered( true );
         add( mJsp );
+        mOverlay = new OverlayPanel( mJsp.getViewport() );
+        setGlassPane( mOverlay );
+        mOverlay.setVisible( true );
+        //scrolling is drawn quickly (nearest neighbor) until it stops
+        mJsp.getViewport().addChangeListener( e -> mImagePanel.interacting() );
+        setupStatus();
         setSize( 800, 600 );
         setPreferredSize( new Dimension(800,600) );
         //make sure windows do not overlay each other
@@ -102,6 +117,107 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
         pack();
         setVisible( true );
         addKeyListener( this );
+        //was a file name specified?  if so, load it in the background
+        // (the window is already up and shows the image as it is decoded).
+        if (fn != null)    open( fn );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Load an image (in the background) into this window.
+     *  \param fn name of input image file
+     *  \returns nothing (void)
+     */
+    public void open ( String fn ) {
+        System.out.println( "Loading file. Please wait." );
+        setTitle( "JImageViewer: loading " + fn );
+        mProgress.setValue( 0 );
+        mStatus.setVisible( true );
+        mLoader = ImageData.loadAsync( fn, this );
+        mLoader.addPropertyChangeListener( e -> {
+            if ("progress".equals( e.getPropertyName() ))
+                mProgress.setValue( (Integer)e.getNewValue() );
+        } );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Called (on the EDT) when the image being loaded exists.
+     *  \param loader the load
+     *  \param image the (possibly not yet decoded) image
+     *  \returns nothing (void)
+     */
+    @Override
+    public void imageAvailable ( ImageLoader loader, ImageData image ) {
+        if (loader != mLoader)    return;
+        showImage( image );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Called (on the EDT) when rows of the image have been decoded.
+     *  \param loader the load
+     *  \param y0 first row
+     *  \param y1 one past the last row
+     *  \returns nothing (void)
+     */
+    @Override
+    public void rowsLoaded ( ImageLoader loader, int y0, int y1 ) {
+        if (loader != mLoader || mImage == null)    return;
+        if (mImage.mIsAudio) {  //all lanes grow (to the right)
+            mImagePanel.repaint();
+            return;
+        }
+        mImagePanel.repaint( 0, 0, (int)Math.ceil( y0 * mImagePanel.mZoom ),
+                             mImagePanel.getWidth(),
+                             (int)Math.ceil( (y1 - y0 + 1) * mImagePanel.mZoom ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Called (on the EDT) when loading is done.
+     *  \param loader the load
+     *  \returns nothing (void)
+     */
+    @Override
+    public void loadDone ( ImageLoader loader ) {
+        if (loader != mLoader)    return;
+        mLoader = null;
+        mStatus.setVisible( false );
+        try {
+            ImageData  image = loader.get();
+            System.out.println( "Loading this image file required "
+                              + loader.getElapsedTime() + " seconds." );
+            if (image != mImage)    showImage( image );
+            setTitle( "JImageViewer: " + loader.getFileName() );
+            if (!image.mIsAudio)    ImageData.warnRange( image.mMin, image.mMax );
+        } catch (CancellationException e) {
+            mImage = null;
+            setTitle( "JImageViewer: <empty>" );
+            repaint();
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println( "JImageViewer:loadDone: " + e );
+            mImage = null;
+            setTitle( "JImageViewer: <empty>" );
+            repaint();
+            JOptionPane.showMessageDialog( this,
+                "Error: \n\nUnable to load " + loader.getFileName() + ". \n ",
+                "Error", JOptionPane.ERROR_MESSAGE );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Display an (already loaded) image in this window.
+     *  \param image the image
+     *  \param fn name of input image file
+     *  \returns nothing (void)
+     */
+    public void display ( ImageData image, String fn ) {
+        showImage( image );
+        setTitle( "JImageViewer: " + fn );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Display an image in this window.
+     *  \param image the image
+     *  \returns nothing (void)
+     */
+    private void showImage ( ImageData image ) {
+        mImage = image;
+        if (image != null && image.mIsAudio)    mImagePanel.zoomToFitWidth();
+        mImagePanel.updatePreferredSize();
+        mJsp.updateUI();  //otherwise, scrollbars may not appear (until resize)
+        repaint();
     }
     //----------------------------------------------------------------------
     /** \brief Respond to menu actions.
@@ -137,20 +253,32 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
 
                 //handle multiple file selection
                 File[] f = chooser.getSelectedFiles();
-                for (int i=0; i<f.length; i++) {
+                boolean empty = (this.mImage == null && this.mLoader == null);
+                if (f.length == 1) {
                     //if this window doesn't have an image, load an image for this window.
-                    if (this.mImage == null) {
-                        this.mImage = ImageData.load( f[i].getAbsolutePath() );
-                        this.mImagePanel.setPreferredSize( new Dimension(mImage.mW,mImage.mH) );
-                        setTitle( "JImageViewer: " + f[i].getAbsolutePath() );
-                        mJsp.updateUI();  //otherwise, scrollbars may not appear (until resize)
-                        repaint();
-                    } else {
-                        //new window w/ image
-                        new JImageViewer( f[i].getAbsolutePath() );
-                    }
+                    if (empty)    open( f[0].getAbsolutePath() );
+                    else          new JImageViewer( f[0].getAbsolutePath() );  //new window w/ image
+                } else if (f.length > 1) {
+                    //load them concurrently (windows appear as they finish)
+                    ArrayList< String > names = new ArrayList<>();
+                    for (int i=0; i<f.length; i++)    names.add( f[i].getAbsolutePath() );
+                    new BatchLoader( names, empty ? this : null ).start();
                 }
             }
+        } else if (e.getSource() == mBrowse) {
+            //show the thumbnails of all of the images in a directory
+            String d = prefs.get( "dir", null );
+            JFileChooser chooser;
+            if (d == null)    chooser = new JFileChooser();
+            else              chooser = new JFileChooser( d );
+            chooser.setFileSelectionMode( JFileChooser.DIRECTORIES_ONLY );
+            if (chooser.showOpenDialog( this ) == JFileChooser.APPROVE_OPTION) {
+                File dir = chooser.getSelectedFile();
+                if (!dir.getAbsolutePath().equals(d))    prefs.put( "dir", dir.getAbsolutePath() );
+                new ContactSheet( dir );
+            }
+        } else if (e.getSource() == mCancel) {
+            if (mLoader != null)    mLoader.cancel( true );
         } else {
             /** \todo handle Close, Save, Save As, etc.
              */
@@ -169,6 +297,7 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
 
         mMenuBar.add( mFile );
         mFile.add( mOpen );
+        mFile.add( mBrowse );
         mFile.add( mClose );
         mFile.add( mSave );
         mFile.add( mSaveAs );
@@ -179,19 +308,79 @@ public class JImageViewer extends JFrame implements ActionListener, KeyListener
         mSaveAs.setEnabled( false );
 
         mOpen.addActionListener( this );
+        mBrowse.addActionListener( this );
         mClose.addActionListener( this );
         mSave.addActionListener( this );
         mSaveAs.addActionListener( this );
         mExit.addActionListener( this );
     }
     //----------------------------------------------------------------------
+    /** \brief Set up the status bar (progress and cancel) that is shown
+     *  while an image is loading.
+     *  \returns nothing (void)
+     */
+    private void setupStatus ( ) {
+        mProgress.setStringPainted( true );
+        mStatus.add( mProgress, BorderLayout.CENTER );
+        mStatus.add( mCancel, BorderLayout.EAST );
+        mStatus.setVisible( false );
+        mCancel.addActionListener( this );
+        add( mStatus, BorderLayout.SOUTH );
+    }
+    //----------------------------------------------------------------------
     /** unused */
     @Override
     public void keyTyped ( KeyEvent e ) { }
     //----------------------------------------------------------------------
+    /** \brief A:  auto contrast; R:  reset the window/level; + and -:
+     *  zoom in and out (about the mouse); 0:  actual size; Q:  change the
+     *  interpolation.
+     *  \param e key event
+     *  \returns nothing (void)
+     */
     @Override
     public void keyPressed ( KeyEvent e ) {
         System.out.println( "keyPressed" );
+        if (mImage == null)    return;
+        if (e.getKeyCode() == KeyEvent.VK_A) {
+            mImage.autoContrast();
+            repaint();
+        } else if (e.getKeyCode() == KeyEvent.VK_R) {
+            mImage.resetWindowLevel();
+            repaint();
+        } else if (e.getKeyCode() == KeyEvent.VK_EQUALS || e.getKeyCode() == KeyEvent.VK_PLUS
+                   || e.getKeyCode() == KeyEvent.VK_ADD) {
+            mImagePanel.zoomBy( ImagePanel.ZOOM_STEP );
+        } else if (e.getKeyCode() == KeyEvent.VK_MINUS || e.getKeyCode() == KeyEvent.VK_SUBTRACT) {
+            mImagePanel.zoomBy( 1 / ImagePanel.ZOOM_STEP );
+        } else if (e.getKeyCode() == KeyEvent.VK_0 || e.getKeyCode() == KeyEvent.VK_NUMPAD0) {
+            mImagePanel.zoomBy( 1 / mImagePanel.mZoom );
+        } else if (e.getKeyCode() == KeyEvent.VK_Q) {
+            mImagePanel.cycleQuality();
+        } else if (e.getKeyCode() == KeyEvent.VK_S && mImage instanceof AudioData) {
+            showSpectrogram( (AudioData)mImage );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the spectrogram of audio (in the background) and
+     *  show it in a new window.
+     *  \param audio the audio
+     *  \returns nothing (void)
+     */
+    private void showSpectrogram ( final AudioData audio ) {
+        System.out.println( "Determining the spectrogram. Please wait." );
+        ImageLoader.executor().execute( () -> {
+            Timer  t = new Timer();
+            final GrayImageData  image;
+            try {
+                image = audio.spectrogram();
+            } catch (IllegalArgumentException e) {  //e.g., too large (see AudioData.spectrogram())
+                System.err.println( "JImageViewer:showSpectrogram: " + e );
+                return;
+            }
+            System.out.println( "The spectrogram required " + t.getElapsedTimeNano() + " seconds." );
+            SwingUtilities.invokeLater( () -> new JImageViewer( image, audio.mFname + " (spectrogram)" ) );
+        } );
     }
     //----------------------------------------------------------------------
     /** unused */
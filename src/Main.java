@@ -24,18 +24,28 @@
  as GH (Generally Hectic) should NOT incorporate this code into
  their proprietary programs.)
  */
+import java.io.File;
+import java.util.Arrays;
+
 /** \brief This class contains tyhe main() method. */
 public class Main {
     /** \brief Main application entry point.
      *  \param args Each image file name in args will cause that image to be
-     *              displayed in a window.
+     *              displayed in a window.  A directory (by itself) is shown
+     *              as a ContactSheet.
      */
     public static void main ( String[] args ) {
         if (args.length==0) {
             new JImageViewer();
+        } else if (args.length==1 && new File( args[0] ).isDirectory()) {
+            new ContactSheet( new File( args[0] ) );
+        } else if (args.length==1) {
+            new JImageViewer( args[0] );
         } else {
-            for (int i = 0; i < args.length; i++)
-                new JImageViewer( args[i] );
+            //load them concurrently (windows appear as they finish)
+            BatchLoader  batch = new BatchLoader( Arrays.asList( args ), null );
+            batch.start();
+            batch.await();  //(the loads are on daemon threads)
         }
     }
 }
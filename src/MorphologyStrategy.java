@@ -0,0 +1,338 @@
+/**
+    \file   MorphologyStrategy.java
+    \brief  contains MorphologyStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.Arrays;
+//----------------------------------------------------------------------
+/** \brief gray scale (and binary) morphology w/ a rectangular (or line)
+ *  structuring element:  a sequence of erosions (the min of the values
+ *  in the element) and dilations (the max).  See ErosionStrategy,
+ *  DilationStrategy, OpeningStrategy, and ClosingStrategy.
+ *
+ *  A (2*rx+1) x (2*ry+1) rectangle is separable (a horizontal line then
+ *  a vertical line) and each line is done w/ the van Herk/Gil-Werman
+ *  algorithm:  the values are split into blocks of the line's length,
+ *  running mins (or maxes) are computed forward and backward within
+ *  each block, and each window is then the min of one backward and one
+ *  forward value.  So the cost is about 3 comparisons per sample per
+ *  line regardless of its length.  Vertical lines are done on whole rows
+ *  (for all columns at once).  The element is clipped at the image
+ *  borders.  Each band of a color image is processed separately (in the
+ *  interleaved layout).
+ *  <br/>
+ *  If the rows of a gray image that are needed contain only two values
+ *  (min and max, e.g., a binary image), they are packed 64 pixels per
+ *  long and AND (erosion) or OR (dilation) is applied to whole words.
+ *  <br/>
+ *  See M. van Herk, "A fast algorithm for local minimum and maximum
+ *  filters on rectangular and octagonal kernels," Pattern Recognition
+ *  Letters 13(7), 1992 and J. Gil and M. Werman, "Computing 2-D min,
+ *  median, and max filters," IEEE PAMI 15(5), 1993.
+ */
+public abstract class MorphologyStrategy implements NeighborhoodStrategy {
+    private final boolean[]  mErode;  ///< the steps (true=erosion, false=dilation)
+    private final int        mRx;     ///< the element is (2*rx+1) pixels wide
+    private final int        mRy;     ///< the element is (2*ry+1) pixels high
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param erode the steps (true=erosion, false=dilation)
+     *  \param rx the element is (2*rx+1) pixels wide (0 for a vertical line)
+     *  \param ry the element is (2*ry+1) pixels high (0 for a horizontal line)
+     *  \returns nothing (ctor)
+     */
+    protected MorphologyStrategy ( boolean[] erode, int rx, int ry ) {
+        mErode = erode.clone();
+        mRx    = Math.max( 0, rx );
+        mRy    = Math.max( 0, ry );
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int radius ( ) {  return mErode.length * mRy;  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {  return Parallel.pack( min, max );  }
+    //----------------------------------------------------------------------
+    @Override
+    public void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                            int w, int h, int samples, int min, int max, int y0, int y1 )
+    {
+        final int  rowLength = w * samples;
+        final int  r = radius();
+        //rows are done in chunks (each w/ its halo rows)
+        final int  chunk = Math.min( y1 - y0, Math.max( 64, 2*r ) );
+        final int  rows  = chunk + 2*r;
+        int[]  data = new int[ rows * rowLength ];
+        int[]  g    = new int[ Math.max( rows * rowLength, (w + 2*mRx) * samples ) ];
+        int[]  hb   = new int[ g.length ];
+        int[]  pad  = new int[ (w + 2*mRx) * samples ];
+        long[] bits = null;
+        for (int cy0=y0; cy0<y1; cy0+=chunk) {
+            final int  cy1 = Math.min( y1, cy0 + chunk );
+            final int  a0  = Math.max( 0, cy0 - r ), a1 = Math.min( h, cy1 + r );
+            src.getRange( (a0 - srcY0) * rowLength, data, 0, (a1 - a0) * rowLength );
+            if (samples == 1 && min < max && isBinary( data, (a1 - a0) * rowLength, min, max )) {
+                if (bits == null)    bits = new long[ rows * words( w ) * 3 ];
+                binaryChunk( data, bits, w, h, min, max, a0, a1, cy0, cy1 );
+            } else {
+                for (int k=0; k<mErode.length; k++) {
+                    //rows [b0..b1) are the input of step k; [c0..c1) its output
+                    final int  grow = (mErode.length - 1 - k) * mRy;
+                    final int  b0 = Math.max( 0, cy0 - grow - mRy ), b1 = Math.min( h, cy1 + grow + mRy );
+                    final int  c0 = Math.max( 0, cy0 - grow ),       c1 = Math.min( h, cy1 + grow );
+                    if (mRx > 0) {
+                        for (int y=b0; y<b1; y++)
+                            horizontal( data, (y - a0) * rowLength, w, samples, mErode[k], pad, g, hb );
+                    }
+                    if (mRy > 0)    vertical( data, a0, c0, c1, h, rowLength, mErode[k], g, hb );
+                }
+            }
+            dst.setRange( cy0 * rowLength, data, (cy0 - a0) * rowLength, (cy1 - cy0) * rowLength );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns true if the first n values are all either min or max */
+    private static boolean isBinary ( int[] data, int n, int min, int max ) {
+        for (int i=0; i<n; i++) {
+            if (data[ i ] != min && data[ i ] != max)    return false;
+        }
+        return true;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the min (erode) or max of a and b */
+    private static int op ( boolean erode, int a, int b ) {
+        return erode ? Math.min( a, b ) : Math.max( a, b );
+    }
+    //----------------------------------------------------------------------
+    /** \brief van Herk/Gil-Werman along a row (in place).
+     *  \param data the row starts at data[off]
+     *  \param pad, g, hb temporary arrays of (w + 2*rx) * samples values
+     *  \returns nothing (void)
+     */
+    private void horizontal ( int[] data, int off, int w, int s, boolean erode,
+                              int[] pad, int[] g, int[] hb )
+    {
+        final int  k = 2*mRx + 1, n = w + 2*mRx;  //window and padded row lengths (in pixels)
+        final int  identity = erode ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        Arrays.fill( pad, 0, mRx*s, identity );
+        System.arraycopy( data, off, pad, mRx*s, w*s );
+        Arrays.fill( pad, (mRx+w)*s, n*s, identity );
+        for (int q0=0; q0<n; q0+=k) {
+            final int  q1 = Math.min( n, q0 + k );
+            //forward within the block
+            for (int i=q0*s; i<(q0+1)*s; i++)    g[ i ] = pad[ i ];
+            for (int i=(q0+1)*s; i<q1*s; i++)    g[ i ] = op( erode, g[ i-s ], pad[ i ] );
+            //backward within the block
+            for (int i=(q1-1)*s; i<q1*s; i++)    hb[ i ] = pad[ i ];
+            for (int i=(q1-1)*s-1; i>=q0*s; i--)    hb[ i ] = op( erode, hb[ i+s ], pad[ i ] );
+        }
+        //the window of pixel x is [x..x+2*rx] in the padded row
+        final int  d = 2 * mRx * s;
+        for (int i=0; i<w*s; i++)    data[ off+i ] = op( erode, hb[ i ], g[ i+d ] );
+    }
+    //----------------------------------------------------------------------
+    /** \brief van Herk/Gil-Werman along columns (on whole rows).  Output
+     *  rows [c0..c1) are computed from rows [c0-ry..c1+ry) (those beyond
+     *  the image are ignored) and replace them in data.
+     *  \param data rows [a0..) of the image
+     *  \param g, hb temporary arrays of (c1-c0+2*ry) rows
+     *  \returns nothing (void)
+     */
+    private void vertical ( int[] data, int a0, int c0, int c1, int h, int rowLength,
+                            boolean erode, int[] g, int[] hb )
+    {
+        final int  k = 2*mRy + 1, n = c1 - c0 + 2*mRy;
+        final int  identity = erode ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+        for (int q0=0; q0<n; q0+=k) {
+            final int  q1 = Math.min( n, q0 + k );
+            for (int p=q0; p<q1; p++) {
+                final int  y = c0 - mRy + p, o = p * rowLength, in = (y - a0) * rowLength;
+                final boolean  inside = y >= 0 && y < h;
+                if (p == q0) {
+                    for (int i=0; i<rowLength; i++)    g[ o+i ] = inside ? data[ in+i ] : identity;
+                } else {
+                    for (int i=0; i<rowLength; i++)
+                        g[ o+i ] = op( erode, g[ o-rowLength+i ], inside ? data[ in+i ] : identity );
+                }
+            }
+            for (int p=q1-1; p>=q0; p--) {
+                final int  y = c0 - mRy + p, o = p * rowLength, in = (y - a0) * rowLength;
+                final boolean  inside = y >= 0 && y < h;
+                if (p == q1-1) {
+                    for (int i=0; i<rowLength; i++)    hb[ o+i ] = inside ? data[ in+i ] : identity;
+                } else {
+                    for (int i=0; i<rowLength; i++)
+                        hb[ o+i ] = op( erode, hb[ o+rowLength+i ], inside ? data[ in+i ] : identity );
+                }
+            }
+        }
+        //the window of row y is [p..p+2*ry] where p = y-c0
+        final int  d = 2 * mRy * rowLength;
+        for (int y=c0; y<c1; y++) {
+            final int  o = (y - c0) * rowLength, out = (y - a0) * rowLength;
+            for (int i=0; i<rowLength; i++)    data[ out+i ] = op( erode, hb[ o+i ], g[ o+d+i ] );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of longs in a packed row of w pixels */
+    private static int words ( int w ) {  return (w + 63) >>> 6;  }
+    //----------------------------------------------------------------------
+    /** \brief The steps for a chunk of a binary image (packed 64 pixels per
+     *  long).  Rows [a0..a1) of data are packed, the steps are applied, and
+     *  rows [cy0..cy1) are unpacked (back into data).
+     *  \param bits space for 3 * (a1-a0) packed rows
+     *  \returns nothing (void)
+     */
+    private void binaryChunk ( int[] data, long[] bits, int w, int h, int min, int max,
+                               int a0, int a1, int cy0, int cy1 )
+    {
+        final int  wpr = words( w ), rows = bits.length / (3 * wpr);
+        final int  g = rows * wpr, hb = 2 * rows * wpr;  //offsets of the temporary rows
+        //pack (bit x of word x/64 is 1 for max)
+        Arrays.fill( bits, 0, (a1 - a0) * wpr, 0 );
+        for (int y=a0; y<a1; y++) {
+            final int  in = (y - a0) * w, o = (y - a0) * wpr;
+            for (int x=0; x<w; x++) {
+                if (data[ in+x ] == max)    bits[ o + (x >>> 6) ] |= 1L << x;
+            }
+        }
+        long[]  t1 = new long[ wpr ], t2 = new long[ wpr ], t3 = new long[ wpr ];
+        for (int k=0; k<mErode.length; k++) {
+            final boolean  erode = mErode[ k ];
+            final long     fill  = erode ? -1L : 0L;
+            final int  grow = (mErode.length - 1 - k) * mRy;
+            final int  b0 = Math.max( 0, cy0 - grow - mRy ), b1 = Math.min( h, cy1 + grow + mRy );
+            final int  c0 = Math.max( 0, cy0 - grow ),       c1 = Math.min( h, cy1 + grow );
+            for (int y=b0; y<b1; y++) {
+                final int  o = (y - a0) * wpr;
+                tail( bits, o, w, fill );
+                if (mRx > 0)    horizontalBits( bits, o, w, erode, t1, t2, t3 );
+            }
+            if (mRy == 0)    continue;
+            //van Herk/Gil-Werman on whole (packed) rows
+            final int  kk = 2*mRy + 1, n = c1 - c0 + 2*mRy;
+            for (int q0=0; q0<n; q0+=kk) {
+                final int  q1 = Math.min( n, q0 + kk );
+                for (int p=q0; p<q1; p++) {
+                    final int  y = c0 - mRy + p, o = g + p * wpr, in = (y - a0) * wpr;
+                    final boolean  inside = y >= 0 && y < h;
+                    for (int i=0; i<wpr; i++) {
+                        long  v = inside ? bits[ in+i ] : fill;
+                        bits[ o+i ] = (p == q0) ? v : (erode ? bits[ o-wpr+i ] & v : bits[ o-wpr+i ] | v);
+                    }
+                }
+                for (int p=q1-1; p>=q0; p--) {
+                    final int  y = c0 - mRy + p, o = hb + p * wpr, in = (y - a0) * wpr;
+                    final boolean  inside = y >= 0 && y < h;
+                    for (int i=0; i<wpr; i++) {
+                        long  v = inside ? bits[ in+i ] : fill;
+                        bits[ o+i ] = (p == q1-1) ? v : (erode ? bits[ o+wpr+i ] & v : bits[ o+wpr+i ] | v);
+                    }
+                }
+            }
+            for (int y=c0; y<c1; y++) {
+                final int  p = y - c0, out = (y - a0) * wpr;
+                for (int i=0; i<wpr; i++) {
+                    long  a = bits[ hb + p*wpr + i ], b = bits[ g + (p + 2*mRy)*wpr + i ];
+                    bits[ out+i ] = erode ? a & b : a | b;
+                }
+            }
+        }
+        //unpack
+        for (int y=cy0; y<cy1; y++) {
+            final int  o = (y - a0) * w, in = (y - a0) * wpr;
+            for (int x=0; x<w; x++)
+                data[ o+x ] = ((bits[ in + (x >>> 6) ] >>> x) & 1) != 0 ? max : min;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Set the bits beyond w in the last word of a packed row. */
+    private static void tail ( long[] bits, int off, int w, long fill ) {
+        if ((w & 63) == 0)    return;
+        final long  mask = (1L << (w & 63)) - 1;  //bits that are pixels
+        final int   last = off + words( w ) - 1;
+        bits[ last ] = (bits[ last ] & mask) | (fill & ~mask);
+    }
+    //----------------------------------------------------------------------
+    /** \brief A horizontal line (of 2*rx+1 pixels) on a packed row.  The
+     *  AND (or OR) of pixels [x..x+rx] and that of pixels [x-rx..x] are
+     *  each computed by doubling (windows of 1, 2, 4, ... pixels) and are
+     *  then combined.
+     *  \param t1, t2, t3 temporary rows
+     *  \returns nothing (void)
+     */
+    private void horizontalBits ( long[] bits, int off, int w, boolean erode,
+                                  long[] t1, long[] t2, long[] t3 )
+    {
+        final int   wpr = t1.length;
+        final long  fill = erode ? -1L : 0L;
+        System.arraycopy( bits, off, t1, 0, wpr );
+        window( t1, mRx+1, false, erode, t2 );  //[x..x+rx]
+        System.arraycopy( bits, off, t3, 0, wpr );
+        window( t3, mRx+1, true, erode, t2 );   //[x-rx..x]
+        for (int i=0; i<wpr; i++)    bits[ off+i ] = erode ? t1[ i ] & t3[ i ] : t1[ i ] | t3[ i ];
+        tail( bits, off, w, fill );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Replace each bit x of a packed row w/ the AND (or OR) of the
+     *  k bits [x..x+k-1] (or [x-k+1..x] if up).
+     *  \param t temporary row
+     *  \returns nothing (void)
+     */
+    private static void window ( long[] v, int k, boolean up, boolean erode, long[] t ) {
+        final long  fill = erode ? -1L : 0L;
+        int  n = 1;  //v is the window of n bits
+        while (n < k) {
+            final int  m = Math.min( n, k - n );  //windows of n bits overlap if m < n
+            if (up)    shiftUp(   v, m, fill, t );
+            else       shiftDown( v, m, fill, t );
+            for (int i=0; i<v.length; i++)    v[ i ] = erode ? v[ i ] & t[ i ] : v[ i ] | t[ i ];
+            n += m;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief out[x] = v[x+t] (fill beyond the end). */
+    private static void shiftDown ( long[] v, int t, long fill, long[] out ) {
+        final int  ws = t >>> 6, bs = t & 63, n = v.length;
+        for (int i=0; i<n; i++) {
+            long  lo = (i+ws   < n) ? v[ i+ws ]   : fill;
+            long  hi = (i+ws+1 < n) ? v[ i+ws+1 ] : fill;
+            out[ i ] = (bs == 0) ? lo : (lo >>> bs) | (hi << (64 - bs));
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief out[x] = v[x-t] (fill before the start). */
+    private static void shiftUp ( long[] v, int t, long fill, long[] out ) {
+        final int  ws = t >>> 6, bs = t & 63, n = v.length;
+        for (int i=0; i<n; i++) {
+            long  hi = (i-ws   >= 0) ? v[ i-ws ]   : fill;
+            long  lo = (i-ws-1 >= 0) ? v[ i-ws-1 ] : fill;
+            out[ i ] = (bs == 0) ? hi : (hi << bs) | (lo >>> (64 - bs));
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,64 @@
+/**
+    \file   NeighborhoodStrategy.java
+    \brief  contains NeighborhoodStrategy interface definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief a strategy in which each output value depends upon the input
+ *  values in a window (of radius() rows above and below) around it
+ *  (e.g., erosion, dilation, convolution).
+ *
+ *  A Pipeline runs a neighborhood strategy in parallel bands of rows.
+ *  Each band reads its rows plus radius() halo rows above and below from
+ *  the input and writes only its own rows of the output, so the bands
+ *  are independent.
+ */
+public interface NeighborhoodStrategy extends Strategy {
+    /** \returns the number of rows above and below an output row that
+     *  are needed to compute it
+     */
+    int radius ( );
+    //----------------------------------------------------------------------
+    /** \brief Compute rows [y0..y1) of the output.
+     *  \param src input samples of rows [srcY0..) (at least rows
+     *         max(0,y0-radius()) through min(h,y1+radius())-1).  sample
+     *         (x,y,band) is at ((y-srcY0)*w + x)*samples + band.
+     *  \param srcY0 first row in src
+     *  \param dst output samples (of the whole image)
+     *  \param w image width
+     *  \param h image height
+     *  \param samples samples per pixel (1=gray, 3=color)
+     *  \param min smallest input value
+     *  \param max largest input value
+     *  \param y0 first row
+     *  \param y1 one past the last row
+     *  \returns nothing (void)
+     */
+    void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                     int w, int h, int samples, int min, int max, int y0, int y1 );
+
+}
+//----------------------------------------------------------------------
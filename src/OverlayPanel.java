@@ -0,0 +1,116 @@
+/**
+    \file   OverlayPanel.java
+    \brief  contains OverlayPanel class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+//----------------------------------------------------------------------
+/** \brief a transparent layer (the glass pane of a JImageViewer) that
+ *  draws lines of text (e.g., the mouse position) over the image.
+ *
+ *  The text stays at the top left of the anchor (the scroll pane's
+ *  viewport) regardless of scrolling.  Changing the text only repaints
+ *  the bounds of the old and new text, so the image below is not redrawn
+ *  (only those bounds of it, from ImagePanel's cache).  The layer has no
+ *  mouse listeners, so mouse events go to the components below it.
+ */
+class OverlayPanel extends JComponent {
+    private final JComponent  mAnchor;             ///< text is drawn relative to its top left
+    private String[]   mLines  = new String[ 0 ];  ///< text (null or empty lines are skipped)
+    private Rectangle  mBounds = null;             ///< bounds of mLines (in our coordinates) or null
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param anchor text is drawn relative to its top left corner
+     *  \returns nothing (ctor)
+     */
+    OverlayPanel ( JComponent anchor ) {
+        mAnchor = anchor;
+        setOpaque( false );
+        setFont( UIManager.getFont( "Panel.font" ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Change the text.  Only the old and new bounds are repainted.
+     *  \param lines text (line i is drawn at y = 40 + 20 i)
+     *  \returns nothing (void)
+     */
+    void setLines ( String... lines ) {
+        if (Arrays.equals( lines, mLines ))    return;
+        Rectangle  old = mBounds;
+        mLines  = lines;
+        mBounds = textBounds();
+        if (old != null)        repaint( old );
+        if (mBounds != null)    repaint( mBounds );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the position of the baseline of line i */
+    private Point origin ( int i ) {
+        Point  p = SwingUtilities.convertPoint( mAnchor, 0, 0, this );
+        p.translate( 20, 40 + 20 * i );
+        return p;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the bounds of the text (w/ its shadow) or null if none */
+    private Rectangle textBounds ( ) {
+        FontMetrics  fm = getFontMetrics( getFont() );
+        Rectangle    r  = null;
+        for (int i=0; i<mLines.length; i++) {
+            if (mLines[ i ] == null || mLines[ i ].isEmpty())    continue;
+            Point      p = origin( i );
+            Rectangle  b = new Rectangle( p.x, p.y - fm.getAscent(),
+                                          fm.stringWidth( mLines[ i ] ) + 2,
+                                          fm.getAscent() + fm.getDescent() + 2 );
+            r = (r == null) ? b : r.union( b );
+        }
+        return r;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Draw the text (white w/ a black shadow).
+     *  \param g graphics context
+     *  \returns nothing (void)
+     */
+    @Override
+    protected void paintComponent ( Graphics g ) {
+        g.setFont( getFont() );
+        for (int i=0; i<mLines.length; i++) {
+            if (mLines[ i ] == null || mLines[ i ].isEmpty())    continue;
+            Point  p = origin( i );
+            g.setColor( Color.BLACK );
+            g.drawString( mLines[ i ], p.x, p.y );
+            g.setColor( Color.WHITE );
+            g.drawString( mLines[ i ], p.x+1, p.y+1 );
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -35,11 +35,18 @@
  *  as GH (Generally Hectic) should NOT incorporate this code into
  *  their proprietary programs.)
  */
+import  java.awt.Rectangle;
+import  java.io.EOFException;
 import  java.io.FileInputStream;
-import  java.io.FileOutputStream;
-import  java.io.PrintWriter;
-import  java.io.RandomAccessFile;
-import  java.util.Scanner;
+import  java.io.IOException;
+import  java.io.InterruptedIOException;
+import  java.nio.ByteBuffer;
+import  java.nio.ByteOrder;
+import  java.nio.MappedByteBuffer;
+import  java.nio.ShortBuffer;
+import  java.nio.channels.FileChannel;
+import  java.nio.file.Paths;
+import  java.nio.file.StandardOpenOption;
 //----------------------------------------------------------------------
 /** This class contains methods that read and write PNM images (color rgb
  *  and grey images).
@@ -77,8 +84,37 @@ public class PNMHelper {
     public int     mMin;
     /** maximum of image data */
     public int     mMax;
-    /** image pixel data */
+    /** image pixel data (null when loaded in compact mode) */
     public int[]   mData;
+    /** image pixel data (always valid; wraps mData unless loaded in
+     *  compact mode in which case the narrowest backing is used) */
+    public PixelBuffer  mPixels;
+    /** file offset of the first byte of image data (just past the header) */
+    public long    mDataOffset;
+    /** true if the image data are binary (P5/P6); false if ASCII (P2/P3) */
+    public boolean mBinary;
+
+    /** max number of bytes mapped at once when reading binary data */
+    private static final long  MAP_WINDOW      = 64L * 1024 * 1024;
+    /** number of samples bulk copied out of a mapped buffer at once */
+    private static final int   DECODE_CHUNK    = 64 * 1024;
+
+    /** number of progress reports (see Listener) per image */
+    private static final int   PROGRESS_STEPS  = 64;
+
+    /** if true, only mPixels (w/ the narrowest backing) is filled in */
+    private boolean  mCompact;
+    //--------------------------------------------------------------------
+    /** This interface is used to report the progress of readData(). */
+    public interface Listener {
+        /**
+         * called after each band of rows has been decoded.
+         * @param y0 is the first row
+         * @param y1 is one past the last row
+         * @return false to cancel the decode
+         */
+        boolean rowsDecoded ( int y0, int y1 );
+    }
     //--------------------------------------------------------------------
     /**
      * ctor for an empty image of the specified width, height, and type.
@@ -92,6 +128,7 @@ public class PNMHelper {
         mH = height;
         mSamplesPerPixel = samples;
         mData = new int[ mW * mH * mSamplesPerPixel ];
+        mPixels = PixelBuffer.wrap( mData );
     }
     //....................................................................
     /**
@@ -101,130 +138,389 @@ public class PNMHelper {
      */
     public PNMHelper ( int width, int height ) {  this( width, height, 1 );  }
     //....................................................................
+    /** ctor used by readHeader() */
+    private PNMHelper ( ) { }
+    //....................................................................
+    /**
+     * read only the header of an image file.  the data are not read (so
+     * mData and mPixels are null).  this may be used to decide how to read
+     * an image that might not fit in memory.
+     * @param fname is the file name
+     * @return a PNMHelper w/ mW, mH, mMax, mSamplesPerPixel, mDataOffset,
+     * and mBinary filled in
+     */
+    public static PNMHelper readHeader ( String fname ) throws IOException {
+        PNMHelper  p = new PNMHelper();
+        p.mFileName = fname;
+        try (FileInputStream  fis = new FileInputStream( fname )) {
+            String  fileType = p.read_header( new PNMTokenizer(fis) );
+            p.mSamplesPerPixel = (fileType.equals("P3") || fileType.equals("P6")) ? 3 : 1;
+            p.mBinary = fileType.equals( "P5" ) || fileType.equals( "P6" );
+        }
+        return p;
+    }
+    //....................................................................
     /**
      * ctor that loads an image from a file
      * @param fname is the file name
      */
-    public PNMHelper ( String fname ) {
+    public PNMHelper ( String fname ) {  this( fname, false );  }
+    //....................................................................
+    /**
+     * ctor that loads an image from a file
+     * @param fname   is the file name
+     * @param compact if true, the data are only stored in mPixels using
+     *                the narrowest backing for mMax (e.g., 1 byte per
+     *                sample for 8-bit data) and mData is null
+     */
+    public PNMHelper ( String fname, boolean compact ) {
         mFileName = fname;
-        Scanner  in = null;
-        try {
-            in = new Scanner( new FileInputStream(fname) );
+        mCompact  = compact;
+        //the header is parsed directly from the bytes of the file so that
+        // we know exactly where the image data begin.  for ASCII files the
+        // same tokenizer then continues on through the data.
+        try (FileInputStream  fis = new FileInputStream( fname )) {
+            PNMTokenizer  in = new PNMTokenizer( fis );
+            String  fileType = read_header( in );
+
+            //determine image file type
+            //the first thing should be the file type (P2, P3, P5, or P6)
+            if        (fileType.equals( "P2" )) {
+                mSamplesPerPixel = 1;
+                read_ascii_data( in );
+            } else if (fileType.equals( "P3" )) {
+                mSamplesPerPixel = 3;
+                read_ascii_data( in );
+            } else if (fileType.equals( "P5" )) {
+                mSamplesPerPixel = 1;
+                mBinary = true;
+                read_binary_data();
+            } else if (fileType.equals( "P6" )) {
+                mSamplesPerPixel = 3;
+                mBinary = true;
+                read_binary_data();
+            } else {
+                assert false;  //should never get here
+            }
         } catch (Exception e) {
             System.err.println( "PNMHelper:PNMHelper: " + e );
-            return;
-        }
-        
-        //skip comment lines (if any)
-        String  ln = null;
-        while (in.hasNextLine()) {
-            ln = in.nextLine();
-            if (!ln.startsWith("#"))    break;
-        }
-        assert ln != null;           //could be EOF
-        assert !ln.startsWith("#");  //could be comments
-        
-        //save file type for later
-        String  fileType = ln;
-        
-        //skip comment lines (if any)
-        ln = null;
-        while (in.hasNextLine()) {
-            ln = in.nextLine();
-            if (!ln.startsWith("#"))    break;
         }
-        assert ln != null;           //could be EOF
-        assert !ln.startsWith("#");  //could be comments
-        
-        //should be w h
-        String[]  parts = ln.split("\\s+");
-        mW = Integer.parseInt( parts[0] );
-        mH = Integer.parseInt( parts[1] );
-        
-        //skip comment lines (if any)
-        ln = null;
-        while (in.hasNextLine()) {
-            ln = in.nextLine();
-            if (!ln.startsWith("#"))    break;
+    }
+    //--------------------------------------------------------------------
+    /**
+     * parse the header (magic number, width, height, and max) and leave
+     * mDataOffset at the first byte of the image data.  comments may
+     * appear anywhere in the header (as the pnm spec allows).
+     * @param in is the tokenizer (positioned at the beginning of the file)
+     * @return the file type (P2, P3, P5, or P6)
+     */
+    private String read_header ( PNMTokenizer in ) throws IOException {
+        String  fileType = in.nextMagic();
+        mW   = in.nextInt();
+        mH   = in.nextInt();
+        mMax = in.nextInt();
+        //exactly one whitespace char separates max from the data
+        in.skipSingleWhitespace();
+        mDataOffset = in.position();
+        return fileType;
+    }
+    //--------------------------------------------------------------------
+    /**
+     * read the image data (after readHeader()) into the specified buffer,
+     * reporting progress (rows decoded) to a listener.  this allows the
+     * caller to display the image while it is being decoded and to cancel
+     * the decode.
+     * @param dst is the output buffer (w/ mW*mH*mSamplesPerPixel samples
+     *            whose backing can hold [0..mMax])
+     * @param l   is the listener (may be null)
+     * @throws InterruptedIOException if the listener cancelled the decode
+     * @throws EOFException if the file is truncated
+     */
+    public void readData ( PixelBuffer dst, Listener l ) throws IOException {
+        if (mBinary) {
+            read_binary_data( dst, l );
+            return;
         }
-        assert ln != null;           //could be EOF
-        assert !ln.startsWith("#");  //could be comments
-        //what remains is/should be max
-        mMax = Integer.parseInt( ln );
-        
-        //determine image file type
-        //the first thing should be the file type (P2, P3, P5, or P6)
-        if        (fileType.equals( "P2" )) {
-            mSamplesPerPixel = 1;
-            read_ascii_data( in );
-        } else if (fileType.equals( "P3" )) {
-            mSamplesPerPixel = 3;
-            read_ascii_data( in );
-        } else if (fileType.equals( "P5" )) {
-            mSamplesPerPixel = 1;
-            read_binary_data();
-        } else if (fileType.equals( "P6" )) {
-            mSamplesPerPixel = 3;
-            read_binary_data();
-        } else {
-            assert false;  //should never get here
+        try (FileInputStream  fis = new FileInputStream( mFileName )) {
+            fis.getChannel().position( mDataOffset );
+            read_ascii_data( new PNMTokenizer(fis), dst, l );
         }
-        
-        in.close();
     }
     //--------------------------------------------------------------------
     /**
      * read in ASCII image data
-     * @param in is the input stream that is already positioned at the data
+     * @param in is the tokenizer that is already positioned at the data
      */
-    private void read_ascii_data ( Scanner in ) {
-        mData = new int[ mW*mH*mSamplesPerPixel ];
-        int  tMax = 0;
-        for (int i=0; i<mData.length; i++) {
-            mData[i] = in.nextInt();
-            if (i==0)               mMin = tMax = mData[0];
-            if (mData[i] < mMin)    mMin = mData[i];
-            if (mData[i] > tMax)    tMax = mData[i];
-            if ((i%mW) == 0) {  System.out.print( "." );  System.out.flush();  }
+    private void read_ascii_data ( PNMTokenizer in ) throws IOException {
+        final int  length = mW*mH*mSamplesPerPixel;
+        if (mCompact) {
+            //decoded straight into the narrow buffer (mData stays null)
+            read_ascii_data( in, PixelBuffer.allocate( length, 0, mMax ), null );
+        } else {
+            mData = new int[ length ];
+            read_ascii_data( in, PixelBuffer.wrap(mData), null );
+        }
+    }
+    //....................................................................
+    /**
+     * read in ASCII image data (a row at a time)
+     * @param in  is the tokenizer that is already positioned at the data
+     * @param dst is the output buffer
+     * @param l   is the listener (may be null)
+     */
+    private void read_ascii_data ( PNMTokenizer in, PixelBuffer dst, Listener l ) throws IOException {
+        mPixels = dst;
+        Timer  t = new Timer();
+        long   start = in.position();
+        final int  rowLength = mW*mSamplesPerPixel;
+        final int  rowsPerChunk = Math.max( 1, mH / PROGRESS_STEPS );
+        int[]  row = new int[ rowLength * rowsPerChunk ];
+        mMin = Integer.MAX_VALUE;
+        int  tMax = Integer.MIN_VALUE;
+        for (int y=0; y<mH; y+=rowsPerChunk) {
+            int   rows = Math.min( rowsPerChunk, mH-y );
+            long  mm   = in.readInts( row, 0, rows*rowLength );
+            if (!dst.canHold( (int)(mm >> 32), (int)mm ))
+                throw new IOException( "PNMHelper: sample value out of range" );
+            dst.setRange( y*rowLength, row, 0, rows*rowLength );
+            mMin = Math.min( mMin, (int)(mm >> 32) );
+            tMax = Math.max( tMax, (int)mm );
+            if (l != null && !l.rowsDecoded( y, y+rows ))
+                throw new InterruptedIOException( "PNMHelper: cancelled" );
         }
         assert tMax == mMax;
+        double  s  = t.getElapsedTimeNano();
+        double  mb = (in.position() - start) / (1024.0 * 1024.0);
+        System.out.printf( "PNMHelper: read %.1f MB in %.3f s (%.1f MB/s)%n", mb, s, mb / s );
     }
     //....................................................................
     /**
-     * read binary image data from a file (specified by mFileName)
+     * read binary image data from a file (specified by mFileName).
      */
     private void read_binary_data ( ) {
-        mData = new int[ mW*mH*mSamplesPerPixel ];
-        int  tMax = 0;
+        final int  length = mW*mH*mSamplesPerPixel;
+        if (mCompact) {
+            mPixels = PixelBuffer.allocate( length, 0, mMax );
+        } else {
+            mData   = new int[ length ];
+            mPixels = PixelBuffer.wrap( mData );
+        }
         try {
-            RandomAccessFile  in = new RandomAccessFile( mFileName, "r" );
-            if (mMax<256) {
-                in.seek( in.length() - mData.length );
-                for (int i=0; i<mData.length; i++) {
-                    mData[i] = in.read();
-                    if (i==0)               mMin = tMax = mData[0];
-                    if (mData[i] < mMin)    mMin = mData[i];
-                    if (mData[i] > tMax)    tMax = mData[i];
-                    if ((i%mW) == 0) {  System.out.print( "." );  System.out.flush();  }
-                }
-            } else {
-                assert mMax <= Short.MAX_VALUE;
-                in.seek( in.length() - mData.length*2 );
-                for (int i=0; i<mData.length; i++) {
-                    int  hi = in.read();
-                    int  lo = in.read();
-                    mData[i] = (hi << 8) | lo;
-                    if (i==0)               mMin = tMax = mData[0];
-                    if (mData[i] < mMin)    mMin = mData[i];
-                    if (mData[i] > tMax)    tMax = mData[i];
-                    if ((i%mW) == 0) {  System.out.print( "." );  System.out.flush();  }
-                }
-            }
-            in.close();
+            read_binary_data( mPixels, null );
         } catch (Exception e) {
             System.err.println( "PNMHelper:PNMHelper: " + e );
         }
-        assert tMax == mMax;
+    }
+    //....................................................................
+    /**
+     * read binary image data from a file (specified by mFileName).
+     * the file is memory mapped (in bands of rows of at most MAP_WINDOW
+     * bytes so that files larger than 2GB may be read) and samples are
+     * decoded in bulk.  min and max are determined in the same pass.
+     * @param dst is the output buffer
+     * @param l   is the listener (may be null)
+     * @throws EOFException if the file is truncated (before anything is
+     *         decoded)
+     */
+    private void read_binary_data ( PixelBuffer dst, Listener l ) throws IOException {
+        mPixels = dst;
+        final int  rowLength = mW*mSamplesPerPixel;
+        final int  bytesPerSample = (mMax < 256) ? 1 : 2;
+        final long rowBytes = (long)rowLength * bytesPerSample;
+        final long bytes = rowBytes * mH;
+        final int  rowsPerChunk = (int)Math.max( 1, Math.min( MAP_WINDOW / rowBytes,
+                                                             (mH + PROGRESS_STEPS - 1) / PROGRESS_STEPS ) );
+        Timer  t = new Timer();
+        try (FileChannel  ch = FileChannel.open( Paths.get(mFileName), StandardOpenOption.READ )) {
+            if (mDataOffset + bytes > ch.size())
+                throw new EOFException( "PNMHelper:read_binary_data: file is truncated" );
+            mMin = Integer.MAX_VALUE;
+            int  tMax = Integer.MIN_VALUE;
+            for (int y=0; y<mH; y+=rowsPerChunk) {
+                int   rows = Math.min( rowsPerChunk, mH-y );
+                long  pos  = mDataOffset + y * rowBytes;
+                int   n    = rows * rowLength;
+                MappedByteBuffer  buf = ch.map( FileChannel.MapMode.READ_ONLY, pos,
+                                                (long)n * bytesPerSample );
+                buf.order( ByteOrder.BIG_ENDIAN );  //most significant byte is first
+                long  mm;
+                if (bytesPerSample == 1)    mm = decode8(  buf, dst, y*rowLength, n );
+                else                        mm = decode16( buf, dst, y*rowLength, n );
+                int  lo = (int)(mm >> 32);
+                int  hi = (int)mm;
+                if (lo < mMin)    mMin = lo;
+                if (hi > tMax)    tMax = hi;
+                if (l != null && !l.rowsDecoded( y, y+rows ))
+                    throw new InterruptedIOException( "PNMHelper: cancelled" );
+            }
+            assert tMax == mMax;
+        }
+        double  s  = t.getElapsedTimeNano();
+        double  mb = bytes / (1024.0 * 1024.0);
+        System.out.printf( "PNMHelper: read %.1f MB in %.3f s (%.1f MB/s)%n", mb, s, mb / s );
+    }
+    //--------------------------------------------------------------------
+    /**
+     * read a region of the image data (after readHeader()), keeping every
+     * step-th pixel of every step-th row.  binary data are memory mapped
+     * (in bands of rows of at most MAP_WINDOW bytes) and only the rows
+     * (and, for large steps, only the pages) that are kept are touched.
+     * ASCII data cannot be seeked, so all of it is read and then cropped.
+     * @param region is the region (in image coordinates; clamped to the
+     *               image) to read (null for the whole image)
+     * @param step   is the subsampling (1 keeps every pixel)
+     * @param dst    is the output buffer (w/ regionSize(region,step)
+     *               pixels whose backing can hold [0..mMax])
+     */
+    public void readRegion ( Rectangle region, int step, PixelBuffer dst ) throws IOException {
+        final Rectangle  r  = clampRegion( region );
+        final int  spp = mSamplesPerPixel;
+        final int  ow  = (r.width + step - 1) / step, oh = (r.height + step - 1) / step;
+        if (!mBinary) {
+            //(readData() throws if the data are truncated or corrupt.  a
+            // separate header is used so that this one keeps no pixels.)
+            PixelBuffer  all = PixelBuffer.allocate( mW*mH*spp, 0, mMax );
+            readHeader( mFileName ).readData( all, null );
+            for (int j=0; j<oh; j++) {
+                for (int i=0; i<ow; i++) {
+                    final int  p = ((r.y + j*step) * mW + r.x + i*step) * spp;
+                    for (int c=0; c<spp; c++)    dst.set( (j*ow + i)*spp + c, all.get( p+c ) );
+                }
+            }
+            return;
+        }
+        final int  bytesPerSample = (mMax < 256) ? 1 : 2;
+        final long rowBytes = (long)mW * spp * bytesPerSample;
+        //output rows per mapped band
+        final int  rowsPerMap = (int)Math.max( 1, MAP_WINDOW / (rowBytes * step) );
+        try (FileChannel  ch = FileChannel.open( Paths.get(mFileName), StandardOpenOption.READ )) {
+            for (int j0=0; j0<oh; j0+=rowsPerMap) {
+                final int   rows  = Math.min( rowsPerMap, oh-j0 );
+                final long  first = mDataOffset + (long)(r.y + j0*step) * rowBytes;
+                final long  size  = ((long)(rows-1) * step + 1) * rowBytes;
+                if (first + size > ch.size())
+                    throw new IOException( "PNMHelper:readRegion: file is truncated" );
+                final MappedByteBuffer  buf = ch.map( FileChannel.MapMode.READ_ONLY, first, size );
+                buf.order( ByteOrder.BIG_ENDIAN );
+                final int  fj0 = j0;
+                Parallel.forEachBand( rows, ow * spp, (a, b) -> {
+                    final ByteBuffer  in = buf.duplicate().order( ByteOrder.BIG_ENDIAN );
+                    final byte[]   b8  = (step == 1 && bytesPerSample == 1) ? new byte[  ow * spp ] : null;
+                    final short[]  b16 = (step == 1 && bytesPerSample == 2) ? new short[ ow * spp ] : null;
+                    for (int j=a; j<b; j++) {
+                        final int  pos = (int)((long)j * step * rowBytes) + r.x * spp * bytesPerSample;
+                        final int  off = (fj0 + j) * ow * spp;
+                        in.position( pos );
+                        if (step == 1)    readRow( in, dst, off, b8, b16 );
+                        else              sampleRow( in, pos, dst, off, ow, step, spp, bytesPerSample );
+                    }
+                } );
+            }
+        }
+    }
+    //....................................................................
+    /**
+     * @param region is a region (null for the whole image)
+     * @return the region clamped to the image
+     */
+    private Rectangle clampRegion ( Rectangle region ) {
+        Rectangle  all = new Rectangle( 0, 0, mW, mH );
+        return (region == null) ? all : region.intersection( all );
+    }
+    //....................................................................
+    /**
+     * @param region is a region (null for the whole image)
+     * @param step   is the subsampling
+     * @return the width and height (as a Rectangle at 0,0) of what
+     * readRegion() reads
+     */
+    public Rectangle regionSize ( Rectangle region, int step ) {
+        Rectangle  r = clampRegion( region );
+        return new Rectangle( 0, 0, (r.width + step - 1) / step, (r.height + step - 1) / step );
+    }
+    //....................................................................
+    /**
+     * copy (contiguous) samples from in to out[off..] through b8 (8-bit
+     * samples) or b16 (16-bit samples), whichever is not null.  the
+     * length of that array is the number of samples.
+     */
+    private static void readRow ( ByteBuffer in, PixelBuffer out, int off, byte[] b8, short[] b16 ) {
+        if (b8 != null) {
+            in.get( b8 );
+            out.setUnsignedBytes( off, b8, 0, b8.length );
+        } else {
+            in.asShortBuffer().get( b16 );
+            out.setUnsignedShorts( off, b16, 0, b16.length );
+        }
+    }
+    //....................................................................
+    /**
+     * copy every step-th pixel (n pixels) starting at in[pos] to
+     * out[off..off+n*spp-1] (w/ absolute gets, so that the pages that are
+     * skipped are not read).
+     */
+    private static void sampleRow ( ByteBuffer in, int pos, PixelBuffer out, int off,
+                                    int n, int step, int spp, int bytesPerSample ) {
+        final int  skip = step * spp * bytesPerSample;
+        for (int i=0; i<n; i++, pos+=skip) {
+            for (int c=0; c<spp; c++) {
+                final int  v = (bytesPerSample == 1) ? (in.get( pos + c ) & 0xff)
+                                                     : (in.getShort( pos + 2*c ) & 0xffff);
+                out.set( off + i*spp + c, v );
+            }
+        }
+    }
+    //....................................................................
+    /**
+     * decode n 8-bit samples from in to out[off..off+n-1].
+     * @param in  is the input buffer (positioned at the first sample)
+     * @param out is the output buffer
+     * @param off is the index of the first sample in out
+     * @param n   is the number of samples to decode
+     * @return min in the upper 32 bits and max in the lower 32 bits
+     */
+    private static long decode8 ( ByteBuffer in, PixelBuffer out, int off, int n ) {
+        byte[]  tmp = new byte[ Math.min(n, DECODE_CHUNK) ];
+        int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int done=0; done<n; ) {
+            int  m = Math.min( tmp.length, n-done );
+            in.get( tmp, 0, m );
+            for (int k=0; k<m; k++) {
+                int  v = tmp[k] & 0xff;
+                if (v < min)    min = v;
+                if (v > max)    max = v;
+            }
+            out.setUnsignedBytes( off+done, tmp, 0, m );
+            done += m;
+        }
+        return ((long)min << 32) | (max & 0xffffffffL);
+    }
+    //....................................................................
+    /**
+     * decode n 16-bit (big endian, unsigned) samples from in to
+     * out[off..off+n-1].
+     * @param in  is the input buffer (positioned at the first sample)
+     * @param out is the output buffer
+     * @param off is the index of the first sample in out
+     * @param n   is the number of samples to decode
+     * @return min in the upper 32 bits and max in the lower 32 bits
+     */
+    private static long decode16 ( ByteBuffer in, PixelBuffer out, int off, int n ) {
+        ShortBuffer  sb  = in.asShortBuffer();
+        short[]      tmp = new short[ Math.min(n, DECODE_CHUNK) ];
+        int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int done=0; done<n; ) {
+            int  m = Math.min( tmp.length, n-done );
+            sb.get( tmp, 0, m );
+            for (int k=0; k<m; k++) {
+                int  v = tmp[k] & 0xffff;
+                if (v < min)    min = v;
+                if (v > max)    max = v;
+            }
+            out.setUnsignedShorts( off+done, tmp, 0, m );
+            done += m;
+        }
+        return ((long)min << 32) | (max & 0xffffffffL);
     }
     //--------------------------------------------------------------------
     /**
@@ -238,35 +534,22 @@ public class PNMHelper {
      * @param fname is the output file name
      */
     public void saveAscii ( String fname ) {
-        PrintWriter  out = null;
+        setMinMax();
+        saveAscii( fname, mMax );
+    }
+    //....................................................................
+    /**
+     * save data to an ASCII ppm or pgm file using the image data and a
+     * known max value (so the data need not be scanned again).
+     * @param fname is the output file name
+     * @param max   is the max value to write to the header
+     */
+    public void saveAscii ( String fname, int max ) {
         try {
-            out = new PrintWriter( new FileOutputStream(fname) );
+            new PNMWriter().write( fname, mPixels, mW, mH, mSamplesPerPixel, max, false );
         } catch (Exception e) {
             System.err.println( "PNMHelper:saveAscii: " + e );
-            return;
-        }
-        
-        //write the header
-        if (mSamplesPerPixel == 1) {
-            out.println( "P2" );
-            out.println( "# created by george (gray ASCII, obviously)" );
-        } else if (mSamplesPerPixel == 3) {
-            out.println( "P3" );
-            out.println( "# created by george (color ASCII, obviously)" );
-        } else {
-            out.close();
-            assert false;
-            return;
         }
-        out.println( mW + " " + mH );
-        setMinMax();
-        out.println( mMax );
-        
-        //write the data
-        for (int i=0; i<mData.length; i++)    out.print( mData[i] + " " );
-        out.println();
-        
-        out.close();
     }
     //....................................................................
     /**
@@ -274,38 +557,21 @@ public class PNMHelper {
      * @param fname is the output file name
      */
     public void saveBinary ( String fname ) {
+        setMinMax();
+        saveBinary( fname, mMax );
+    }
+    //....................................................................
+    /**
+     * save image data to a binary ppm or pgm file using a known max value
+     * (so the data need not be scanned again).
+     * @param fname is the output file name
+     * @param max   is the max value to write to the header
+     */
+    public void saveBinary ( String fname, int max ) {
         try {
-            RandomAccessFile  out = new RandomAccessFile( fname, "rw" );
-            //write the header
-            if (mSamplesPerPixel == 1) {
-                out.writeBytes( "P5\n" );
-                out.writeBytes( "# created by george (gray binary, obviously)\n" );
-            } else if (mSamplesPerPixel == 3) {
-                out.writeBytes( "P6\n" );
-                out.writeBytes( "# created by george (color binary, obviously)\n" );
-            } else {
-                out.close();
-                assert false;
-                return;
-            }
-            out.writeBytes( mW + " " + mH + "\n" );
-            setMinMax();
-            out.writeBytes( mMax + "\n" );
-            //write the data
-            if (mMax < 256) {
-                for (int i=0; i<mData.length; i++)    out.write( mData[i] );
-            } else {
-                assert mMax <= Short.MAX_VALUE;
-                for (int i=0; i<mData.length; i++) {
-                    int  hi = mData[i] >> 8;
-                    int  lo = mData[i] & 0xff;
-                    out.write( hi );
-                    out.write( lo );
-                }
-            }
-            out.close();
+            new PNMWriter().write( fname, mPixels, mW, mH, mSamplesPerPixel, max, true );
         } catch (Exception e) {
-            System.err.println( "PNMHelper:PNMHelper: " + e );
+            System.err.println( "PNMHelper:saveBinary: " + e );
         }
     }
     //--------------------------------------------------------------------
@@ -313,10 +579,11 @@ public class PNMHelper {
      * set the min and max fields to the min and max values of the data
      */
     private void setMinMax ( ) {
-        mMin = mMax = mData[0];
-        for (int i=0; i<mData.length; i++) {
-            if (mData[i] < mMin)    mMin = mData[i];
-            if (mData[i] > mMax)    mMax = mData[i];
+        mMin = mMax = mPixels.get( 0 );
+        for (int i=0; i<mPixels.length(); i++) {
+            int  v = mPixels.get( i );
+            if (v < mMin)    mMin = v;
+            if (v > mMax)    mMax = v;
         }
         
         if (mMin < 0)
@@ -0,0 +1,173 @@
+/**
+ *  file:  PNMTokenizer.java
+ *  Fast tokenizer for the header and ASCII (P2/P3) data of PNM images.
+ *
+ *  @author George J. Grevera, Ph.D., ggrevera@sju.edu
+ *
+ *  Copyright (C) 2013, George J. Grevera
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ *  USA or from http://www.gnu.org/licenses/gpl.txt.
+ *
+ *  This General Public License does not permit incorporating this
+ *  code into proprietary programs.  (So a hypothetical company such
+ *  as GH (Generally Hectic) should NOT incorporate this code into
+ *  their proprietary programs.)
+ */
+import  java.io.EOFException;
+import  java.io.IOException;
+import  java.io.InputStream;
+//----------------------------------------------------------------------
+/** This class reads integers (and the magic number) from a PNM file a
+ *  buffer full of bytes at a time.  Unlike java.util.Scanner, no regular
+ *  expressions are used and no String is allocated per value.  Whitespace
+ *  and # comments are skipped anywhere (as the PNM spec allows).
+ */
+public class PNMTokenizer {
+    /** size of the read buffer */
+    private static final int  BUFFER_SIZE = 256 * 1024;
+
+    private final InputStream  mIn;     ///< underlying input stream
+    private final byte[]       mBuf = new byte[ BUFFER_SIZE ];  ///< read buffer
+    private int                mPos;    ///< next byte in mBuf
+    private int                mLen;    ///< number of valid bytes in mBuf
+    private long               mBase;   ///< file position of mBuf[0]
+    //--------------------------------------------------------------------
+    /**
+     * ctor
+     * @param in is the input stream (positioned at the start of the file)
+     */
+    public PNMTokenizer ( InputStream in ) {
+        mIn = in;
+    }
+    //--------------------------------------------------------------------
+    /**
+     * @return the number of bytes consumed so far (i.e., the file position
+     * of the next unread byte)
+     */
+    public long position ( ) {  return mBase + mPos;  }
+    //....................................................................
+    /**
+     * refill the buffer (if necessary).
+     * @return false if at eof
+     */
+    private boolean fill ( ) throws IOException {
+        if (mPos < mLen)    return true;
+        mBase += mLen;
+        mPos = 0;
+        mLen = mIn.read( mBuf, 0, mBuf.length );
+        if (mLen <= 0) {
+            mLen = 0;
+            return false;
+        }
+        return true;
+    }
+    //....................................................................
+    /**
+     * skip whitespace and comments (from # to the end of the line).
+     * @return false if eof was reached
+     */
+    private boolean skip ( ) throws IOException {
+        for ( ; ; ) {
+            if (mPos >= mLen && !fill())    return false;
+            byte  c = mBuf[ mPos ];
+            if (c == '#') {
+                //skip to end of line
+                for ( ; ; ) {
+                    if (mPos >= mLen && !fill())    return false;
+                    if (mBuf[ mPos++ ] == '\n')    break;
+                }
+            } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                mPos++;
+            } else {
+                return true;
+            }
+        }
+    }
+    //--------------------------------------------------------------------
+    /**
+     * read the magic number (e.g., P2, P3, P5, or P6).
+     * @return the magic number as a string
+     */
+    public String nextMagic ( ) throws IOException {
+        if (!skip())    throw new EOFException( "PNMTokenizer: no magic number" );
+        StringBuilder  sb = new StringBuilder();
+        while ((mPos < mLen || fill()) && !isWhite(mBuf[mPos]) && mBuf[mPos] != '#') {
+            sb.append( (char)mBuf[ mPos++ ] );
+        }
+        return sb.toString();
+    }
+    //....................................................................
+    /**
+     * read the next (possibly negative) integer.
+     * @return the integer value
+     */
+    public int nextInt ( ) throws IOException {
+        if (!skip())    throw new EOFException( "PNMTokenizer: unexpected eof" );
+        boolean  neg = false;
+        if (mBuf[ mPos ] == '-') {
+            neg = true;
+            mPos++;
+        }
+        int   v = 0;
+        long  start = position();
+        for ( ; ; ) {
+            //inner loop runs over the buffer w/out calling fill()
+            int  p = mPos, len = mLen;
+            byte[]  b = mBuf;
+            while (p < len) {
+                int  d = b[ p ] - '0';
+                if (d < 0 || d > 9)    break;
+                v = v*10 + d;
+                p++;
+            }
+            mPos = p;
+            if (p < len || !fill())    break;
+        }
+        if (position() == start)
+            throw new IOException( "PNMTokenizer: expected an integer at " + start );
+        return neg ? -v : v;
+    }
+    //....................................................................
+    /**
+     * consume the single whitespace character that separates the header
+     * from binary data.
+     */
+    public void skipSingleWhitespace ( ) throws IOException {
+        if (fill())    mPos++;
+    }
+    //....................................................................
+    /**
+     * read n integers into out[off..off+n-1].
+     * @param out is the output array
+     * @param off is the index of the first value in out
+     * @param n   is the number of values to read
+     * @return min in the upper 32 bits and max in the lower 32 bits
+     */
+    public long readInts ( int[] out, int off, int n ) throws IOException {
+        int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i=off; i<off+n; i++) {
+            int  v = nextInt();
+            out[i] = v;
+            if (v < min)    min = v;
+            if (v > max)    max = v;
+        }
+        return ((long)min << 32) | (max & 0xffffffffL);
+    }
+    //--------------------------------------------------------------------
+    private static boolean isWhite ( byte c ) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+}
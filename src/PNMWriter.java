@@ -0,0 +1,219 @@
+/**
+ *  file:  PNMWriter.java
+ *  Buffered writer for (ASCII and binary) PNM images.
+ *
+ *  @author George J. Grevera, Ph.D., ggrevera@sju.edu
+ *
+ *  Copyright (C) 2013, George J. Grevera
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+ *  USA or from http://www.gnu.org/licenses/gpl.txt.
+ *
+ *  This General Public License does not permit incorporating this
+ *  code into proprietary programs.  (So a hypothetical company such
+ *  as GH (Generally Hectic) should NOT incorporate this code into
+ *  their proprietary programs.)
+ */
+import  java.io.IOException;
+import  java.nio.ByteBuffer;
+import  java.nio.channels.FileChannel;
+import  java.nio.file.Paths;
+import  java.nio.file.StandardOpenOption;
+//----------------------------------------------------------------------
+/** This class writes PNM images (P2, P3, P5, and P6).  Samples are
+ *  encoded into a (reusable) byte buffer which is written to a FileChannel
+ *  only when it is full, so there is one large write per buffer rather
+ *  than one (or more) per sample.  A single instance may be used to
+ *  write many images (e.g., for batch export).
+ */
+public class PNMWriter {
+    /** size of the output buffer */
+    private static final int  BUFFER_SIZE = 1024 * 1024;
+
+    private final ByteBuffer  mBuf = ByteBuffer.allocateDirect( BUFFER_SIZE );  ///< output buffer
+    private FileChannel       mOut;  ///< current output file
+    private byte[]            mRow8;   ///< reused row of 8-bit samples (see putRow())
+    private short[]           mRow16;  ///< reused row of 16-bit samples (see putRow())
+    //--------------------------------------------------------------------
+    /**
+     * write an image to a pgm (samples=1) or ppm (samples=3) file.
+     * @param fname   is the output file name
+     * @param data    is the image data (samples values per pixel)
+     * @param w       is the image width
+     * @param h       is the image height
+     * @param samples is the number of samples per pixel (1=gray, 3=color)
+     * @param max     is the max data value (written to the header).  if
+     *                it is negative, the data are scanned to determine it.
+     * @param binary  true for P5/P6; false for P2/P3
+     */
+    public void write ( String fname, int[] data, int w, int h, int samples,
+                        int max, boolean binary ) throws IOException
+    {
+        write( fname, PixelBuffer.wrap(data), w, h, samples, max, binary );
+    }
+    //....................................................................
+    /**
+     * write an image to a pgm (samples=1) or ppm (samples=3) file.
+     * @param fname   is the output file name
+     * @param data    is the image data (samples values per pixel)
+     * @param w       is the image width
+     * @param h       is the image height
+     * @param samples is the number of samples per pixel (1=gray, 3=color)
+     * @param max     is the max data value (written to the header).  if
+     *                it is negative, the data are scanned to determine it.
+     * @param binary  true for P5/P6; false for P2/P3
+     */
+    public void write ( String fname, PixelBuffer data, int w, int h, int samples,
+                        int max, boolean binary ) throws IOException
+    {
+        assert samples==1 || samples==3;
+        assert data.length() >= w*h*samples;
+        if (max < 0) {
+            max = 0;
+            for (int i=0; i<w*h*samples; i++)
+                if (data.get(i) > max)    max = data.get( i );
+        }
+        if (max < 1)    max = 255;  //maxval must be at least 1
+
+        try (FileChannel  out = FileChannel.open( Paths.get(fname),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING ))
+        {
+            mOut = out;
+            mBuf.clear();
+            //write the header
+            String  type = (samples == 1) ? "gray" : "color";
+            if (binary) {
+                putString( (samples == 1) ? "P5\n" : "P6\n" );
+                putString( "# created by george (" + type + " binary, obviously)\n" );
+            } else {
+                putString( (samples == 1) ? "P2\n" : "P3\n" );
+                putString( "# created by george (" + type + " ASCII, obviously)\n" );
+            }
+            putString( w + " " + h + "\n" + max + "\n" );
+
+            //write the data
+            final int  rowLength = w * samples;
+            if (binary) {
+                //a row at a time (w/ one bulk put per row, or per buffer
+                // full for very long rows)
+                assert max <= 65535;
+                final int  bytesPerSample = (max < 256) ? 1 : 2;
+                final int[]  row = new int[ rowLength ];
+                for (int y=0; y<h; y++)
+                    putRow( data, y*rowLength, rowLength, bytesPerSample, row );
+            } else {
+                //one image row per line
+                for (int i=0; i<w*h*samples; i++) {
+                    if (mBuf.remaining() < 12)    flush();  //"-2147483648" + space
+                    putInt( data.get(i) );
+                    mBuf.put( ((i+1) % rowLength == 0) ? (byte)'\n' : (byte)' ' );
+                }
+            }
+            flush();
+        } finally {
+            mOut = null;
+        }
+    }
+    //--------------------------------------------------------------------
+    /** write the contents of the buffer to the file (and empty it). */
+    private void flush ( ) throws IOException {
+        mBuf.flip();
+        while (mBuf.hasRemaining())    mOut.write( mBuf );
+        mBuf.clear();
+    }
+    //....................................................................
+    /**
+     * append n binary samples (starting at data[pos]) to the buffer,
+     * most significant byte first.  flat Bytes/Shorts buffers are put
+     * directly from their backing arrays.  other buffers (e.g., copy on
+     * write) are first copied w/ getRange() into row (and then narrowed
+     * into mRow8/mRow16, which are reused).
+     * @param data           is the image data
+     * @param pos            is the first sample
+     * @param n              is the number of samples
+     * @param bytesPerSample is 1 or 2
+     * @param row            is a temporary buffer (of at least n samples)
+     */
+    private void putRow ( PixelBuffer data, int pos, int n, int bytesPerSample, int[] row )
+        throws IOException
+    {
+        final boolean  flat = (bytesPerSample == 1) ? data instanceof PixelBuffer.Bytes
+                                                    : data instanceof PixelBuffer.Shorts;
+        if (!flat) {
+            data.getRange( pos, row, 0, n );
+            if (bytesPerSample == 1) {
+                if (mRow8 == null || mRow8.length < n)    mRow8 = new byte[ n ];
+                for (int i=0; i<n; i++)    mRow8[ i ] = (byte)row[ i ];
+            } else {
+                if (mRow16 == null || mRow16.length < n)    mRow16 = new short[ n ];
+                for (int i=0; i<n; i++)    mRow16[ i ] = (short)row[ i ];
+            }
+        }
+        final byte[]   b8  = (bytesPerSample != 1) ? null
+                           : flat ? ((PixelBuffer.Bytes)data).mData : mRow8;
+        final short[]  b16 = (bytesPerSample != 2) ? null
+                           : flat ? ((PixelBuffer.Shorts)data).mData : mRow16;
+        int  off = flat ? pos : 0;
+        while (n > 0) {
+            if (mBuf.remaining() < bytesPerSample)    flush();
+            final int  m = Math.min( n, mBuf.remaining() / bytesPerSample );
+            if (bytesPerSample == 1) {
+                mBuf.put( b8, off, m );
+            } else {
+                mBuf.asShortBuffer().put( b16, off, m );  //(mBuf is big endian)
+                mBuf.position( mBuf.position() + 2*m );
+            }
+            off += m;
+            n   -= m;
+        }
+    }
+    //....................................................................
+    /**
+     * append an (ASCII) string to the buffer.
+     * @param s is the string
+     */
+    private void putString ( String s ) throws IOException {
+        for (int i=0; i<s.length(); i++) {
+            if (!mBuf.hasRemaining())    flush();
+            mBuf.put( (byte)s.charAt(i) );
+        }
+    }
+    //....................................................................
+    /**
+     * append the decimal digits of v to the buffer (w/out creating a
+     * String).  the caller must ensure that there is room for 11 bytes.
+     * @param v is the value
+     */
+    private void putInt ( int v ) {
+        if (v < 0) {
+            if (v == Integer.MIN_VALUE) {
+                for (int i=0; i<11; i++)    mBuf.put( (byte)"-2147483648".charAt(i) );
+                return;
+            }
+            mBuf.put( (byte)'-' );
+            v = -v;
+        }
+        //determine the number of digits and then fill them in from the right
+        int  digits = 1;
+        for (int t=v; t>=10; t/=10)    digits++;
+        int  p = mBuf.position() + digits;
+        mBuf.position( p );
+        do {
+            mBuf.put( --p, (byte)('0' + v % 10) );
+            v /= 10;
+        } while (v != 0);
+    }
+
+}
@@ -0,0 +1,150 @@
+/**
+    \file   Parallel.java
+    \brief  contains Parallel class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+//----------------------------------------------------------------------
+/** \brief this class runs passes over an image in parallel by splitting
+ *  the rows into bands on a ForkJoinPool.
+ *
+ *  Images with fewer than THRESHOLD samples are processed serially (on
+ *  the calling thread).  The parallelism (number of threads) may be set
+ *  with -Djimageviewer.parallelism=n (1 disables the parallel path).
+ */
+public class Parallel {
+    /** images w/ fewer samples than this are processed serially */
+    public static final int  THRESHOLD = Integer.getInteger( "jimageviewer.parallelThreshold", 1 << 20 );
+    /** number of threads used */
+    public static final int  PARALLELISM = Math.max( 1, Integer.getInteger(
+            "jimageviewer.parallelism", Runtime.getRuntime().availableProcessors() ) );
+
+    private static ForkJoinPool  sPool = null;  ///< created when first needed
+    //----------------------------------------------------------------------
+    /** \brief a pass over rows [y0..y1) of an image */
+    public interface Band {
+        void run ( int y0, int y1 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief a min/max reduction over rows [y0..y1) of an image */
+    public interface MinMaxBand {
+        /** \returns min in the upper 32 bits and max in the lower 32 bits */
+        long run ( int y0, int y1 );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the pool used for parallel passes */
+    public static synchronized ForkJoinPool pool ( ) {
+        if (sPool == null)    sPool = new ForkJoinPool( PARALLELISM );
+        return sPool;
+    }
+    //----------------------------------------------------------------------
+    /** \returns true if an image w/ the given number of samples should be
+     *  processed in parallel
+     *  \param samples total number of samples
+     */
+    public static boolean isParallel ( long samples ) {
+        return PARALLELISM > 1 && samples >= THRESHOLD;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Run band over all rows [0..rows).
+     *  \param rows number of rows
+     *  \param rowLength number of samples per row
+     *  \param band the pass
+     *  \returns nothing (void)
+     */
+    public static void forEachBand ( int rows, int rowLength, Band band ) {
+        if (!isParallel( (long)rows * rowLength )) {
+            band.run( 0, rows );
+            return;
+        }
+        pool().invoke( new BandAction( 0, rows, grain(rows), band ) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Run a min/max reduction over all rows [0..rows).  The
+     *  results of the bands are combined.
+     *  \param rows number of rows
+     *  \param rowLength number of samples per row
+     *  \param band the reduction
+     *  \returns min in the upper 32 bits and max in the lower 32 bits
+     */
+    public static long minMax ( int rows, int rowLength, MinMaxBand band ) {
+        if (!isParallel( (long)rows * rowLength ))    return band.run( 0, rows );
+        return pool().invoke( new MinMaxTask( 0, rows, grain(rows), band ) );
+    }
+    //----------------------------------------------------------------------
+    /** \returns min packed w/ max (as returned by minMax) */
+    public static long pack ( int min, int max ) {
+        return ((long)min << 32) | (max & 0xffffffffL);
+    }
+    /** \returns the min from a packed min/max */
+    public static int min ( long mm ) {  return (int)(mm >> 32);  }
+    /** \returns the max from a packed min/max */
+    public static int max ( long mm ) {  return (int)mm;  }
+    //----------------------------------------------------------------------
+    /** \returns the number of rows per band (about 4 bands per thread) */
+    private static int grain ( int rows ) {
+        return Math.max( 1, rows / (4 * PARALLELISM) );
+    }
+
+    //======================================================================
+    private static final class BandAction extends RecursiveAction {
+        private final int   mY0, mY1, mGrain;
+        private final Band  mBand;
+        BandAction ( int y0, int y1, int grain, Band band ) {
+            mY0 = y0;  mY1 = y1;  mGrain = grain;  mBand = band;
+        }
+        @Override protected void compute ( ) {
+            if (mY1 - mY0 <= mGrain) {
+                mBand.run( mY0, mY1 );
+                return;
+            }
+            int  mid = (mY0 + mY1) >>> 1;
+            invokeAll( new BandAction( mY0, mid, mGrain, mBand ),
+                       new BandAction( mid, mY1, mGrain, mBand ) );
+        }
+    }
+    //======================================================================
+    private static final class MinMaxTask extends RecursiveTask<Long> {
+        private final int         mY0, mY1, mGrain;
+        private final MinMaxBand  mBand;
+        MinMaxTask ( int y0, int y1, int grain, MinMaxBand band ) {
+            mY0 = y0;  mY1 = y1;  mGrain = grain;  mBand = band;
+        }
+        @Override protected Long compute ( ) {
+            if (mY1 - mY0 <= mGrain)    return mBand.run( mY0, mY1 );
+            int  mid = (mY0 + mY1) >>> 1;
+            MinMaxTask  lo = new MinMaxTask( mY0, mid, mGrain, mBand );
+            lo.fork();
+            long  b = new MinMaxTask( mid, mY1, mGrain, mBand ).compute();
+            long  a = lo.join();
+            return pack( Math.min( min(a), min(b) ), Math.max( max(a), max(b) ) );
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,229 @@
+/**
+    \file   Pipeline.java
+    \brief  contains Pipeline class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.ArrayList;
+//----------------------------------------------------------------------
+/** \brief runs a sequence of strategies on an image (from mOriginalData
+ *  to mDisplayData) w/out makePermanent() between them.
+ *
+ *  Consecutive point strategies are fused into a single pass.  If the
+ *  range of input values is small enough (at most LUT_SIZE values, e.g.,
+ *  8- or 16-bit data), the fused strategies are evaluated once per value
+ *  to make a lookup table and the pass is a table lookup per sample.
+ *  Neighborhood strategies are run in parallel bands of rows (each w/ its
+ *  halo rows) and are followed by a min/max pass (so that the next step
+ *  sees the same range as it would after makePermanent()).  The steps
+ *  ping-pong between two (reused) buffers, so mOriginalData is not
+ *  changed and only the final result becomes mDisplayData.
+ *  <br/>
+ *  For example, an opening followed by a window/level:
+ *  <pre>
+ *      new Pipeline().add( new ErosionStrategy(1) ).add( new DilationStrategy(1) )
+ *                    .add( new WindowLevelStrategy(400, 40) ).run( image );
+ *  </pre>
+ */
+public class Pipeline {
+    /** max size of the lookup table used for fused point strategies */
+    public static final int  LUT_SIZE = 1 << 16;
+
+    private final ArrayList< Strategy >  mSteps = new ArrayList<>();  ///< the strategies (in order)
+    //----------------------------------------------------------------------
+    /** \brief Append a strategy.
+     *  \param s the strategy
+     *  \returns this pipeline
+     */
+    public Pipeline add ( Strategy s ) {
+        mSteps.add( s );
+        return this;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Run the strategies on an image.  The result is in
+     *  mDisplayData (and mDisplayImage).  Call makePermanent() to make it
+     *  the input for what follows.
+     *  \param image the image
+     *  \returns nothing (void)
+     */
+    public void run ( ImageData image ) {
+        if (image instanceof TiledImageData) {
+            System.err.println( "Pipeline:run: not supported (read only)" );
+            return;
+        }
+        Timer  t = new Timer();
+        final int  w = image.mW, h = image.mH, samples = image.mIsColor ? 3 : 1;
+        PixelBuffer  cur  = image.mOriginalData;  //input of the next step (not changed)
+        PixelBuffer  next = null;                 //reused output buffer
+        int  min = image.mMin, max = image.mMax;
+        int  passes = 0;
+        for (int i=0; i<mSteps.size(); ) {
+            //gather consecutive point strategies
+            int  j = i;
+            while (j < mSteps.size() && mSteps.get( j ) instanceof PointStrategy)    j++;
+            long  range;
+            if (j > i) {
+                PointStrategy[]  fused = mSteps.subList( i, j ).toArray( new PointStrategy[0] );
+                range = range( fused, min, max );
+                next  = output( next, cur, cur.length(), range );
+                runPoint( fused, cur, next, h, min, max );
+                i = j;
+            } else {
+                NeighborhoodStrategy  n = (NeighborhoodStrategy)mSteps.get( i );
+                range = n.range( min, max );
+                next  = output( next, cur, cur.length(), range );
+                runNeighborhood( n, cur, next, w, h, samples, min, max );
+                //the actual range (as makePermanent() would determine)
+                final PixelBuffer  out = next;
+                final int  rowLength = w * samples;
+                range = Parallel.minMax( h, rowLength,
+                        (y0, y1) -> out.minMax( y0*rowLength, y1*rowLength ) );
+                i++;
+            }
+            passes++;
+            //ping-pong
+            PixelBuffer  tmp = cur;
+            cur  = next;
+            next = (tmp == image.mOriginalData) ? null : tmp;
+            min  = Parallel.min( range );
+            max  = Parallel.max( range );
+        }
+        if (passes == 0)    return;
+        image.mDisplayData = CowPixelBuffer.wrap( cur );
+        image.refreshDisplay();
+        image.mImageModified = true;
+        System.out.println( "Pipeline: " + mSteps.size() + " strategies in " + passes
+                          + " passes, " + t.getElapsedTimeNano() + " s" );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the output range of fused point strategies
+     *  \param fused the strategies
+     *  \param min smallest input value
+     *  \param max largest input value
+     */
+    private static long range ( PointStrategy[] fused, int min, int max ) {
+        for (PointStrategy s : fused) {
+            long  r = s.range( min, max );
+            min = Parallel.min( r );
+            max = Parallel.max( r );
+        }
+        return Parallel.pack( min, max );
+    }
+    //----------------------------------------------------------------------
+    /** \returns a (flat) buffer for the output of a step:  buf if it can
+     *  hold the range; otherwise, a new buffer
+     *  \param buf the buffer to reuse (may be null)
+     *  \param in the input of the step (which may not be used as output)
+     *  \param length number of samples
+     *  \param range output range of the step
+     */
+    private static PixelBuffer output ( PixelBuffer buf, PixelBuffer in, int length, long range ) {
+        if (buf != null && buf != in && buf.canHold( Parallel.min(range), Parallel.max(range) ))
+            return buf;
+        return PixelBuffer.allocate( length, Parallel.min(range), Parallel.max(range) );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Run fused point strategies (in one pass).
+     *  \param fused the strategies
+     *  \param src input
+     *  \param dst output (flat)
+     *  \param h image height
+     *  \param min smallest input value
+     *  \param max largest input value
+     *  \returns nothing (void)
+     */
+    static void runPoint ( PointStrategy[] fused, PixelBuffer src, PixelBuffer dst,
+                           int h, int min, int max )
+    {
+        //make a lookup table (if the input range is small enough)
+        int[]  lut = null;
+        if ((long)max - min < LUT_SIZE) {
+            lut = new int[ max - min + 1 ];
+            for (int v=min; v<=max; v++)    lut[ v-min ] = map( fused, v, min, max );
+        }
+        final int[]  table = lut;
+        final int    rowLength = src.length() / h;
+        Parallel.forEachBand( h, rowLength, (y0, y1) ->
+            src.forEachSegment( y0*rowLength, y1*rowLength, (buf, bufPos, pos, n) -> {
+                if (table != null && buf instanceof PixelBuffer.Bytes && dst instanceof PixelBuffer.Bytes) {
+                    byte[]  s = ((PixelBuffer.Bytes)buf).mData;
+                    byte[]  d = ((PixelBuffer.Bytes)dst).mData;
+                    for (int k=0; k<n; k++)    d[ pos+k ] = (byte)table[ (s[bufPos+k] & 0xff) - min ];
+                } else if (table != null) {
+                    for (int k=0; k<n; k++)    dst.set( pos+k, table[ buf.get(bufPos+k) - min ] );
+                } else {
+                    for (int k=0; k<n; k++)    dst.set( pos+k, map( fused, buf.get(bufPos+k), min, max ) );
+                }
+            } ) );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the result of fused point strategies for one value
+     *  \param fused the strategies
+     *  \param v input value
+     *  \param min smallest input value
+     *  \param max largest input value
+     */
+    private static int map ( PointStrategy[] fused, int v, int min, int max ) {
+        for (PointStrategy s : fused) {
+            long  r = s.range( min, max );
+            v   = s.map( v, min, max );
+            min = Parallel.min( r );
+            max = Parallel.max( r );
+        }
+        return v;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Run a neighborhood strategy in parallel bands.  If the input
+     *  is not flat (e.g., copy on write original data), each band first
+     *  copies its rows and halo rows into a flat buffer.
+     *  \param n the strategy
+     *  \param src input
+     *  \param dst output (flat)
+     *  \param w image width
+     *  \param h image height
+     *  \param samples samples per pixel
+     *  \param min smallest input value
+     *  \param max largest input value
+     *  \returns nothing (void)
+     */
+    static void runNeighborhood ( NeighborhoodStrategy n, PixelBuffer src, PixelBuffer dst,
+                                  int w, int h, int samples, int min, int max )
+    {
+        final int  rowLength = w * samples;
+        final int  r = n.radius();
+        Parallel.forEachBand( h, rowLength, (y0, y1) -> {
+            if (!(src instanceof CowPixelBuffer)) {
+                n.applyRows( src, 0, dst, w, h, samples, min, max, y0, y1 );
+                return;
+            }
+            int  a0 = Math.max( 0, y0-r ), a1 = Math.min( h, y1+r );
+            PixelBuffer  band = PixelBuffer.allocate( (a1-a0) * rowLength, src.minValue(), src.maxValue() );
+            PixelBuffer.arraycopy( src, a0*rowLength, band, 0, (a1-a0) * rowLength );
+            n.applyRows( band, a0, dst, w, h, samples, min, max, y0, y1 );
+        } );
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,324 @@
+/**
+    \file   PixelBuffer.java
+    \brief  contains PixelBuffer class definition (note that this class is
+            abstract)
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief unpacked (1 sample per entry) pixel storage (note that this
+ *  class is abstract).
+ *
+ *  Samples are stored in the narrowest primitive array that can hold
+ *  them:  unsigned bytes for [0..255], unsigned shorts for [0..65535], and
+ *  ints for everything else.  So an 8-bit image requires 1 byte per
+ *  sample rather than 4.  Use allocate() (or compact()) to choose the
+ *  backing.  Values passed to set() must be in [minValue()..maxValue()].
+ */
+abstract public class PixelBuffer {
+    protected final int  mLength;  ///< number of samples
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param length number of samples
+     *  \returns nothing (ctor)
+     */
+    protected PixelBuffer ( int length ) {  mLength = length;  }
+    //----------------------------------------------------------------------
+    /** \brief Allocate a buffer (initialized to 0) with the narrowest
+     *  backing that can hold values in [min..max].
+     *  \param length number of samples
+     *  \param min smallest value that will be stored
+     *  \param max largest value that will be stored
+     *  \returns the buffer
+     */
+    public static PixelBuffer allocate ( int length, int min, int max ) {
+        if (min >= 0 && max <= 255)      return new Bytes(  length );
+        if (min >= 0 && max <= 65535)    return new Shorts( length );
+        return new Ints( new int[ length ] );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Allocate a buffer for samples of the given bit depth.
+     *  \param length number of samples
+     *  \param bits bits per sample (e.g., from a BufferedImage SampleModel)
+     *  \returns the buffer
+     */
+    public static PixelBuffer forBitDepth ( int length, int bits ) {
+        if (bits <= 8)     return new Bytes(  length );
+        if (bits <= 16)    return new Shorts( length );
+        return new Ints( new int[ length ] );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Wrap (not copy) an int array.
+     *  \param data the array
+     *  \returns the buffer
+     */
+    public static PixelBuffer wrap ( int[] data ) {  return new Ints( data );  }
+    //----------------------------------------------------------------------
+    /** \brief Copy an int array into the narrowest buffer that can hold
+     *  its values.
+     *  \param data the array
+     *  \returns the buffer
+     */
+    public static PixelBuffer compact ( int[] data ) {
+        int  min = 0, max = 0;
+        if (data.length > 0)    min = max = data[ 0 ];
+        for (int v : data) {
+            if (v < min)    min = v;
+            if (v > max)    max = v;
+        }
+        PixelBuffer  pb = allocate( data.length, min, max );
+        pb.setRange( 0, data, 0, data.length );
+        return pb;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of samples */
+    public final int length ( ) {  return mLength;  }
+    /** \returns the sample at index i */
+    abstract public int get ( int i );
+    /** \brief set the sample at index i to v.
+     *  \param i index
+     *  \param v value (must be in [minValue()..maxValue()])
+     */
+    abstract public void set ( int i, int v );
+    /** \returns the smallest value that may be stored */
+    abstract public int minValue ( );
+    /** \returns the largest value that may be stored */
+    abstract public int maxValue ( );
+    /** \returns the number of bytes per sample */
+    abstract public int bytesPerSample ( );
+    /** \returns a copy (with the same backing).  for a CowPixelBuffer,
+     *  the copy shares the samples until either one is changed. */
+    abstract public PixelBuffer copy ( );
+    //----------------------------------------------------------------------
+    /** \returns the (approx.) number of bytes used by the samples */
+    public long sizeInBytes ( ) {  return (long)mLength * bytesPerSample();  }
+    //----------------------------------------------------------------------
+    /** \returns true if values in [min..max] may be stored in this buffer */
+    public boolean canHold ( int min, int max ) {
+        return min >= minValue() && max <= maxValue();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy n samples starting at src[srcPos] into this buffer
+     *  starting at pos.
+     */
+    public void setRange ( int pos, int[] src, int srcPos, int n ) {
+        for (int i=0; i<n; i++)    set( pos+i, src[ srcPos+i ] );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy n samples starting at pos into dst[dstPos...].
+     */
+    public void getRange ( int pos, int[] dst, int dstPos, int n ) {
+        for (int i=0; i<n; i++)    dst[ dstPos+i ] = get( pos+i );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy n unsigned 8-bit samples starting at src[srcPos] into
+     *  this buffer starting at pos.
+     */
+    public void setUnsignedBytes ( int pos, byte[] src, int srcPos, int n ) {
+        for (int i=0; i<n; i++)    set( pos+i, src[ srcPos+i ] & 0xff );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy n unsigned 16-bit samples starting at src[srcPos] into
+     *  this buffer starting at pos.
+     */
+    public void setUnsignedShorts ( int pos, short[] src, int srcPos, int n ) {
+        for (int i=0; i<n; i++)    set( pos+i, src[ srcPos+i ] & 0xffff );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy all of the samples in other (which must have the same
+     *  length and whose values must fit) into this buffer.
+     */
+    public void copyFrom ( PixelBuffer other ) {
+        assert other.mLength == mLength;
+        copyFrom( other, 0, mLength );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy samples [pos..pos+n) of other (whose values must fit)
+     *  into the same locations in this buffer.
+     */
+    public void copyFrom ( PixelBuffer other, int pos, int n ) {
+        arraycopy( other, pos, this, pos, n );
+    }
+    //----------------------------------------------------------------------
+    /** \brief a run of samples [pos..pos+n) that are stored contiguously
+     *  in a flat (Bytes, Shorts, or Ints) buffer starting at bufPos
+     */
+    public interface Segment {
+        void run ( PixelBuffer buf, int bufPos, int pos, int n );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Visit the contiguous runs of samples [from..to) (so that
+     *  passes may use the flat buffers directly).  A flat buffer is a
+     *  single run.
+     *  \param from first sample
+     *  \param to one past the last sample
+     *  \param s is called for each run (in order)
+     *  \returns nothing (void)
+     */
+    public void forEachSegment ( int from, int to, Segment s ) {
+        s.run( this, from, from, to-from );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy n samples from src (starting at srcPos) to dst (starting
+     *  at dstPos).  Values must fit in dst.  Buffers w/ the same backing
+     *  are copied w/ System.arraycopy.
+     *  \returns nothing (void)
+     */
+    public static void arraycopy ( PixelBuffer src, int srcPos, PixelBuffer dst, int dstPos, int n ) {
+        if (src instanceof CowPixelBuffer) {
+            src.forEachSegment( srcPos, srcPos+n,
+                    (buf, bufPos, pos, m) -> arraycopy( buf, bufPos, dst, dstPos + pos - srcPos, m ) );
+        } else if (dst instanceof CowPixelBuffer) {
+            ((CowPixelBuffer)dst).forEachWritableSegment( dstPos, dstPos+n,
+                    (buf, bufPos, pos, m) -> arraycopy( src, srcPos + pos - dstPos, buf, bufPos, m ) );
+        } else if (src instanceof Bytes && dst instanceof Bytes) {
+            System.arraycopy( ((Bytes)src).mData, srcPos, ((Bytes)dst).mData, dstPos, n );
+        } else if (src instanceof Shorts && dst instanceof Shorts) {
+            System.arraycopy( ((Shorts)src).mData, srcPos, ((Shorts)dst).mData, dstPos, n );
+        } else if (dst instanceof Ints) {
+            src.getRange( srcPos, ((Ints)dst).mData, dstPos, n );
+        } else {
+            for (int i=0; i<n; i++)    dst.set( dstPos+i, src.get( srcPos+i ) );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the min and max of samples [from..to).
+     *  \returns min in the upper 32 bits and max in the lower 32 bits
+     *  (see Parallel.pack())
+     */
+    public long minMax ( int from, int to ) {
+        int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i=from; i<to; i++) {
+            int  v = get( i );
+            if (v < min)    min = v;
+            if (v > max)    max = v;
+        }
+        return Parallel.pack( min, max );
+    }
+
+    //======================================================================
+    /** \brief unsigned 8-bit samples */
+    static final class Bytes extends PixelBuffer {
+        final byte[]  mData;  ///< samples
+        Bytes ( int length ) {  super( length );  mData = new byte[ length ];  }
+        @Override public int  get ( int i )          {  return mData[ i ] & 0xff;  }
+        @Override public void set ( int i, int v )   {  mData[ i ] = (byte)v;  }
+        @Override public int  minValue ( )           {  return 0;  }
+        @Override public int  maxValue ( )           {  return 255;  }
+        @Override public int  bytesPerSample ( )     {  return 1;  }
+        @Override public PixelBuffer copy ( ) {
+            Bytes  c = new Bytes( mLength );
+            System.arraycopy( mData, 0, c.mData, 0, mLength );
+            return c;
+        }
+        @Override public void setRange ( int pos, int[] src, int srcPos, int n ) {
+            for (int i=0; i<n; i++)    mData[ pos+i ] = (byte)src[ srcPos+i ];
+        }
+        @Override public void getRange ( int pos, int[] dst, int dstPos, int n ) {
+            for (int i=0; i<n; i++)    dst[ dstPos+i ] = mData[ pos+i ] & 0xff;
+        }
+        @Override public void setUnsignedBytes ( int pos, byte[] src, int srcPos, int n ) {
+            System.arraycopy( src, srcPos, mData, pos, n );
+        }
+        @Override public long minMax ( int from, int to ) {
+            int  min = 255, max = 0;
+            for (int i=from; i<to; i++) {
+                int  v = mData[ i ] & 0xff;
+                min = Math.min( min, v );
+                max = Math.max( max, v );
+            }
+            return Parallel.pack( min, max );
+        }
+    }
+    //======================================================================
+    /** \brief unsigned 16-bit samples */
+    static final class Shorts extends PixelBuffer {
+        final short[]  mData;  ///< samples
+        Shorts ( int length ) {  super( length );  mData = new short[ length ];  }
+        @Override public int  get ( int i )          {  return mData[ i ] & 0xffff;  }
+        @Override public void set ( int i, int v )   {  mData[ i ] = (short)v;  }
+        @Override public int  minValue ( )           {  return 0;  }
+        @Override public int  maxValue ( )           {  return 65535;  }
+        @Override public int  bytesPerSample ( )     {  return 2;  }
+        @Override public PixelBuffer copy ( ) {
+            Shorts  c = new Shorts( mLength );
+            System.arraycopy( mData, 0, c.mData, 0, mLength );
+            return c;
+        }
+        @Override public void setRange ( int pos, int[] src, int srcPos, int n ) {
+            for (int i=0; i<n; i++)    mData[ pos+i ] = (short)src[ srcPos+i ];
+        }
+        @Override public void getRange ( int pos, int[] dst, int dstPos, int n ) {
+            for (int i=0; i<n; i++)    dst[ dstPos+i ] = mData[ pos+i ] & 0xffff;
+        }
+        @Override public void setUnsignedShorts ( int pos, short[] src, int srcPos, int n ) {
+            System.arraycopy( src, srcPos, mData, pos, n );
+        }
+        @Override public long minMax ( int from, int to ) {
+            int  min = 65535, max = 0;
+            for (int i=from; i<to; i++) {
+                int  v = mData[ i ] & 0xffff;
+                min = Math.min( min, v );
+                max = Math.max( max, v );
+            }
+            return Parallel.pack( min, max );
+        }
+    }
+    //======================================================================
+    /** \brief (signed) 32-bit samples */
+    static final class Ints extends PixelBuffer {
+        final int[]  mData;  ///< samples
+        Ints ( int[] data ) {  super( data.length );  mData = data;  }
+        @Override public int  get ( int i )          {  return mData[ i ];  }
+        @Override public void set ( int i, int v )   {  mData[ i ] = v;  }
+        @Override public int  minValue ( )           {  return Integer.MIN_VALUE;  }
+        @Override public int  maxValue ( )           {  return Integer.MAX_VALUE;  }
+        @Override public int  bytesPerSample ( )     {  return 4;  }
+        @Override public PixelBuffer copy ( ) {  return new Ints( mData.clone() );  }
+        @Override public void setRange ( int pos, int[] src, int srcPos, int n ) {
+            System.arraycopy( src, srcPos, mData, pos, n );
+        }
+        @Override public void getRange ( int pos, int[] dst, int dstPos, int n ) {
+            System.arraycopy( mData, pos, dst, dstPos, n );
+        }
+        @Override public void setUnsignedBytes ( int pos, byte[] src, int srcPos, int n ) {
+            for (int i=0; i<n; i++)    mData[ pos+i ] = src[ srcPos+i ] & 0xff;
+        }
+        @Override public void setUnsignedShorts ( int pos, short[] src, int srcPos, int n ) {
+            for (int i=0; i<n; i++)    mData[ pos+i ] = src[ srcPos+i ] & 0xffff;
+        }
+        @Override public long minMax ( int from, int to ) {
+            int  min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (int i=from; i<to; i++) {
+                int  v = mData[ i ];
+                min = Math.min( min, v );
+                max = Math.max( max, v );
+            }
+            return Parallel.pack( min, max );
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,48 @@
+/**
+    \file   PointStrategy.java
+    \brief  contains PointStrategy interface definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief a strategy in which each output value depends only upon the
+ *  input value at the same location (e.g., window/level, threshold,
+ *  invert, gamma).
+ *
+ *  Consecutive point strategies in a Pipeline are fused into a single
+ *  pass over the image (via a lookup table when the input range is small
+ *  enough).
+ */
+public interface PointStrategy extends Strategy {
+    /** \brief Map an input value to an output value.
+     *  \param v input value
+     *  \param min smallest input value (of the whole image)
+     *  \param max largest input value (of the whole image)
+     *  \returns the output value
+     */
+    int map ( int v, int min, int max );
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,365 @@
+/**
+    \file   RasterDecoder.java
+    \brief  contains RasterDecoder class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+
+//package jimageviewer;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+//----------------------------------------------------------------------
+/** \brief decodes the pixels of a BufferedImage (e.g., from ImageIO)
+ *  directly from its DataBuffer into a PixelBuffer.
+ *
+ *  Gray images (1 color component or a palette of grays) become 1 sample
+ *  per pixel; others become 3 (red, green, blue).  Alpha is ignored.
+ *  The common layouts are read straight from the backing array (w/out
+ *  Raster.getData(), which copies the whole raster, or getPixels(), which
+ *  unpacks it again into an int[]):
+ *  <ul>
+ *  <li>interleaved bytes or ushorts (TYPE_BYTE_GRAY, TYPE_USHORT_GRAY,
+ *      TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, and e.g. 16 bit rgb or gray+alpha
+ *      PNGs),</li>
+ *  <li>packed ints (TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_INT_BGR, and
+ *      TYPE_INT_ARGB_PRE, which is divided by alpha), and</li>
+ *  <li>palettes (TYPE_BYTE_INDEXED and TYPE_BYTE_BINARY).  The palette is
+ *      a table of the output samples of each index; for 1, 2, or 4 bit
+ *      indices, the table has the output samples of all of the pixels in
+ *      each possible byte, so a whole byte of pixels is done w/ one
+ *      lookup.</li>
+ *  </ul>
+ *  Anything else (e.g., 1 bit indices that do not start on a byte) is
+ *  read a row at a time via getSamples() (gray) or getRGB() (color).
+ *  Bands of rows are decoded in parallel; each row goes through (at most)
+ *  a row sized buffer.
+ */
+public final class RasterDecoder {
+    /** \brief not used (only static methods) */
+    private RasterDecoder ( ) { }
+    //----------------------------------------------------------------------
+    /** \returns true if the image is gray (decode() returns 1 sample per
+     *  pixel); false if it is color (3 samples per pixel) */
+    public static boolean isGray ( BufferedImage bi ) {
+        ColorModel  cm = bi.getColorModel();
+        if (cm instanceof IndexColorModel)    return isGrayPalette( (IndexColorModel)cm );
+        return cm.getNumColorComponents() == 1;
+    }
+    //----------------------------------------------------------------------
+    /** \returns true if all of the colors of the palette are gray */
+    private static boolean isGrayPalette ( IndexColorModel cm ) {
+        for (int i=0; i<cm.getMapSize(); i++) {
+            if (cm.getRed( i ) != cm.getGreen( i ) || cm.getRed( i ) != cm.getBlue( i ))
+                return false;
+        }
+        return true;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Decode the pixels of an image.
+     *  \param bi the image
+     *  \returns the samples (1 per pixel if isGray(); else red, green, and
+     *  blue of each pixel) in the narrowest buffer for their bit depth
+     */
+    public static PixelBuffer decode ( BufferedImage bi ) {
+        final int  spp = isGray( bi ) ? 1 : 3;
+        final ColorModel      cm = bi.getColorModel();
+        final WritableRaster  r  = bi.getRaster();
+        final DataBuffer      db = r.getDataBuffer();
+        if (db.getNumBanks() == 1) {
+            if (cm instanceof IndexColorModel && db instanceof DataBufferByte) {
+                if (r.getSampleModel() instanceof MultiPixelPackedSampleModel)
+                    return packedIndices( bi, spp );
+                if (r.getSampleModel() instanceof ComponentSampleModel && r.getNumBands() == 1)
+                    return byteIndices( bi, spp );
+            } else if (cm instanceof ComponentColorModel && r.getSampleModel() instanceof ComponentSampleModel
+                       && (spp == 1 || cm.getColorSpace().getType() == ColorSpace.TYPE_RGB)) {
+                if (db instanceof DataBufferByte)      return interleavedBytes( bi, spp );
+                if (db instanceof DataBufferUShort)    return interleavedShorts( bi, spp );
+            } else if (cm instanceof DirectColorModel && db instanceof DataBufferInt
+                       && isRgb8( (DirectColorModel)cm )) {
+                return packedInts( bi );
+            }
+        }
+        return fallback( bi, spp );
+    }
+    //----------------------------------------------------------------------
+    /** \returns true if red, green, and blue are 8 bits each */
+    private static boolean isRgb8 ( DirectColorModel cm ) {
+        return Integer.bitCount( cm.getRedMask() )   == 8
+            && Integer.bitCount( cm.getGreenMask() ) == 8
+            && Integer.bitCount( cm.getBlueMask() )  == 8;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the offset (in the data array) of pixel (0,y) of a
+     *  ComponentSampleModel raster */
+    private static int rowOffset ( WritableRaster r, ComponentSampleModel sm, int y ) {
+        return r.getDataBuffer().getOffset() + (y - r.getSampleModelTranslateY()) * sm.getScanlineStride()
+             - r.getSampleModelTranslateX() * sm.getPixelStride();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Interleaved (or planar w/in one bank) bytes, e.g.,
+     *  TYPE_BYTE_GRAY, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR.
+     */
+    private static PixelBuffer interleavedBytes ( BufferedImage bi, final int spp ) {
+        final WritableRaster        r  = bi.getRaster();
+        final ComponentSampleModel  sm = (ComponentSampleModel)r.getSampleModel();
+        final byte[]  data = ((DataBufferByte)r.getDataBuffer()).getData();
+        final int     w = bi.getWidth(), h = bi.getHeight(), stride = sm.getPixelStride();
+        final int[]   bands = sm.getBandOffsets();
+        final PixelBuffer  out = PixelBuffer.forBitDepth( w * h * spp, 8 );
+        Parallel.forEachBand( h, w * spp, (y0, y1) -> {
+            final byte[]  row = new byte[ w * spp ];
+            for (int y=y0; y<y1; y++) {
+                final int  p = rowOffset( r, sm, y );
+                if (spp == 1 && stride == 1) {  //no rearranging
+                    out.setUnsignedBytes( y * w, data, p + bands[ 0 ], w );
+                    continue;
+                }
+                if (spp == 1) {
+                    for (int x=0, q=p+bands[ 0 ]; x<w; x++, q+=stride)    row[ x ] = data[ q ];
+                } else {
+                    final int  b0 = bands[ 0 ], b1 = bands[ 1 ], b2 = bands[ 2 ];
+                    for (int i=0, q=p; i<3*w; i+=3, q+=stride) {
+                        row[ i ]   = data[ q + b0 ];
+                        row[ i+1 ] = data[ q + b1 ];
+                        row[ i+2 ] = data[ q + b2 ];
+                    }
+                }
+                out.setUnsignedBytes( y * w * spp, row, 0, w * spp );
+            }
+        } );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Interleaved (or planar w/in one bank) ushorts, e.g.,
+     *  TYPE_USHORT_GRAY or 16 bit rgb PNGs.
+     */
+    private static PixelBuffer interleavedShorts ( BufferedImage bi, final int spp ) {
+        final WritableRaster        r  = bi.getRaster();
+        final ComponentSampleModel  sm = (ComponentSampleModel)r.getSampleModel();
+        final short[] data = ((DataBufferUShort)r.getDataBuffer()).getData();
+        final int     w = bi.getWidth(), h = bi.getHeight(), stride = sm.getPixelStride();
+        final int[]   bands = sm.getBandOffsets();
+        final PixelBuffer  out = PixelBuffer.forBitDepth( w * h * spp, sm.getSampleSize( 0 ) );
+        Parallel.forEachBand( h, w * spp, (y0, y1) -> {
+            final short[]  row = new short[ w * spp ];
+            for (int y=y0; y<y1; y++) {
+                final int  p = rowOffset( r, sm, y );
+                if (spp == 1 && stride == 1) {  //no rearranging
+                    out.setUnsignedShorts( y * w, data, p + bands[ 0 ], w );
+                    continue;
+                }
+                if (spp == 1) {
+                    for (int x=0, q=p+bands[ 0 ]; x<w; x++, q+=stride)    row[ x ] = data[ q ];
+                } else {
+                    final int  b0 = bands[ 0 ], b1 = bands[ 1 ], b2 = bands[ 2 ];
+                    for (int i=0, q=p; i<3*w; i+=3, q+=stride) {
+                        row[ i ]   = data[ q + b0 ];
+                        row[ i+1 ] = data[ q + b1 ];
+                        row[ i+2 ] = data[ q + b2 ];
+                    }
+                }
+                out.setUnsignedShorts( y * w * spp, row, 0, w * spp );
+            }
+        } );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Packed 8 bit rgb ints, e.g., TYPE_INT_RGB, TYPE_INT_ARGB,
+     *  TYPE_INT_ARGB_PRE (which is divided by alpha).
+     */
+    private static PixelBuffer packedInts ( BufferedImage bi ) {
+        final WritableRaster  r = bi.getRaster();
+        final SinglePixelPackedSampleModel  sm = (SinglePixelPackedSampleModel)r.getSampleModel();
+        final DirectColorModel  cm = (DirectColorModel)bi.getColorModel();
+        final int[]  data = ((DataBufferInt)r.getDataBuffer()).getData();
+        final int    w = bi.getWidth(), h = bi.getHeight(), scan = sm.getScanlineStride();
+        final int    base = r.getDataBuffer().getOffset() - r.getSampleModelTranslateY() * scan
+                          - r.getSampleModelTranslateX();
+        final int    rs = Integer.numberOfTrailingZeros( cm.getRedMask() );
+        final int    gs = Integer.numberOfTrailingZeros( cm.getGreenMask() );
+        final int    bs = Integer.numberOfTrailingZeros( cm.getBlueMask() );
+        final int    am = cm.getAlphaMask(), as = Integer.numberOfTrailingZeros( am );
+        final boolean  pre = cm.isAlphaPremultiplied() && Integer.bitCount( am ) == 8;
+        final PixelBuffer  out = PixelBuffer.forBitDepth( w * h * 3, 8 );
+        Parallel.forEachBand( h, w * 3, (y0, y1) -> {
+            final byte[]  row = new byte[ w * 3 ];
+            for (int y=y0; y<y1; y++) {
+                if (pre) {
+                    for (int i=0, q=base+y*scan; i<3*w; i+=3, q++) {
+                        final int  v = data[ q ], alpha = (v >>> as) & 0xff;
+                        if (alpha == 0) {
+                            row[ i ] = row[ i+1 ] = row[ i+2 ] = 0;
+                            continue;
+                        }
+                        row[ i ]   = (byte)Math.min( 255, (((v >>> rs) & 0xff) * 255 + alpha/2) / alpha );
+                        row[ i+1 ] = (byte)Math.min( 255, (((v >>> gs) & 0xff) * 255 + alpha/2) / alpha );
+                        row[ i+2 ] = (byte)Math.min( 255, (((v >>> bs) & 0xff) * 255 + alpha/2) / alpha );
+                    }
+                    out.setUnsignedBytes( y * w * 3, row, 0, w * 3 );
+                    continue;
+                }
+                for (int i=0, q=base+y*scan; i<3*w; i+=3, q++) {
+                    final int  v = data[ q ];
+                    row[ i ]   = (byte)(v >>> rs);
+                    row[ i+1 ] = (byte)(v >>> gs);
+                    row[ i+2 ] = (byte)(v >>> bs);
+                }
+                out.setUnsignedBytes( y * w * 3, row, 0, w * 3 );
+            }
+        } );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the output samples (spp per index) of each of the 256
+     *  possible indices of a palette (0 for indices past its end) */
+    private static byte[] palette ( IndexColorModel cm, int spp ) {
+        final int  n = cm.getMapSize();
+        byte[]  red = new byte[ n ], green = new byte[ n ], blue = new byte[ n ];
+        cm.getReds( red );
+        cm.getGreens( green );
+        cm.getBlues( blue );
+        byte[]  lut = new byte[ 256 * spp ];
+        for (int i=0; i<Math.min( n, 256 ); i++) {
+            lut[ i*spp ] = red[ i ];
+            if (spp == 3) {
+                lut[ i*3 + 1 ] = green[ i ];
+                lut[ i*3 + 2 ] = blue[ i ];
+            }
+        }
+        return lut;
+    }
+    //----------------------------------------------------------------------
+    /** \brief 8 bit palette indices, e.g., TYPE_BYTE_INDEXED. */
+    private static PixelBuffer byteIndices ( BufferedImage bi, final int spp ) {
+        final WritableRaster        r  = bi.getRaster();
+        final ComponentSampleModel  sm = (ComponentSampleModel)r.getSampleModel();
+        final byte[]  data = ((DataBufferByte)r.getDataBuffer()).getData();
+        final byte[]  lut  = palette( (IndexColorModel)bi.getColorModel(), spp );
+        final int     w = bi.getWidth(), h = bi.getHeight(), stride = sm.getPixelStride();
+        final int     b0 = sm.getBandOffsets()[ 0 ];
+        final PixelBuffer  out = PixelBuffer.forBitDepth( w * h * spp, 8 );
+        Parallel.forEachBand( h, w * spp, (y0, y1) -> {
+            final byte[]  row = new byte[ w * spp ];
+            for (int y=y0; y<y1; y++) {
+                final int  p = rowOffset( r, sm, y ) + b0;
+                if (spp == 1) {
+                    for (int x=0, q=p; x<w; x++, q+=stride)    row[ x ] = lut[ data[ q ] & 0xff ];
+                } else {
+                    for (int i=0, q=p; i<3*w; i+=3, q+=stride) {
+                        final int  e = 3 * (data[ q ] & 0xff);
+                        row[ i ]   = lut[ e ];
+                        row[ i+1 ] = lut[ e+1 ];
+                        row[ i+2 ] = lut[ e+2 ];
+                    }
+                }
+                out.setUnsignedBytes( y * w * spp, row, 0, w * spp );
+            }
+        } );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \brief 1, 2, or 4 bit palette indices packed in bytes, e.g.,
+     *  TYPE_BYTE_BINARY.  Each (whole) byte is expanded w/ one lookup.
+     */
+    private static PixelBuffer packedIndices ( BufferedImage bi, final int spp ) {
+        final WritableRaster  r = bi.getRaster();
+        final MultiPixelPackedSampleModel  sm = (MultiPixelPackedSampleModel)r.getSampleModel();
+        final int  bits = sm.getPixelBitStride(), tx = r.getSampleModelTranslateX();
+        if (8 % bits != 0 || sm.getBitOffset( -tx ) != 0)    return fallback( bi, spp );
+        final byte[]  data = ((DataBufferByte)r.getDataBuffer()).getData();
+        final byte[]  lut  = palette( (IndexColorModel)bi.getColorModel(), spp );
+        final int     w = bi.getWidth(), h = bi.getHeight(), ppb = 8 / bits, mask = (1 << bits) - 1;
+        //the output samples of the ppb pixels of each possible byte
+        final int     k = ppb * spp;
+        final byte[]  expand = new byte[ 256 * k ];
+        for (int v=0; v<256; v++) {
+            for (int j=0; j<ppb; j++) {
+                final int  index = (v >>> (8 - bits * (j+1))) & mask;
+                System.arraycopy( lut, index * spp, expand, v*k + j*spp, spp );
+            }
+        }
+        final PixelBuffer  out = PixelBuffer.forBitDepth( w * h * spp, 8 );
+        Parallel.forEachBand( h, w * spp, (y0, y1) -> {
+            final byte[]  row = new byte[ w * spp + k ];  //(room for the last byte's pixels)
+            for (int y=y0; y<y1; y++) {
+                final int  p = r.getDataBuffer().getOffset()
+                             + sm.getOffset( -tx, y - r.getSampleModelTranslateY() );
+                final int  n = (w + ppb - 1) / ppb;
+                for (int j=0, i=0; j<n; j++) {
+                    final int  e = (data[ p+j ] & 0xff) * k;
+                    for (int t=0; t<k; t++)    row[ i++ ] = expand[ e+t ];
+                }
+                out.setUnsignedBytes( y * w * spp, row, 0, w * spp );
+            }
+        } );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Any other layout (a row at a time via the Raster or getRGB()). */
+    private static PixelBuffer fallback ( final BufferedImage bi, final int spp ) {
+        final WritableRaster  r = bi.getRaster();
+        final int  w = bi.getWidth(), h = bi.getHeight();
+        final PixelBuffer  out = PixelBuffer.forBitDepth( w * h * spp,
+                (spp == 1 && !(bi.getColorModel() instanceof IndexColorModel))
+                        ? r.getSampleModel().getSampleSize( 0 ) : 8 );
+        Parallel.forEachBand( h, w * spp, (y0, y1) -> {
+            final int[]  row = new int[ w * spp ];
+            for (int y=y0; y<y1; y++) {
+                if (spp == 1 && !(bi.getColorModel() instanceof IndexColorModel)) {
+                    r.getSamples( 0, y, w, 1, 0, row );
+                } else {
+                    bi.getRGB( 0, y, w, 1, row, 0, w );
+                    //unpack in place (from the end, so nothing is overwritten before it is read)
+                    for (int x=w-1; x>=0; x--) {
+                        final int  v = row[ x ];
+                        if (spp == 1) {
+                            row[ x ] = v & 0xff;  //a gray palette
+                        } else {
+                            row[ 3*x ]     = (v >> 16) & 0xff;
+                            row[ 3*x + 1 ] = (v >> 8)  & 0xff;
+                            row[ 3*x + 2 ] =  v        & 0xff;
+                        }
+                    }
+                }
+                out.setRange( y * w * spp, row, 0, w * spp );
+            }
+        } );
+        return out;
+    }
+
+}
+//----------------------------------------------------------------------
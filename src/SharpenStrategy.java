@@ -0,0 +1,78 @@
+/**
+    \file   SharpenStrategy.java
+    \brief  contains SharpenStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief sharpening (unsharp masking):  v + amount * (v - blurred v),
+ *  where the blur is a GaussianStrategy.  Results are clamped to the
+ *  input range.
+ */
+public class SharpenStrategy implements NeighborhoodStrategy {
+    private final GaussianStrategy  mBlur;    ///< the blur
+    private final double            mAmount;  ///< how much of the detail is added
+    //----------------------------------------------------------------------
+    /** \brief Ctor (w/ sigma=1 and amount=1).
+     *  \returns nothing (ctor)
+     */
+    public SharpenStrategy ( ) {  this( 1.0, 1.0 );  }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param sigma standard deviation of the blur (in pixels)
+     *  \param amount how much of the detail (v - blurred v) is added
+     *  \returns nothing (ctor)
+     */
+    public SharpenStrategy ( double sigma, double amount ) {
+        mBlur   = new GaussianStrategy( sigma, ConvolutionStrategy.Border.CLAMP );
+        mAmount = amount;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int radius ( ) {  return mBlur.radius();  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {  return Parallel.pack( min, max );  }
+    //----------------------------------------------------------------------
+    @Override
+    public void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                            int w, int h, int samples, int min, int max, int y0, int y1 )
+    {
+        //the blur (which is also in [min..max]) goes in dst first
+        mBlur.applyRows( src, srcY0, dst, w, h, samples, min, max, y0, y1 );
+        final int    rowLength = w * samples;
+        final float  a = (float)mAmount;
+        int[]  v = new int[ rowLength ], b = new int[ rowLength ];
+        for (int y=y0; y<y1; y++) {
+            src.getRange( (y - srcY0) * rowLength, v, 0, rowLength );
+            dst.getRange( y * rowLength, b, 0, rowLength );
+            for (int i=0; i<rowLength; i++)
+                b[ i ] = Math.max( min, Math.min( max, Math.round( v[i] + a * (v[i] - b[i]) ) ) );
+            dst.setRange( y * rowLength, b, 0, rowLength );
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,123 @@
+/**
+    \file   SobelStrategy.java
+    \brief  contains SobelStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief Sobel edge detection:  the x or y derivative (which may be
+ *  negative) or the gradient magnitude, sqrt( dx*dx + dy*dy ).
+ *
+ *  The 3x3 Sobel kernels are separable ([1 2 1] smoothing times a [-1 0
+ *  1] difference), so each output row is computed from the column sums
+ *  and differences of 3 input rows w/ integer arithmetic.  As in
+ *  ConvolutionStrategy, the bands of a color image are processed directly
+ *  in the interleaved layout.
+ */
+public class SobelStrategy implements NeighborhoodStrategy {
+    /** \brief which result */
+    public enum Direction {
+        X,          ///< d/dx (positive where values increase to the right)
+        Y,          ///< d/dy (positive where values increase downward)
+        MAGNITUDE   ///< sqrt( dx*dx + dy*dy )
+    }
+
+    private final Direction                   mDirection;  ///< which result
+    private final ConvolutionStrategy.Border  mBorder;     ///< border mode
+    //----------------------------------------------------------------------
+    /** \brief Ctor for the gradient magnitude (w/ Border.CLAMP).
+     *  \returns nothing (ctor)
+     */
+    public SobelStrategy ( ) {  this( Direction.MAGNITUDE, ConvolutionStrategy.Border.CLAMP );  }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param direction which result
+     *  \param border border mode
+     *  \returns nothing (ctor)
+     */
+    public SobelStrategy ( Direction direction, ConvolutionStrategy.Border border ) {
+        mDirection = direction;
+        mBorder    = border;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int radius ( ) {  return 1;  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {
+        if (mBorder == ConvolutionStrategy.Border.ZERO) {
+            min = Math.min( min, 0 );
+            max = Math.max( max, 0 );
+        }
+        final double  d = 4.0 * ((double)max - min);  //largest |dx| or |dy|
+        if (mDirection == Direction.MAGNITUDE)
+            return Parallel.pack( 0, (int)Math.min( Integer.MAX_VALUE, Math.ceil( Math.sqrt(2) * d ) ) );
+        final int  m = (int)Math.min( Integer.MAX_VALUE, d );
+        return Parallel.pack( -m, m );
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public void applyRows ( PixelBuffer src, int srcY0, PixelBuffer dst,
+                            int w, int h, int samples, int min, int max, int y0, int y1 )
+    {
+        final int  rowLength = w * samples, s = samples, s2 = 2 * samples;
+        final int  padded = rowLength + s2;
+        int[][]  ring = new int[ 3 ][ padded ];  //rows y-1, y, and y+1 (padded by 1 pixel)
+        long[]   smooth = new long[ padded ];    //column sums (1 2 1)
+        long[]   diff   = new long[ padded ];    //column differences (-1 0 1)
+        int[]    out    = new int[ rowLength ];
+        ConvolutionStrategy.readRow( src, srcY0, y0-1, h, w, s, 1, mBorder, ring[ Math.floorMod(y0-1, 3) ] );
+        ConvolutionStrategy.readRow( src, srcY0, y0,   h, w, s, 1, mBorder, ring[ Math.floorMod(y0,   3) ] );
+        for (int y=y0; y<y1; y++) {
+            ConvolutionStrategy.readRow( src, srcY0, y+1, h, w, s, 1, mBorder, ring[ Math.floorMod(y+1, 3) ] );
+            final int[]  a = ring[ Math.floorMod(y-1, 3) ], b = ring[ Math.floorMod(y, 3) ],
+                         c = ring[ Math.floorMod(y+1, 3) ];
+            for (int i=0; i<padded; i++) {
+                smooth[ i ] = (long)a[ i ] + 2L*b[ i ] + c[ i ];
+                diff[ i ]   = (long)c[ i ] - a[ i ];
+            }
+            switch (mDirection) {
+                case X:
+                    for (int i=0; i<rowLength; i++)
+                        out[ i ] = (int)(smooth[ i+s2 ] - smooth[ i ]);
+                    break;
+                case Y:
+                    for (int i=0; i<rowLength; i++)
+                        out[ i ] = (int)(diff[ i ] + 2*diff[ i+s ] + diff[ i+s2 ]);
+                    break;
+                default:
+                    for (int i=0; i<rowLength; i++) {
+                        double  dx = smooth[ i+s2 ] - smooth[ i ];
+                        double  dy = diff[ i ] + 2*diff[ i+s ] + diff[ i+s2 ];
+                        out[ i ] = (int)Math.round( Math.sqrt( dx*dx + dy*dy ) );
+                    }
+                    break;
+            }
+            dst.setRange( y * rowLength, out, 0, rowLength );
+        }
+    }
+
+}
+//----------------------------------------------------------------------
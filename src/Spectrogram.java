@@ -0,0 +1,267 @@
+/**
+    \file   Spectrogram.java
+    \brief  contains Spectrogram class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief short time Fourier transform (STFT) of audio samples as a log
+ *  magnitude (gray) image.
+ *
+ *  Each column of the result is the spectrum of size frames (starting
+ *  every hop frames; the channels are averaged) multiplied by a Hann
+ *  window.  Row 0 is the highest frequency (just below half the sample
+ *  rate) and row size/2-1 is 0 Hz.  Values are 10ths of a dB above
+ *  -RANGE dB relative to a full scale sine wave, so they are in
+ *  [0..10*RANGE] (and window/level selects the dB range that is shown).
+ *  <br/>
+ *  The FFT of the (real) frame is a complex FFT of half the size (even
+ *  samples are the real parts and odd samples the imaginary parts)
+ *  followed by a split into the spectrum of the real frame.  The complex
+ *  FFT is an iterative radix-2 FFT (w/ the first two stages, which need
+ *  no multiplications, done as radix-4 butterflies).  The window, twiddle factors, and
+ *  bit reversed order are computed once (in the ctor).  Bands of columns
+ *  are done in parallel, and each thread reuses its scratch buffers (so
+ *  nothing is allocated per column).  log10 is a table lookup on the bits
+ *  of the power (which is accurate to about 0.003 dB).
+ */
+public final class Spectrogram {
+    public static final int  SIZE  = 1024;  ///< default frames per column
+    public static final int  RANGE = 120;   ///< dB range of the values
+    private static final int  GROUP = 64;   ///< columns per copy to the result
+    private static final int  LOG_BITS = 10;  ///< mantissa bits of the log2 table
+    private static final float[]  LOG2 = new float[ 1 << LOG_BITS ];  ///< log2 of [1..2)
+    private static final double   LOG10_2 = Math.log10( 2 );  ///< log10(x) = LOG10_2 * log2(x)
+    static {
+        for (int i=0; i<LOG2.length; i++)
+            LOG2[ i ] = (float)(Math.log( 1 + (i + 0.5) / LOG2.length ) / Math.log( 2 ));
+    }
+
+    private final int       mSize;    ///< frames per column (a power of 2)
+    private final int       mHop;     ///< frames between columns
+    private final int       mHalf;    ///< mSize/2 (size of the complex FFT and rows of the result)
+    private final double[]  mWindow;  ///< Hann window
+    private final double[]  mCos, mSin;          ///< twiddles of the complex FFT (by stage)
+    private final double[]  mSplitCos, mSplitSin;  ///< twiddles of the split
+    private final int[]     mReverse; ///< bit reversed order
+    private final ThreadLocal< Scratch >  mScratch;  ///< per thread buffers
+
+    /** \brief per thread buffers */
+    private final class Scratch {
+        final double[]  mRe    = new double[ mHalf ];
+        final double[]  mIm    = new double[ mHalf ];
+        final double[]  mPower = new double[ mHalf ];
+        int[]           mIn    = new int[ 0 ];       ///< samples of a column (all channels)
+        final int[]     mBlock = new int[ GROUP * mHalf ];  ///< result for GROUP columns
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param size frames per column (a power of 2 >= 4)
+     *  \param hop frames between columns (> 0)
+     *  \returns nothing (ctor)
+     */
+    public Spectrogram ( int size, int hop ) {
+        if (size < 4 || Integer.bitCount( size ) != 1 || hop <= 0)
+            throw new IllegalArgumentException( "Spectrogram: bad size or hop: " + size + ", " + hop );
+        mSize = size;
+        mHop  = hop;
+        mHalf = size / 2;
+        mWindow = new double[ mSize ];
+        for (int i=0; i<mSize; i++)
+            mWindow[ i ] = 0.5 - 0.5 * Math.cos( 2 * Math.PI * i / mSize );
+        //the twiddles of the stage that combines pairs of half point FFTs
+        // are at [half..2*half) (so each stage reads them in order)
+        mCos = new double[ Math.max( 1, mHalf ) ];
+        mSin = new double[ Math.max( 1, mHalf ) ];
+        for (int half=1; half<mHalf; half*=2) {
+            for (int j=0; j<half; j++) {
+                mCos[ half + j ] = Math.cos( Math.PI * j / half );
+                mSin[ half + j ] = Math.sin( Math.PI * j / half );
+            }
+        }
+        mSplitCos = new double[ mHalf ];
+        mSplitSin = new double[ mHalf ];
+        for (int k=0; k<mHalf; k++) {
+            mSplitCos[ k ] = Math.cos( 2 * Math.PI * k / mSize );
+            mSplitSin[ k ] = Math.sin( 2 * Math.PI * k / mSize );
+        }
+        mReverse = new int[ mHalf ];
+        final int  bits = Integer.numberOfTrailingZeros( mHalf );
+        for (int i=0; i<mHalf; i++)
+            mReverse[ i ] = (bits == 0) ? 0 : Integer.reverse( i ) >>> (32 - bits);
+        mScratch = ThreadLocal.withInitial( Scratch::new );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of rows of the result (size/2) */
+    public int getRows ( ) {  return mHalf;  }
+    //----------------------------------------------------------------------
+    /** \returns the number of columns of the result for a number of frames
+     *  (the last columns extend past the end, which is silent)
+     */
+    public int getColumns ( int frames ) {
+        return (int)(((long)frames + mHop - 1) / mHop);
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the spectrogram of (interleaved) audio samples.
+     *  \param samples the samples (mChannels per frame)
+     *  \param frames number of frames
+     *  \param channels samples per frame
+     *  \param zero value of a 0 sample (e.g., 128 for unsigned 8 bit)
+     *  \param fullScale largest magnitude of a sample
+     *  \returns getColumns(frames) x getRows() values in [0..10*RANGE]
+     */
+    public PixelBuffer compute ( final PixelBuffer samples, final int frames, final int channels,
+                                 final int zero, final double fullScale ) {
+        final int   w = getColumns( frames );
+        if ((long)w * mHalf > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException( "Spectrogram: too many columns: " + w );
+        final PixelBuffer  out = PixelBuffer.allocate( w * mHalf, 0, 10 * RANGE );
+        //power of a full scale sine (w/ the Hann window and the channels summed)
+        final double  ref = fullScale * channels * mSize / 4;
+        //value = 10 * (dB + RANGE) where dB = 10 log10(power) - 20 log10(ref)
+        final double  scale = 100 * LOG10_2, offset = 10 * (RANGE - 20 * Math.log10( ref ));
+        final int     top = 10 * RANGE;
+        Parallel.forEachBand( w, mSize, (c0, c1) -> {
+            final Scratch  s = mScratch.get();
+            if (s.mIn.length < mSize * channels)    s.mIn = new int[ mSize * channels ];
+            for (int g0=c0; g0<c1; g0+=GROUP) {
+                final int  n = Math.min( GROUP, c1 - g0 );
+                for (int j=0; j<n; j++) {
+                    final int  f0 = (g0 + j) * mHop, count = Math.max( 0, Math.min( mSize, frames - f0 ) );
+                    samples.getRange( f0 * channels, s.mIn, 0, count * channels );
+                    load( s, count, channels, zero );
+                    transform( s );
+                    for (int k=0, i=(mHalf-1)*GROUP+j; k<mHalf; k++, i-=GROUP) {
+                        final double  v = scale * log2( s.mPower[ k ] ) + offset;
+                        s.mBlock[ i ] = (v <= 0) ? 0 : (v >= top) ? top : (int)(v + 0.5);
+                    }
+                }
+                for (int r=0; r<mHalf; r++)    out.setRange( r * w + g0, s.mBlock, r * GROUP, n );
+            }
+        } );
+        return out;
+    }
+    //----------------------------------------------------------------------
+    /** \returns log2 of a (positive) value (from LOG2; very negative for 0) */
+    private static double log2 ( double v ) {
+        final long  bits = Double.doubleToRawLongBits( v );
+        final int   e = (int)((bits >>> 52) & 0x7ff) - 1023;
+        return e + LOG2[ (int)(bits >>> (52 - LOG_BITS)) & (LOG2.length - 1) ];
+    }
+    //----------------------------------------------------------------------
+    /** \brief Window the samples of a column (summing the channels) and
+     *  put them in bit reversed order in mRe (even frames) and mIm (odd
+     *  frames).  Frames past count are 0.
+     *  \returns nothing (void)
+     */
+    private void load ( Scratch s, int count, int channels, int zero ) {
+        final int[]  in = s.mIn;
+        if (channels == 1 && count == mSize) {  //the common case
+            for (int m=0, f=0; m<mHalf; m++, f+=2) {
+                s.mRe[ mReverse[ m ] ] = (in[ f ]   - zero) * mWindow[ f ];
+                s.mIm[ mReverse[ m ] ] = (in[ f+1 ] - zero) * mWindow[ f+1 ];
+            }
+            return;
+        }
+        for (int m=0; m<mHalf; m++) {
+            final int  f = 2 * m;
+            double  even = 0, odd = 0;
+            if (f < count) {
+                for (int c=0; c<channels; c++)    even += in[ f*channels + c ] - zero;
+            }
+            if (f + 1 < count) {
+                for (int c=0; c<channels; c++)    odd += in[ (f+1)*channels + c ] - zero;
+            }
+            s.mRe[ mReverse[ m ] ] = even * mWindow[ f ];
+            s.mIm[ mReverse[ m ] ] = odd  * mWindow[ f+1 ];
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief The complex FFT of mRe/mIm (in bit reversed order) and the
+     *  split into the power of the spectrum of the real frame (in mPower).
+     *  \returns nothing (void)
+     */
+    private void transform ( Scratch s ) {
+        final double[]  re = s.mRe, im = s.mIm;
+        int  first = 2;
+        if (mHalf >= 4) {
+            //the first two stages (twiddles 1 and -i) as radix-4 butterflies
+            for (int i=0; i<mHalf; i+=4) {
+                final double  ar = re[ i ]   + re[ i+1 ], ai = im[ i ]   + im[ i+1 ];
+                final double  br = re[ i ]   - re[ i+1 ], bi = im[ i ]   - im[ i+1 ];
+                final double  cr = re[ i+2 ] + re[ i+3 ], ci = im[ i+2 ] + im[ i+3 ];
+                final double  dr = re[ i+2 ] - re[ i+3 ], di = im[ i+2 ] - im[ i+3 ];
+                re[ i ]   = ar + cr;  im[ i ]   = ai + ci;
+                re[ i+2 ] = ar - cr;  im[ i+2 ] = ai - ci;
+                re[ i+1 ] = br + di;  im[ i+1 ] = bi - dr;
+                re[ i+3 ] = br - di;  im[ i+3 ] = bi + dr;
+            }
+            first = 8;
+        }
+        for (int len=first; len<=mHalf; len<<=1) {
+            final int  half = len / 2;
+            for (int i=0; i<mHalf; i+=len) {
+                for (int j=0; j<half; j++) {
+                    final int     a = i + j, b = a + half;
+                    final double  wr = mCos[ half + j ], wi = -mSin[ half + j ];
+                    final double  vr = re[ b ] * wr - im[ b ] * wi;
+                    final double  vi = re[ b ] * wi + im[ b ] * wr;
+                    re[ b ] = re[ a ] - vr;
+                    im[ b ] = im[ a ] - vi;
+                    re[ a ] += vr;
+                    im[ a ] += vi;
+                }
+            }
+        }
+        //X[k] = E[k] + W^k O[k] where E and O are the FFTs of the even and odd frames
+        for (int k=0; k<mHalf; k++) {
+            final int     nk = (k == 0) ? 0 : mHalf - k;
+            final double  a = re[ k ], b = im[ k ], c = re[ nk ], d = im[ nk ];
+            final double  er = (a + c) / 2, ei = (b - d) / 2;
+            final double  or = (b + d) / 2, oi = (c - a) / 2;
+            final double  wr = mSplitCos[ k ], wi = -mSplitSin[ k ];
+            final double  xr = er + wr * or - wi * oi, xi = ei + wr * oi + wi * or;
+            s.mPower[ k ] = xr * xr + xi * xi;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the power spectrum of one (already windowed)
+     *  frame (e.g., to check the FFT against a DFT).
+     *  \param x size samples
+     *  \returns size/2 powers (|X[k]|^2 for k in [0..size/2))
+     */
+    double[] power ( double[] x ) {
+        final Scratch  s = mScratch.get();
+        for (int m=0; m<mHalf; m++) {
+            s.mRe[ mReverse[ m ] ] = x[ 2*m ];
+            s.mIm[ mReverse[ m ] ] = x[ 2*m+1 ];
+        }
+        transform( s );
+        return s.mPower.clone();
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,60 @@
+/**
+    \file   Strategy.java
+    \brief  contains Strategy interface definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief an image processing operation (e.g., threshold, erosion).
+ *
+ *  A strategy reads an image's mOriginalData and writes its result to
+ *  mDisplayData (which is then shown).  Use apply() to run a single
+ *  strategy or a Pipeline to run several in a row (w/out makePermanent()
+ *  between them).  Strategies are either PointStrategy (each output
+ *  value depends only upon the input value at the same location) or
+ *  NeighborhoodStrategy (each output value depends upon the input values
+ *  in a window around it).
+ */
+public interface Strategy {
+    /** \brief Determine the range of the output (so that a buffer w/ the
+     *  narrowest backing may be used for it).  For a point strategy, this
+     *  should be exact (as it is the input range of the next one).
+     *  \param min smallest input value
+     *  \param max largest input value
+     *  \returns the smallest and largest output values (see Parallel.pack())
+     */
+    long range ( int min, int max );
+    //----------------------------------------------------------------------
+    /** \brief Apply this strategy to an image (mOriginalData to
+     *  mDisplayData).
+     *  \param image the image
+     *  \returns nothing (void)
+     */
+    default void apply ( ImageData image ) {
+        new Pipeline().add( this ).run( image );
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,422 @@
+/**
+    \file   SummedAreaTable.java
+    \brief  contains SummedAreaTable class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.util.Arrays;
+//----------------------------------------------------------------------
+/** \brief summed area (integral) tables of an image, so that the sum,
+ *  mean, and standard deviation of any rectangular region of interest
+ *  (ROI) take O(1) time.
+ *
+ *  For each band, the table holds the sums (and sums of squares) of all
+ *  samples above and to the left of each corner, so a rectangle's sum is
+ *  4 lookups.  If the tables for every pixel would not fit in the budget
+ *  (-Djimageviewer.roiTableMB=n, 1/8 of the max heap by default), they
+ *  are made for tiles of 2^n x 2^n pixels instead and the pixels of a
+ *  ROI that only partly cover a tile (at most a thin frame) are read
+ *  directly.  Min and max cannot be summed, so they are kept for a
+ *  pyramid of blocks (BLOCK x BLOCK pixels, BLOCK x BLOCK of those, and so
+ *  on).  A ROI uses the largest blocks that it covers, then a frame of
+ *  smaller blocks around those, and so on down to a frame of pixels less
+ *  than BLOCK wide.
+ *  <br/>
+ *  Tiles are summed in parallel row bands.  When rows [y0..y1) change
+ *  (see update()), only those tiles are summed again; the rows of the
+ *  table below them all change by the same amount, which is added.
+ */
+public class SummedAreaTable {
+    /** size of the blocks for min and max */
+    public static final int  BLOCK = 8;
+    /** max number of bytes for the tables */
+    public static final long BUDGET = Long.getLong( "jimageviewer.roiTableMB",
+            Runtime.getRuntime().maxMemory() / 8 / (1024 * 1024) ) * 1024 * 1024;
+
+    /** \brief statistics of one band of a ROI */
+    public static class Stats {
+        long    mCount = 0;                  ///< number of pixels
+        long    mSum   = 0;                  ///< sum of the values
+        double  mSumSq = 0;                  ///< sum of the squares of the values
+        int     mMin   = Integer.MAX_VALUE;  ///< min value
+        int     mMax   = Integer.MIN_VALUE;  ///< max value
+        /** \returns the number of pixels */
+        public long   getCount ( )  {  return mCount;  }
+        /** \returns the sum of the values */
+        public long   getSum ( )    {  return mSum;  }
+        /** \returns the min value (undefined if there are no pixels) */
+        public int    getMin ( )    {  return mMin;  }
+        /** \returns the max value (undefined if there are no pixels) */
+        public int    getMax ( )    {  return mMax;  }
+        /** \returns the mean value (0 if there are no pixels) */
+        public double getMean ( )   {  return (mCount == 0) ? 0 : (double)mSum / mCount;  }
+        /** \returns the (population) standard deviation of the values */
+        public double getStdDev ( ) {
+            if (mCount == 0)    return 0;
+            double  mean = getMean();
+            return Math.sqrt( Math.max( 0, mSumSq / mCount - mean * mean ) );
+        }
+        @Override
+        public String toString ( ) {
+            if (mCount == 0)    return "n=0";
+            return String.format( "n=%d mean=%.2f sd=%.2f min=%d max=%d sum=%d",
+                                  mCount, getMean(), getStdDev(), mMin, mMax, mSum );
+        }
+    }
+
+    private final int       mW, mH;       ///< image size
+    private final int       mSamples;     ///< samples per pixel
+    private final int       mShift;       ///< tiles are 2^mShift x 2^mShift pixels
+    private final int       mTw, mTh;     ///< number of tiles across and down
+    private final long[]    mSum;         ///< (mTh+1) x (mTw+1) x mSamples sums
+    private final double[]  mSumSq;       ///< sums of squares (same layout)
+    private final int[]     mLevelW;      ///< number of blocks across at each level (level 0 is pixels)
+    private final int[]     mLevelH;      ///< number of blocks down at each level
+    private final int[][]   mLevelMin;    ///< min values of the blocks of each level (by row, then band)
+    private final int[][]   mLevelMax;    ///< max values of the blocks of each level
+    private PixelBuffer     mBuf;         ///< the samples
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Build the tables (in parallel) for an image.
+     *  \param buf the samples (e.g., mOriginalData)
+     *  \param w image width
+     *  \param h image height
+     *  \param samples samples per pixel (1 for gray, 3 for color)
+     *  \returns nothing (ctor)
+     */
+    public SummedAreaTable ( PixelBuffer buf, int w, int h, int samples ) {
+        this( buf, w, h, samples, BUDGET );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Build the tables (in parallel) for an image.
+     *  \param buf the samples (e.g., mOriginalData)
+     *  \param w image width
+     *  \param h image height
+     *  \param samples samples per pixel (1 for gray, 3 for color)
+     *  \param budget max number of bytes for the sum tables
+     *  \returns nothing (ctor)
+     */
+    public SummedAreaTable ( PixelBuffer buf, int w, int h, int samples, long budget ) {
+        mW = w;
+        mH = h;
+        mSamples = samples;
+        int  shift = 0;
+        while (shift < 16 && tableBytes( w, h, samples, shift ) > budget)    shift++;
+        mShift = shift;
+        mTw = (w + (1 << shift) - 1) >> shift;
+        mTh = (h + (1 << shift) - 1) >> shift;
+        mSum   = new long[ (mTh+1) * (mTw+1) * samples ];
+        mSumSq = new double[ mSum.length ];
+        int  levels = 1;
+        for (long n=Math.max( w, h ); n>1; n=(n + BLOCK - 1) / BLOCK)    levels++;
+        mLevelW   = new int[ levels ];
+        mLevelH   = new int[ levels ];
+        mLevelMin = new int[ levels ][];
+        mLevelMax = new int[ levels ][];
+        mLevelW[ 0 ] = w;
+        mLevelH[ 0 ] = h;
+        for (int l=1; l<levels; l++) {
+            mLevelW[ l ]   = (mLevelW[ l-1 ] + BLOCK - 1) / BLOCK;
+            mLevelH[ l ]   = (mLevelH[ l-1 ] + BLOCK - 1) / BLOCK;
+            mLevelMin[ l ] = new int[ mLevelW[ l ] * mLevelH[ l ] * samples ];
+            mLevelMax[ l ] = new int[ mLevelMin[ l ].length ];
+        }
+        update( buf, 0, h );
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of bytes of the sum tables for tiles of
+     *  2^shift x 2^shift pixels
+     */
+    private static long tableBytes ( int w, int h, int samples, int shift ) {
+        long  tw = ((long)w + (1 << shift) - 1) >> shift, th = ((long)h + (1 << shift) - 1) >> shift;
+        return 16 * (tw + 1) * (th + 1) * samples;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the size (in pixels) of a tile of the sum tables */
+    public int getTileSize ( )  {  return 1 << mShift;  }
+    //----------------------------------------------------------------------
+    /** \returns the (approx.) number of bytes used by the tables */
+    public long sizeInBytes ( ) {
+        long  n = 16L * mSum.length;
+        for (int l=1; l<mLevelMin.length; l++)    n += 8L * mLevelMin[ l ].length;
+        return n;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Rows [y0..y1) of the image have changed (or buf has been
+     *  replaced by a buffer that differs only in those rows).  Only the
+     *  tiles and blocks of those rows are read.
+     *  \param buf the samples
+     *  \param y0 first changed row
+     *  \param y1 one past the last changed row
+     *  \returns nothing (void)
+     */
+    public synchronized void update ( PixelBuffer buf, int y0, int y1 ) {
+        mBuf = buf;
+        y0 = Math.max( 0, y0 );
+        y1 = Math.min( mH, y1 );
+        if (y0 >= y1)    return;
+        final int  stride = (mTw + 1) * mSamples;  //one row of the tables
+        final int  ty0 = y0 >> mShift, ty1 = (y1 + (1 << mShift) - 1) >> mShift;
+        //table row ty1 before the change (the rows below change by the same amount)
+        long[]    oldSum   = null;
+        double[]  oldSumSq = null;
+        if (ty1 < mTh) {
+            oldSum   = new long[ stride ];
+            oldSumSq = new double[ stride ];
+            System.arraycopy( mSum,   ty1 * stride, oldSum,   0, stride );
+            System.arraycopy( mSumSq, ty1 * stride, oldSumSq, 0, stride );
+        }
+        //sum each tile row (into table row ty+1)
+        Parallel.forEachBand( ty1 - ty0, (mW * mSamples) << mShift,
+                (a, b) -> sumTileRows( buf, ty0 + a, ty0 + b ) );
+        //add the rows above (in parallel strips of columns)
+        Parallel.forEachBand( stride, ty1 - ty0, (i0, i1) -> {
+            for (int r=ty0+1; r<=ty1; r++) {
+                for (int i=r*stride+i0, j=(r-1)*stride+i0, e=r*stride+i1; i<e; i++, j++) {
+                    mSum[ i ]   += mSum[ j ];
+                    mSumSq[ i ] += mSumSq[ j ];
+                }
+            }
+        } );
+        //the rows below change by the same amount as row ty1
+        if (oldSum != null) {
+            final long[]    dSum   = oldSum;
+            final double[]  dSumSq = oldSumSq;
+            for (int i=0, j=ty1*stride; i<stride; i++, j++) {
+                dSum[ i ]   = mSum[ j ]   - dSum[ i ];
+                dSumSq[ i ] = mSumSq[ j ] - dSumSq[ i ];
+            }
+            Parallel.forEachBand( mTh - ty1, stride, (a, b) -> {
+                for (int r=ty1+1+a; r<=ty1+b; r++) {
+                    for (int i=0, j=r*stride; i<stride; i++, j++) {
+                        mSum[ j ]   += dSum[ i ];
+                        mSumSq[ j ] += dSumSq[ i ];
+                    }
+                }
+            } );
+        }
+        //min and max of the blocks of the changed rows (at each level)
+        for (int l=1; l<mLevelW.length; l++) {
+            y0 = y0 / BLOCK;
+            y1 = (y1 + BLOCK - 1) / BLOCK;
+            final int  level = l, by0 = y0;
+            Parallel.forEachBand( y1 - y0, mLevelW[ l-1 ] * mSamples * BLOCK,
+                    (a, b) -> blockRows( buf, level, by0 + a, by0 + b ) );
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Sum the tiles of tile rows [ty0..ty1) (along each row of the
+     *  table, but not yet down).
+     *  \returns nothing (void)
+     */
+    private void sumTileRows ( PixelBuffer buf, int ty0, int ty1 ) {
+        final int       s = mSamples, stride = (mTw + 1) * s;
+        final int[]     row   = new int[ mW * s ];
+        final long[]    sum   = new long[ mTw * s ];
+        final double[]  sumSq = new double[ mTw * s ];
+        for (int ty=ty0; ty<ty1; ty++) {
+            Arrays.fill( sum, 0 );
+            Arrays.fill( sumSq, 0 );
+            final int  yEnd = Math.min( mH, (ty + 1) << mShift );
+            for (int y=ty<<mShift; y<yEnd; y++) {
+                buf.getRange( y * mW * s, row, 0, mW * s );
+                if (mShift == 0) {
+                    for (int i=0; i<row.length; i++) {
+                        final int  v = row[ i ];
+                        sum[ i ]   += v;
+                        sumSq[ i ] += (double)v * v;
+                    }
+                } else if (s == 1) {
+                    for (int x=0; x<mW; x++) {
+                        final int  v = row[ x ];
+                        sum[ x >> mShift ]   += v;
+                        sumSq[ x >> mShift ] += (double)v * v;
+                    }
+                } else {
+                    for (int x=0, i=0; x<mW; x++) {
+                        final int  t = (x >> mShift) * s;
+                        for (int c=0; c<s; c++, i++) {
+                            final int  v = row[ i ];
+                            sum[ t+c ]   += v;
+                            sumSq[ t+c ] += (double)v * v;
+                        }
+                    }
+                }
+            }
+            //prefix along the row
+            final int  base = (ty + 1) * stride;
+            for (int c=0; c<s; c++) {
+                mSum[ base+c ]   = 0;
+                mSumSq[ base+c ] = 0;
+            }
+            for (int i=0; i<sum.length; i++) {
+                mSum[ base+s+i ]   = mSum[ base+i ]   + sum[ i ];
+                mSumSq[ base+s+i ] = mSumSq[ base+i ] + sumSq[ i ];
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Find the min and max of the blocks of rows [by0..by1) of a
+     *  level (from the pixels or the blocks of the level below).
+     *  \returns nothing (void)
+     */
+    private void blockRows ( PixelBuffer buf, int level, int by0, int by1 ) {
+        final int    s = mSamples, w = mLevelW[ level-1 ], h = mLevelH[ level-1 ];
+        final int[]  min = mLevelMin[ level ], max = mLevelMax[ level ];
+        final int[]  row = (level == 1) ? new int[ w * s ] : null;
+        for (int by=by0; by<by1; by++) {
+            final int  base = by * mLevelW[ level ] * s;
+            Arrays.fill( min, base, base + mLevelW[ level ] * s, Integer.MAX_VALUE );
+            Arrays.fill( max, base, base + mLevelW[ level ] * s, Integer.MIN_VALUE );
+            final int  yEnd = Math.min( h, (by + 1) * BLOCK );
+            for (int y=by*BLOCK; y<yEnd; y++) {
+                //the values (or the min and max values) of row y of the level below
+                final int[]  lo, hi;
+                final int    off;
+                if (level == 1) {
+                    buf.getRange( y * w * s, row, 0, w * s );
+                    lo = hi = row;
+                    off = 0;
+                } else {
+                    lo  = mLevelMin[ level-1 ];
+                    hi  = mLevelMax[ level-1 ];
+                    off = y * w * s;
+                }
+                for (int x=0, i=off; x<w; x++) {
+                    final int  b = base + (x / BLOCK) * s;
+                    for (int c=0; c<s; c++, i++) {
+                        if (lo[ i ] < min[ b+c ])    min[ b+c ] = lo[ i ];
+                        if (hi[ i ] > max[ b+c ])    max[ b+c ] = hi[ i ];
+                    }
+                }
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine the statistics of one band of a rectangular ROI.
+     *  \param x0 left column
+     *  \param y0 top row
+     *  \param x1 one past the right column
+     *  \param y1 one past the bottom row
+     *  \param band sample within the pixel (0 for gray; 0, 1, or 2 for
+     *         red, green, or blue)
+     *  \returns the statistics (the ROI is clipped to the image)
+     */
+    public synchronized Stats stats ( int x0, int y0, int x1, int y1, int band ) {
+        x0 = Math.max( 0, x0 );   y0 = Math.max( 0, y0 );
+        x1 = Math.min( mW, x1 );  y1 = Math.min( mH, y1 );
+        Stats  st = new Stats();
+        if (x0 >= x1 || y0 >= y1)    return st;
+        //sums:  whole tiles from the table and the rest directly
+        final int  t = 1 << mShift;
+        final int  tx0 = (x0 + t - 1) >> mShift, tx1 = (x1 == mW) ? mTw : x1 >> mShift;
+        final int  ty0 = (y0 + t - 1) >> mShift, ty1 = (y1 == mH) ? mTh : y1 >> mShift;
+        if (tx0 < tx1 && ty0 < ty1) {
+            final int  stride = (mTw + 1) * mSamples;
+            final int  a = ty0 * stride + tx0 * mSamples + band, b = ty0 * stride + tx1 * mSamples + band,
+                       c = ty1 * stride + tx0 * mSamples + band, d = ty1 * stride + tx1 * mSamples + band;
+            st.mSum   = mSum[ d ]   - mSum[ b ]   - mSum[ c ]   + mSum[ a ];
+            st.mSumSq = mSumSq[ d ] - mSumSq[ b ] - mSumSq[ c ] + mSumSq[ a ];
+            frame( 0, x0, y0, x1, y1, tx0 << mShift, ty0 << mShift, Math.min( mW, tx1 << mShift ),
+                   Math.min( mH, ty1 << mShift ), band, st, true );
+        } else {
+            scan( 0, x0, y0, x1, y1, band, st, true );
+        }
+        st.mCount = (long)(x1 - x0) * (y1 - y0);
+        minMax( 0, x0, y0, x1, y1, band, st );
+        return st;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Find the min and max of [x0..x1) x [y0..y1) (in units of the
+     *  blocks of a level):  the blocks of the next level that are covered
+     *  and then the frame around them.
+     *  \returns nothing (void)
+     */
+    private void minMax ( int level, int x0, int y0, int x1, int y1, int band, Stats st ) {
+        if (x0 >= x1 || y0 >= y1)    return;
+        if (level + 1 < mLevelW.length) {
+            final int  w = mLevelW[ level ], h = mLevelH[ level ];
+            final int  bx0 = (x0 + BLOCK - 1) / BLOCK, bx1 = (x1 == w) ? mLevelW[ level+1 ] : x1 / BLOCK;
+            final int  by0 = (y0 + BLOCK - 1) / BLOCK, by1 = (y1 == h) ? mLevelH[ level+1 ] : y1 / BLOCK;
+            if (bx0 < bx1 && by0 < by1) {
+                minMax( level+1, bx0, by0, bx1, by1, band, st );
+                frame( level, x0, y0, x1, y1, bx0 * BLOCK, by0 * BLOCK, Math.min( w, bx1 * BLOCK ),
+                       Math.min( h, by1 * BLOCK ), band, st, false );
+                return;
+            }
+        }
+        scan( level, x0, y0, x1, y1, band, st, false );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Scan the part of ROI [x0..x1) x [y0..y1) that is outside of
+     *  the inner rectangle [ix0..ix1) x [iy0..iy1).
+     *  \returns nothing (void)
+     */
+    private void frame ( int level, int x0, int y0, int x1, int y1, int ix0, int iy0, int ix1, int iy1,
+                         int band, Stats st, boolean sums ) {
+        scan( level, x0,  y0,  x1,  iy0, band, st, sums );  //top
+        scan( level, x0,  iy1, x1,  y1,  band, st, sums );  //bottom
+        scan( level, x0,  iy0, ix0, iy1, band, st, sums );  //left
+        scan( level, ix1, iy0, x1,  iy1, band, st, sums );  //right
+    }
+    //----------------------------------------------------------------------
+    /** \brief Add the samples of [x0..x1) x [y0..y1) directly to the sums
+     *  (sums is true) or the min and max (sums is false).  For levels
+     *  above 0, the min and max of those blocks are used.
+     *  \returns nothing (void)
+     */
+    private void scan ( int level, int x0, int y0, int x1, int y1, int band, Stats st, boolean sums ) {
+        if (x0 >= x1 || y0 >= y1)    return;
+        final int    s = mSamples;
+        if (level > 0) {
+            final int[]  min = mLevelMin[ level ], max = mLevelMax[ level ];
+            for (int y=y0; y<y1; y++) {
+                for (int i=(y * mLevelW[ level ] + x0) * s + band, e=(y * mLevelW[ level ] + x1) * s; i<e; i+=s) {
+                    if (min[ i ] < st.mMin)    st.mMin = min[ i ];
+                    if (max[ i ] > st.mMax)    st.mMax = max[ i ];
+                }
+            }
+            return;
+        }
+        //narrow (frame) columns are read a sample at a time
+        final boolean  narrow = x1 - x0 < BLOCK;
+        final int[]    row = new int[ (x1 - x0) * s ];
+        for (int y=y0; y<y1; y++) {
+            final int  pos = (y * mW + x0) * s;
+            if (!narrow)    mBuf.getRange( pos, row, 0, row.length );
+            for (int i=band; i<row.length; i+=s) {
+                final int  v = narrow ? mBuf.get( pos + i ) : row[ i ];
+                if (sums) {
+                    st.mSum   += v;
+                    st.mSumSq += (double)v * v;
+                } else {
+                    if (v < st.mMin)    st.mMin = v;
+                    if (v > st.mMax)    st.mMax = v;
+                }
+            }
+        }
+    }
+
+}
+//----------------------------------------------------------------------
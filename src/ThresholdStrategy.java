@@ -0,0 +1,63 @@
+/**
+    \file   ThresholdStrategy.java
+    \brief  contains ThresholdStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief values >= a threshold become hi; all others become lo. */
+public class ThresholdStrategy implements PointStrategy {
+    private final int  mThreshold;  ///< threshold
+    private final int  mLo, mHi;    ///< output values
+    //----------------------------------------------------------------------
+    /** \brief Ctor (output is 0 or 255).
+     *  \param threshold threshold
+     *  \returns nothing (ctor)
+     */
+    public ThresholdStrategy ( int threshold ) {  this( threshold, 0, 255 );  }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param threshold threshold
+     *  \param lo output for values < threshold
+     *  \param hi output for values >= threshold
+     *  \returns nothing (ctor)
+     */
+    public ThresholdStrategy ( int threshold, int lo, int hi ) {
+        mThreshold = threshold;
+        mLo = lo;
+        mHi = hi;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int map ( int v, int min, int max ) {  return (v >= mThreshold) ? mHi : mLo;  }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {
+        int  a = map( min, min, max ), b = map( max, min, max );
+        return Parallel.pack( Math.min( a, b ), Math.max( a, b ) );
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,387 @@
+/**
+    \file   ThumbnailIndex.java
+    \brief  contains ThumbnailIndex class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+//----------------------------------------------------------------------
+/** \brief a persistent (on disk) index of thumbnails (see ContactSheet)
+ *  shared by all windows.
+ *
+ *  The thumbnails are kept in a single pack file (~/.jimageviewer-
+ *  thumbnails.pack by default, or -Djimageviewer.thumbnails=file) that is
+ *  memory mapped, so a thumbnail is read by copying its (8-bit gray or
+ *  RGB) pixels from the map.  Like ImageCache, an entry is keyed by the
+ *  canonical path of the file and is only used if the file's modification
+ *  time and size are still the same (so only files that have changed are
+ *  decoded again).
+ *  <br/>
+ *  The pack file is a header (magic, version, thumbnail size) followed
+ *  by records that are only ever appended:
+ *  <pre>
+ *    int   number of bytes in the rest of the record
+ *    long  file size, long modification time
+ *    short width, short height, byte samples per pixel (1 or 3)
+ *    short number of bytes in the path, the path (UTF-8)
+ *    the pixels (width*height*samples per pixel bytes)
+ *  </pre>
+ *  A later record for the same path replaces an earlier one.  When the
+ *  index is opened, the records are scanned (a partially written record
+ *  at the end is discarded) and, if less than half of the file is live,
+ *  the live records are copied to a new pack file.  The pack file is
+ *  locked while it is open.  If another process has it locked, this
+ *  index is read only.  The pack file is limited to 2 GB (later
+ *  thumbnails are not saved).
+ */
+public class ThumbnailIndex {
+    /** width and height (max) of a thumbnail */
+    public static final int  SIZE = Math.max( 16, Math.min( 1024,
+            Integer.getInteger( "jimageviewer.thumbnailSize", 128 ) ) );
+
+    private static final int  MAGIC   = 0x4A495458;  ///< "JITX"
+    private static final int  VERSION = 1;           ///< of the pack file format
+    private static final int  HEADER  = 16;          ///< bytes in the header
+    private static final int  FIXED   = 23;          ///< bytes in a record (after its length) before the path
+
+    /** \brief where the thumbnail of a file is in the pack file */
+    private static class Entry {
+        final long  mLength;    ///< size of the file (when its thumbnail was made)
+        final long  mModified;  ///< modification time of the file
+        final long  mRecord;    ///< offset of the record in the pack file
+        final int   mPixels;    ///< offset of the pixels in the pack file
+        final int   mW, mH;     ///< thumbnail width and height
+        final int   mSamples;   ///< samples per pixel (1 or 3)
+        Entry ( long length, long modified, long record, int pixels, int w, int h, int samples ) {
+            mLength = length;  mModified = modified;  mRecord = record;  mPixels = pixels;
+            mW = w;  mH = h;  mSamples = samples;
+        }
+        /** \returns the number of bytes in the record (w/ its length) */
+        long recordBytes ( ) {  return mPixels - mRecord + (long)mW * mH * mSamples;  }
+    }
+
+    private static ThumbnailIndex  sShared = null;  ///< created when first needed
+
+    private final Path           mPath;       ///< the pack file
+    private final int            mSize;       ///< thumbnail size
+    private final HashMap< String, Entry >  mEntries = new HashMap<>();  ///< by canonical path
+    private FileChannel          mChannel  = null;  ///< the pack file (null if it cannot be opened)
+    private FileLock             mLock     = null;  ///< (null if read only)
+    private MappedByteBuffer     mMap      = null;  ///< [0..mMapped) of the pack file
+    private long                 mEnd      = 0;     ///< end of the last record
+    private long                 mHits, mMisses;    ///< statistics
+    //----------------------------------------------------------------------
+    /** \returns the index shared by all windows */
+    public static synchronized ThumbnailIndex shared ( ) {
+        if (sShared == null) {
+            String  d = new File( System.getProperty( "user.home" ), ".jimageviewer-thumbnails.pack" ).getPath();
+            sShared = new ThumbnailIndex( new File( System.getProperty( "jimageviewer.thumbnails", d ) ).toPath(), SIZE );
+        }
+        return sShared;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Opens (or creates) the pack file and reads its
+     *  entries.  If the pack file cannot be opened, the index is empty and
+     *  nothing is saved.
+     *  \param path the pack file
+     *  \param size thumbnail size (a pack file for a different size is
+     *         emptied)
+     *  \returns nothing (ctor)
+     */
+    public ThumbnailIndex ( Path path, int size ) {
+        mPath = path;
+        mSize = size;
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            System.err.println( "ThumbnailIndex:ThumbnailIndex: " + mPath + ": " + e );
+            close();
+            mEntries.clear();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Open the pack file, scan its records, and compact it (if
+     *  needed).
+     *  \returns nothing (void)
+     */
+    private void open ( ) throws IOException {
+        Timer  t = new Timer();
+        mChannel = FileChannel.open( mPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE );
+        try {
+            mLock = mChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            mLock = null;
+        }
+        long  live = scan();
+        if (mLock != null && mEnd > (1 << 20) && 2 * live < mEnd) {
+            compact();
+            live = scan();
+        }
+        remap();
+        System.out.println( "ThumbnailIndex: " + mEntries.size() + " thumbnails ("
+                + (live >> 10) + " of " + (mEnd >> 10) + " KB live) in " + t.getElapsedTimeNano()
+                + " s" + (mLock == null ? " (read only)" : "") );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Read (or write) the header and the entries of the pack file.
+     *  A partially written record at the end is discarded.
+     *  \returns the number of bytes in the header and the live records
+     */
+    private long scan ( ) throws IOException {
+        mEntries.clear();
+        long        size = mChannel.size();
+        ByteBuffer  b    = ByteBuffer.allocate( 4 + FIXED + Short.MAX_VALUE ).order( ByteOrder.BIG_ENDIAN );
+        b.limit( HEADER );
+        if (size < HEADER || mChannel.read( b, 0 ) != HEADER || b.getInt( 0 ) != MAGIC
+                || b.getInt( 4 ) != VERSION || b.getInt( 8 ) != mSize) {
+            //new (or incompatible) pack file
+            mEnd = 0;
+            if (mLock == null)    return 0;
+            b.clear();
+            b.putInt( MAGIC ).putInt( VERSION ).putInt( mSize ).putInt( 0 ).flip();
+            mChannel.truncate( 0 );
+            mChannel.write( b, 0 );
+            mEnd = HEADER;
+            return HEADER;
+        }
+
+        long  pos = HEADER;
+        while (pos + 4 + FIXED <= size) {
+            b.clear();
+            int  n = mChannel.read( b, pos );
+            if (n < 4 + FIXED)    break;
+            int    bytes    = b.getInt( 0 );
+            long   length   = b.getLong( 4 );
+            long   modified = b.getLong( 12 );
+            int    w        = b.getShort( 20 ) & 0xffff;
+            int    h        = b.getShort( 22 ) & 0xffff;
+            int    samples  = b.get( 24 );
+            int    pathLen  = b.getShort( 25 ) & 0xffff;
+            long   expected = FIXED + pathLen + (long)w * h * samples;
+            if ((samples != 1 && samples != 3) || bytes != expected
+                    || pos + 4 + bytes > size || n < 4 + FIXED + pathLen)
+                break;  //partially written (or damaged)
+            String  path = new String( b.array(), 4 + FIXED, pathLen, StandardCharsets.UTF_8 );
+            mEntries.put( path, new Entry( length, modified, pos,
+                    (int)(pos + 4 + FIXED + pathLen), w, h, samples ) );
+            pos += 4 + bytes;
+        }
+        if (pos < size && mLock != null)    mChannel.truncate( pos );
+        mEnd = pos;
+
+        long  live = HEADER;
+        for (Entry e : mEntries.values())    live += e.recordBytes();
+        return live;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Copy the live records (of files that have not changed) to a
+     *  new pack file that replaces this one.
+     *  \returns nothing (void)
+     */
+    private void compact ( ) throws IOException {
+        Path  tmp = mPath.resolveSibling( mPath.getFileName() + ".tmp" );
+        try (FileChannel  out = FileChannel.open( tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE )) {
+            mChannel.transferTo( 0, HEADER, out );
+            for (Map.Entry< String, Entry > me : mEntries.entrySet()) {
+                Entry  e = me.getValue();
+                File   f = new File( me.getKey() );
+                if (f.length() != e.mLength || f.lastModified() != e.mModified)    continue;
+                long  n = e.recordBytes();
+                for (long done=0; done<n; )
+                    done += mChannel.transferTo( e.mRecord + done, n - done, out );
+            }
+            out.force( false );
+        }
+        FileLock  oldLock = mLock;
+        FileChannel  ch = FileChannel.open( tmp, StandardOpenOption.READ, StandardOpenOption.WRITE );
+        mLock = ch.tryLock();
+        if (mLock == null) {
+            ch.close();
+            Files.deleteIfExists( tmp );
+            mLock = oldLock;
+            return;
+        }
+        Files.move( tmp, mPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        mChannel.close();  //(also releases oldLock)
+        mChannel = ch;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Map [0..mEnd) of the pack file.
+     *  \returns nothing (void)
+     */
+    private void remap ( ) throws IOException {
+        mMap = mChannel.map( FileChannel.MapMode.READ_ONLY, 0, mEnd );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Close the pack file.
+     *  \returns nothing (void)
+     */
+    private void close ( ) {
+        try {
+            if (mChannel != null)    mChannel.close();  //(also releases mLock)
+        } catch (IOException e) {
+            System.err.println( "ThumbnailIndex:close: " + e );
+        }
+        mChannel = null;
+        mLock    = null;
+        mMap     = null;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the key for a file (its canonical path)
+     *  \param f the file
+     */
+    private static String key ( File f ) {
+        try {
+            return f.getCanonicalPath();
+        } catch (IOException e) {
+            return f.getAbsolutePath();
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the thumbnail size of this index */
+    public int getSize ( ) {  return mSize;  }
+    //----------------------------------------------------------------------
+    /** \returns true if there is a thumbnail of a file (and the file has
+     *  not changed since the thumbnail was made)
+     *  \param f the file
+     */
+    public synchronized boolean contains ( File f ) {
+        Entry  e = mEntries.get( key( f ) );
+        return e != null && e.mLength == f.length() && e.mModified == f.lastModified();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get the thumbnail of a file (if it has not changed since
+     *  the thumbnail was made).
+     *  \param f the file
+     *  \returns a copy of the thumbnail (TYPE_BYTE_GRAY or TYPE_INT_RGB)
+     *  or null if there is none
+     */
+    public synchronized BufferedImage get ( File f ) {
+        Entry  e = mEntries.get( key( f ) );
+        if (e == null || mMap == null || e.mLength != f.length() || e.mModified != f.lastModified()) {
+            mMisses++;
+            return null;
+        }
+        try {
+            if (e.recordBytes() + e.mRecord > mMap.capacity())    remap();
+        } catch (IOException ex) {
+            System.err.println( "ThumbnailIndex:get: " + ex );
+            return null;
+        }
+        mHits++;
+        ByteBuffer  b = mMap.duplicate();
+        b.position( e.mPixels );
+        if (e.mSamples == 1) {
+            BufferedImage  bi = new BufferedImage( e.mW, e.mH, BufferedImage.TYPE_BYTE_GRAY );
+            b.get( ((DataBufferByte)bi.getRaster().getDataBuffer()).getData() );
+            return bi;
+        }
+        BufferedImage  bi  = new BufferedImage( e.mW, e.mH, BufferedImage.TYPE_INT_RGB );
+        int[]          rgb = ((DataBufferInt)bi.getRaster().getDataBuffer()).getData();
+        byte[]         tmp = new byte[ rgb.length * 3 ];
+        b.get( tmp );
+        for (int i=0, j=0; i<rgb.length; i++, j+=3)
+            rgb[ i ] = ((tmp[j] & 0xff) << 16) | ((tmp[j+1] & 0xff) << 8) | (tmp[j+2] & 0xff);
+        return bi;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Add (or replace) the thumbnail of a file.
+     *  \param f the file
+     *  \param length the size of the file when it was read to make the
+     *         thumbnail
+     *  \param modified the modification time of the file when it was read
+     *  \param thumbnail the thumbnail (1 or 3 bands; at most 65535 pixels
+     *         wide and high)
+     *  \returns true if the thumbnail was saved (false if this index is
+     *  read only or full)
+     */
+    public synchronized boolean put ( File f, long length, long modified, BufferedImage thumbnail ) {
+        if (mLock == null)    return false;  //read only (or not open)
+        int     w       = thumbnail.getWidth();
+        int     h       = thumbnail.getHeight();
+        WritableRaster  r = thumbnail.getRaster();
+        int     samples = (r.getNumBands() == 1) ? 1 : 3;
+        String  k       = key( f );
+        byte[]  path    = k.getBytes( StandardCharsets.UTF_8 );
+        if (w > 0xffff || h > 0xffff || path.length > Short.MAX_VALUE)    return false;
+        int     bytes   = FIXED + path.length + w * h * samples;
+        if (mEnd + 4 + bytes > Integer.MAX_VALUE)    return false;  //pack file is full
+
+        ByteBuffer  b = ByteBuffer.allocate( 4 + bytes ).order( ByteOrder.BIG_ENDIAN );
+        b.putInt( bytes ).putLong( length ).putLong( modified );
+        b.putShort( (short)w ).putShort( (short)h ).put( (byte)samples );
+        b.putShort( (short)path.length ).put( path );
+        if (samples == 1) {
+            int[]  gray = r.getSamples( 0, 0, w, h, 0, (int[])null );
+            for (int v : gray)    b.put( (byte)v );
+        } else {
+            int[]  rgb = thumbnail.getRGB( 0, 0, w, h, null, 0, w );
+            for (int v : rgb)    b.put( (byte)(v >> 16) ).put( (byte)(v >> 8) ).put( (byte)v );
+        }
+        b.flip();
+        try {
+            long  pos = mEnd;
+            while (b.hasRemaining())    mChannel.write( b, pos + b.position() );
+            mEntries.put( k, new Entry( length, modified, pos,
+                    (int)(pos + 4 + FIXED + path.length), w, h, samples ) );
+            mEnd = pos + 4 + bytes;
+            return true;
+        } catch (IOException e) {
+            System.err.println( "ThumbnailIndex:put: " + e );
+            return false;
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \returns the number of thumbnails, the size of the pack file, and
+     *  the hits and misses
+     */
+    @Override
+    public synchronized String toString ( ) {
+        return "ThumbnailIndex: " + mEntries.size() + " thumbnails, " + (mEnd >> 10)
+             + " KB in " + mPath + ", " + mHits + " hits, " + mMisses + " misses";
+    }
+
+}
+//----------------------------------------------------------------------
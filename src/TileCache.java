@@ -0,0 +1,155 @@
+/**
+    \file   TileCache.java
+    \brief  contains TileCache class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+//----------------------------------------------------------------------
+/** \brief a least recently used (LRU) cache of image tiles with a limit
+ *  on the total number of bytes.
+ *
+ *  When adding a tile would exceed the budget, the least recently used
+ *  tiles are evicted.  The default budget is 256MB and may be changed
+ *  with -Djimageviewer.tileCacheMB=n (or setBudget()).
+ */
+public class TileCache {
+    /** \brief a cached tile (samples and/or a displayable image) */
+    public static class Tile {
+        public final PixelBuffer    mSamples;  ///< unpacked samples (may be null)
+        public final BufferedImage  mImage;    ///< displayable version (may be null)
+        public Tile ( PixelBuffer samples, BufferedImage image ) {
+            mSamples = samples;
+            mImage   = image;
+        }
+        /** \returns the (approx.) number of bytes used by this tile */
+        public long sizeInBytes ( ) {
+            long  n = 64;
+            if (mSamples != null)    n += mSamples.sizeInBytes();
+            if (mImage   != null) {
+                DataBuffer  db = mImage.getRaster().getDataBuffer();
+                n += (long)db.getSize() * DataBuffer.getDataTypeSize( db.getDataType() ) / 8;
+            }
+            return n;
+        }
+    }
+
+    private final LinkedHashMap< Long, Tile >  mTiles = new LinkedHashMap<>( 256, 0.75f, true );  ///< in LRU order
+    private long  mBudget;  ///< max number of bytes
+    private long  mBytes;   ///< current number of bytes
+    private long  mHits, mMisses;  ///< statistics
+    //----------------------------------------------------------------------
+    /** \brief Ctor w/ the default budget.
+     *  \returns nothing (ctor)
+     */
+    public TileCache ( ) {
+        this( Long.getLong( "jimageviewer.tileCacheMB", 256 ) * 1024 * 1024 );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param budget max number of bytes
+     *  \returns nothing (ctor)
+     */
+    public TileCache ( long budget ) {  mBudget = budget;  }
+    //----------------------------------------------------------------------
+    /** \returns the key for a tile
+     *  \param owner identifies the image (so that one cache may be shared)
+     *  \param level pyramid level
+     *  \param tx tile column
+     *  \param ty tile row
+     */
+    public static long key ( int owner, int level, int tx, int ty ) {
+        return ((long)(owner & 0xffff) << 48) | ((long)(level & 0x3f) << 42)
+             | ((long)(ty & 0x1fffff) << 21) | (tx & 0x1fffff);
+    }
+    //----------------------------------------------------------------------
+    /** \returns the tile (or null if it is not cached) */
+    public synchronized Tile get ( long key ) {
+        Tile  t = mTiles.get( key );
+        if (t == null)    mMisses++;
+        else              mHits++;
+        return t;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Add a tile (evicting least recently used tiles as needed). */
+    public synchronized void put ( long key, Tile t ) {
+        Tile  old = mTiles.put( key, t );
+        if (old != null)    mBytes -= old.sizeInBytes();
+        mBytes += t.sizeInBytes();
+        evict();
+    }
+    //----------------------------------------------------------------------
+    /** \brief Change the budget (evicting tiles as needed). */
+    public synchronized void setBudget ( long budget ) {
+        mBudget = budget;
+        evict();
+    }
+    /** \returns the budget (in bytes) */
+    public synchronized long getBudget ( ) {  return mBudget;  }
+    /** \returns the number of bytes currently cached */
+    public synchronized long getBytes  ( ) {  return mBytes;  }
+    //----------------------------------------------------------------------
+    /** \brief Remove the tiles of one image.
+     *  \param owner identifies the image (see key())
+     */
+    public synchronized void remove ( int owner ) {
+        for (Iterator< Map.Entry< Long, Tile > >  it = mTiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry< Long, Tile >  e = it.next();
+            if ((int)(e.getKey() >>> 48) == (owner & 0xffff)) {
+                mBytes -= e.getValue().sizeInBytes();
+                it.remove();
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Remove all tiles. */
+    public synchronized void clear ( ) {
+        mTiles.clear();
+        mBytes = 0;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public synchronized String toString ( ) {
+        return "TileCache: " + mTiles.size() + " tiles, " + (mBytes >> 20) + "/"
+             + (mBudget >> 20) + " MB, hits=" + mHits + ", misses=" + mMisses;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Evict least recently used tiles until we are within budget
+     *  (the most recently added tile is always kept).
+     */
+    private void evict ( ) {
+        Iterator< Map.Entry<Long,Tile> >  it = mTiles.entrySet().iterator();
+        while (mBytes > mBudget && mTiles.size() > 1 && it.hasNext()) {
+            mBytes -= it.next().getValue().sizeInBytes();
+            it.remove();
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,377 @@
+/**
+    \file   TiledImageData.java
+    \brief  contains TiledImageData class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+//----------------------------------------------------------------------
+/** \brief out-of-core (disk backed) image data for binary (P5/P6) PNM
+ *  images that are too large to fit in memory.
+ *
+ *  The source file is memory mapped (in bands of rows) and fixed size
+ *  tiles are decoded from it on demand into an LRU TileCache with a byte
+ *  budget.  So neither mOriginalData, mDisplayData, nor mDisplayImage
+ *  exist.  Pixel values are available via getSample() (and getGray(),
+ *  getRed(), etc.), and getPyramid() returns a pyramid whose tiles come
+ *  from the cache, so ImagePanel draws this image like any other.
+ *  <br/>
+ *  The coarse levels (up to OVERVIEW pixels wide/high) are made in
+ *  memory when the image is opened.  Finer levels (other than level 0)
+ *  are made on demand by sampling every 2^level-th pixel.
+ *  <br/>
+ *  Note:  This class is read only (makePermanent() and save() are not
+ *  supported).
+ */
+public class TiledImageData extends ImageData {
+    public static final int  TILE     = ImagePyramid.TILE;  ///< tile width and height
+    public static final int  OVERVIEW = 2048;               ///< max size of the in memory levels
+
+    private final int    mSamplesPerPixel;   ///< 1=gray, 3=color
+    private final int    mBytesPerSample;    ///< 1 or 2
+    private final long   mRowBytes;          ///< bytes per image row in the file
+    private final int    mRowsPerBand;       ///< image rows per mapped band
+    private final MappedByteBuffer[]  mBands;  ///< the file (in bands of rows)
+    private final TileCache  mCache;         ///< decoded tiles
+    private final int        mId = sNextId.getAndIncrement();  ///< identifies our tiles in mCache
+
+    private static final AtomicInteger  sNextId = new AtomicInteger();  ///< for mId
+    private static TileCache  sCache = null;  ///< cache shared by all images (see sharedCache())
+    //----------------------------------------------------------------------
+    /** \returns the tile cache shared by all TiledImageData instances
+     *  (w/ the default budget)
+     */
+    public static synchronized TileCache sharedCache ( ) {
+        if (sCache == null)    sCache = new TileCache();
+        return sCache;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Determine whether or not an image should be loaded as a
+     *  TiledImageData (rather than in memory).  This is the case if it is
+     *  binary and either it (and its display copies) would need more than
+     *  half of the max heap, it has more than 2^31 samples, or
+     *  -Djimageviewer.tiled=true is specified.
+     *  \param p the header of the image (see PNMHelper.readHeader())
+     *  \returns true if the image should be tiled
+     */
+    public static boolean shouldTile ( PNMHelper p ) {
+        if (!p.mBinary)    return false;
+        if (Boolean.getBoolean( "jimageviewer.tiled" ))    return true;
+        long  samples = (long)p.mW * p.mH * p.mSamplesPerPixel;
+        if (samples > Integer.MAX_VALUE - 8)    return true;
+        return heapBytes( p ) > Runtime.getRuntime().maxMemory() / 2;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the (approx.) number of bytes of heap needed to load an
+     *  image in memory (original and display data and the display image)
+     *  \param p the header of the image (see PNMHelper.readHeader())
+     */
+    public static long heapBytes ( PNMHelper p ) {
+        long  samples = (long)p.mW * p.mH * p.mSamplesPerPixel;
+        return 2 * samples * ((p.mMax < 256) ? 1 : 2)       //original + display
+             + (long)p.mW * p.mH * (p.mSamplesPerPixel == 1 ? 1 : 4);  //display image
+    }
+    //----------------------------------------------------------------------
+    /** \brief Ctor.  Maps the file and makes the overview levels.
+     *  \param p the header of the image (see PNMHelper.readHeader())
+     *  \param cache tile cache to use
+     *  \returns nothing (ctor)
+     */
+    public TiledImageData ( PNMHelper p, TileCache cache ) throws IOException {
+        assert p.mBinary;
+        mW      = p.mW;
+        mH      = p.mH;
+        mMin    = 0;
+        mMax    = p.mMax;
+        mFname  = p.mFileName;
+        mIsColor = (p.mSamplesPerPixel == 3);
+        mSamplesPerPixel = p.mSamplesPerPixel;
+        mBytesPerSample  = (p.mMax < 256) ? 1 : 2;
+        mRowBytes        = (long)mW * mSamplesPerPixel * mBytesPerSample;
+        mRowsPerBand     = (int)Math.max( 1, Math.min( mH, (Integer.MAX_VALUE / 2) / mRowBytes ) );
+        mCache           = cache;
+        mBands = new MappedByteBuffer[ (mH + mRowsPerBand - 1) / mRowsPerBand ];
+        try (FileChannel  ch = FileChannel.open( Paths.get(mFname), StandardOpenOption.READ )) {
+            for (int b=0; b<mBands.length; b++) {
+                long  rows = Math.min( mRowsPerBand, mH - (long)b*mRowsPerBand );
+                long  pos  = p.mDataOffset + (long)b * mRowsPerBand * mRowBytes;
+                mBands[ b ] = ch.map( FileChannel.MapMode.READ_ONLY, pos, rows * mRowBytes );
+                mBands[ b ].order( ByteOrder.BIG_ENDIAN );
+            }
+        }
+        initWindowLevel();
+        Timer  t = new Timer();
+        mPyramid = new TiledPyramid( null );
+        System.out.println( "TiledImageData: " + mW + "x" + mH + " overview in "
+                          + t.getElapsedTimeNano() + " s" );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Given a pixel's row and column location and a band (0 for
+     *  gray; 0, 1, or 2 for red, green, or blue), this function
+     *  \param row image row
+     *  \param col image column
+     *  \param band sample within the pixel
+     *  \returns the sample's value.
+     */
+    @Override
+    public int getSample ( int row, int col, int band ) {
+        int  tx = col / TILE, ty = row / TILE;
+        TileCache.Tile  t = getTile( 0, tx, ty );
+        int  tw = Math.min( TILE, mW - tx*TILE );
+        return t.mSamples.get( ((row - ty*TILE) * tw + (col - tx*TILE)) * mSamplesPerPixel + band );
+    }
+    /** \returns the pixel's gray value. */
+    public int getGray  ( int row, int col ) {  return getSample( row, col, 0 );  }
+    /** \returns the value of the pixel's red component. */
+    public int getRed   ( int row, int col ) {  return getSample( row, col, 0 );  }
+    /** \returns the value of the pixel's green component. */
+    public int getGreen ( int row, int col ) {  return getSample( row, col, 1 );  }
+    /** \returns the value of the pixel's blue component. */
+    public int getBlue  ( int row, int col ) {  return getSample( row, col, 2 );  }
+    //----------------------------------------------------------------------
+    /** \returns the cache used by this image */
+    public TileCache getCache ( ) {  return mCache;  }
+    //----------------------------------------------------------------------
+    /** \brief There is no display image (tiles are made on demand).
+     *  \returns nothing (void)
+     */
+    @Override
+    protected void refreshDisplayRows ( int y0, int y1 ) { }
+    //----------------------------------------------------------------------
+    /** \brief The window/level changed.  The cached tiles of this image
+     *  are discarded (they are made again, through the new mLut, when
+     *  drawn) and the in memory levels are re-mapped from the samples of
+     *  the overview (w/out reading the file again).
+     *  \returns nothing (void)
+     */
+    @Override
+    public void refreshDisplay ( ) {
+        mCache.remove( mId );
+        mPyramid = new TiledPyramid( ((TiledPyramid)mPyramid).mSamples );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Not supported (this class is read only).
+     *  \returns nothing (void)
+     */
+    @Override
+    public void makePermanent ( ) {
+        System.err.println( "TiledImageData:makePermanent: not supported (read only)" );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Not supported (this class is read only).
+     *  \returns false
+     */
+    @Override
+    public boolean save ( String fileName, boolean binary ) {
+        System.err.println( "TiledImageData:save: not supported (read only)" );
+        return false;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the (approx.) number of bytes of heap used by this image
+     *  (the cached tiles are shared and not included)
+     */
+    @Override
+    public long sizeInBytes ( ) {
+        long  n = ((TiledPyramid)mPyramid).mSamples.sizeInBytes();
+        for (int L=0; L<mPyramid.getLevelCount(); L++) {
+            BufferedImage  level = ((TiledPyramid)mPyramid).getLevel( L );
+            if (level != null)
+                n += (long)level.getWidth() * level.getHeight() * (mIsColor ? 4 : 1);
+        }
+        return n;
+    }
+    //----------------------------------------------------------------------
+    /** \brief Get a tile from the cache (decoding it if necessary).
+     *  \param L level (0 = full resolution, w/ samples)
+     *  \param tx tile column
+     *  \param ty tile row
+     *  \returns the tile
+     */
+    private TileCache.Tile getTile ( int L, int tx, int ty ) {
+        long  key = TileCache.key( mId, L, tx, ty );
+        TileCache.Tile  t = mCache.get( key );
+        if (t == null) {
+            t = (L == 0) ? decodeTile( tx, ty ) : sampleTile( L, tx, ty );
+            mCache.put( key, t );
+        }
+        return t;
+    }
+    //----------------------------------------------------------------------
+    /** \returns the value of sample c of pixel (x,y) from the file */
+    private int read ( int x, int y, int c ) {
+        ByteBuffer  b = mBands[ y / mRowsPerBand ];
+        int  pos = (int)((y % mRowsPerBand) * mRowBytes) + (x*mSamplesPerPixel + c) * mBytesPerSample;
+        return (mBytesPerSample == 1) ? (b.get(pos) & 0xff) : (b.getShort(pos) & 0xffff);
+    }
+    //----------------------------------------------------------------------
+    /** \brief Decode a full resolution tile (samples and image). */
+    private TileCache.Tile decodeTile ( int tx, int ty ) {
+        int  x0 = tx*TILE, y0 = ty*TILE;
+        int  tw = Math.min( TILE, mW-x0 ), th = Math.min( TILE, mH-y0 );
+        int  n  = tw * mSamplesPerPixel;  //samples per tile row
+        PixelBuffer  samples = PixelBuffer.allocate( n*th, 0, (mBytesPerSample == 1) ? 255 : 65535 );
+        byte[]   b8  = new byte[  n ];
+        short[]  b16 = new short[ n ];
+        for (int j=0; j<th; j++) {
+            int  y = y0 + j;
+            ByteBuffer  b = mBands[ y / mRowsPerBand ].duplicate().order( ByteOrder.BIG_ENDIAN );
+            b.position( (int)((y % mRowsPerBand) * mRowBytes) + x0 * mSamplesPerPixel * mBytesPerSample );
+            if (mBytesPerSample == 1) {
+                b.get( b8, 0, n );
+                samples.setUnsignedBytes( j*n, b8, 0, n );
+            } else {
+                b.asShortBuffer().get( b16, 0, n );
+                samples.setUnsignedShorts( j*n, b16, 0, n );
+            }
+        }
+        BufferedImage  img = newTileImage( tw, th );
+        display( samples, img, mLut, 0, th );
+        return new TileCache.Tile( samples, img );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Make a tile of level L by sampling every 2^L-th pixel. */
+    private TileCache.Tile sampleTile ( int L, int tx, int ty ) {
+        TiledPyramid  p = (TiledPyramid)mPyramid;
+        int  x0 = tx*TILE, y0 = ty*TILE;
+        int  tw = Math.min( TILE, p.width(L)-x0 ), th = Math.min( TILE, p.height(L)-y0 );
+        PixelBuffer    samples = newSamples( tw * th );
+        BufferedImage  img     = newTileImage( tw, th );
+        sample( samples, tw, L, x0, y0, 0, th );
+        display( samples, img, mLut, 0, th );
+        return new TileCache.Tile( null, img );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Fill rows [j0..j1) of s (w pixels wide) w/ every 2^L-th
+     *  pixel starting at (x0,y0) of level L.
+     */
+    private void sample ( PixelBuffer s, int w, int L, int x0, int y0, int j0, int j1 ) {
+        for (int j=j0; j<j1; j++) {
+            int  y = Math.min( (y0 + j) << L, mH-1 );
+            for (int i=0; i<w; i++) {
+                int  x = Math.min( (x0 + i) << L, mW-1 );
+                for (int c=0; c<mSamplesPerPixel; c++)
+                    s.set( (j*w + i) * mSamplesPerPixel + c, read( x, y, c ) );
+            }
+        }
+    }
+    //----------------------------------------------------------------------
+    /** \brief Set rows [j0..j1) of img from the samples s (of the same
+     *  width) mapped through lut.
+     */
+    private void display ( PixelBuffer s, BufferedImage img, DisplayLut lut, int j0, int j1 ) {
+        int  w = img.getWidth();
+        for (int j=j0; j<j1; j++)
+            for (int i=0; i<w; i++)
+                setPixel( img, i, j, s, (j*w + i) * mSamplesPerPixel, lut );
+    }
+    //----------------------------------------------------------------------
+    /** \returns a new buffer for n pixels of samples */
+    private PixelBuffer newSamples ( int n ) {
+        return PixelBuffer.allocate( n * mSamplesPerPixel, 0, (mBytesPerSample == 1) ? 255 : 65535 );
+    }
+    //----------------------------------------------------------------------
+    /** \returns a new (empty) displayable tile image */
+    private BufferedImage newTileImage ( int w, int h ) {
+        return new BufferedImage( w, h, mIsColor ? BufferedImage.TYPE_INT_RGB
+                                                 : BufferedImage.TYPE_BYTE_GRAY );
+    }
+    //----------------------------------------------------------------------
+    /** \brief Set pixel (i,j) of a tile image from the samples starting
+     *  at s[k] mapped through lut (or clamped if lut is null, i.e., the
+     *  samples are 8-bit).
+     */
+    private static void setPixel ( BufferedImage img, int i, int j, PixelBuffer s, int k, DisplayLut lut ) {
+        if (img.getType() == BufferedImage.TYPE_INT_RGB) {
+            int  r = map( lut, s.get(k) ), g = map( lut, s.get(k+1) ), b = map( lut, s.get(k+2) );
+            ((DataBufferInt)img.getRaster().getDataBuffer()).setElem( j*img.getWidth() + i, (r<<16) | (g<<8) | b );
+        } else {
+            ((DataBufferByte)img.getRaster().getDataBuffer()).setElem( j*img.getWidth() + i, map( lut, s.get(k) ) );
+        }
+    }
+    /** \returns the gray value [0..255] of sample v */
+    private static int map ( DisplayLut lut, int v ) {
+        return (lut == null) ? Math.min( 255, v ) : lut.map( v );
+    }
+
+    //======================================================================
+    /** \brief pyramid whose fine levels come from the tile cache and whose
+     *  coarse levels are in memory.
+     */
+    private class TiledPyramid extends ImagePyramid {
+        private final int  mFirstInMemory;  ///< first level that is in memory
+        final PixelBuffer  mSamples;        ///< samples of the overview (level mFirstInMemory)
+        /** \param samples samples of the overview (or null to sample the
+         *         file) */
+        TiledPyramid ( PixelBuffer samples ) {
+            super( TiledImageData.this.mW, TiledImageData.this.mH );
+            int  L = 0;
+            while (levelWidth(L) > OVERVIEW || levelHeight(L) > OVERVIEW)    L++;
+            mFirstInMemory = L;
+            for (int i=0; i<L; i++) {  mLevels.add( null );  mTiles.add( null );  }
+            //make the overview by sampling (once), and then the coarser levels from it
+            final int  fL = L, w = levelWidth( L );
+            BufferedImage  overview = newTileImage( w, levelHeight(L) );
+            if (samples == null) {
+                final PixelBuffer  s = newSamples( w * overview.getHeight() );
+                Parallel.forEachBand( overview.getHeight(), w * mSamplesPerPixel,
+                        (j0, j1) -> sample( s, w, fL, 0, 0, j0, j1 ) );
+                samples = s;
+            }
+            mSamples = samples;
+            final DisplayLut  lut = mLut;
+            Parallel.forEachBand( overview.getHeight(), w * mSamplesPerPixel,
+                    (j0, j1) -> display( mSamples, overview, lut, j0, j1 ) );
+            mLevels.add( overview );
+            mTiles.add( null );
+            for (BufferedImage prev = overview; prev.getWidth() > TILE || prev.getHeight() > TILE; ) {
+                BufferedImage  next = newTileImage( (prev.getWidth()+1)/2, (prev.getHeight()+1)/2 );
+                reduce( prev, next, 0, next.getHeight() );
+                mLevels.add( next );
+                mTiles.add( null );
+                prev = next;
+            }
+        }
+        int width  ( int L ) {  return levelWidth(  L );  }
+        int height ( int L ) {  return levelHeight( L );  }
+        BufferedImage getLevel ( int L ) {  return mLevels.get( L );  }
+        @Override
+        protected BufferedImage getTile ( int L, int tx, int ty ) {
+            if (L >= mFirstInMemory)    return super.getTile( L, tx, ty );
+            return TiledImageData.this.getTile( L, tx, ty ).mImage;
+        }
+    }
+
+}
+//----------------------------------------------------------------------
@@ -0,0 +1,61 @@
+/**
+    \file   WindowLevelStrategy.java
+    \brief  contains WindowLevelStrategy class definition.
+    \author George J. Grevera, Ph.D., ggrevera@sju.edu
+
+    Copyright (C) 2006, George J. Grevera
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307
+    USA or from http://www.gnu.org/licenses/gpl.txt.
+
+    This General Public License does not permit incorporating this
+    code into proprietary programs.  (So a hypothetical company such
+    as GH (Generally Hectic) should NOT incorporate this code into
+    their proprietary programs.)
+ */
+//package jimageviewer;
+
+//----------------------------------------------------------------------
+/** \brief maps [level-window/2..level+window/2] linearly to [0..255]
+ *  (values outside of the window are clamped).
+ */
+public class WindowLevelStrategy implements PointStrategy {
+    private final int  mWindow;  ///< width of the window (>= 1)
+    private final int  mLevel;   ///< center of the window
+    //----------------------------------------------------------------------
+    /** \brief Ctor.
+     *  \param window width of the window
+     *  \param level center of the window
+     *  \returns nothing (ctor)
+     */
+    public WindowLevelStrategy ( int window, int level ) {
+        mWindow = Math.max( 1, window );
+        mLevel  = level;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public int map ( int v, int min, int max ) {
+        long  out = ((long)v - mLevel + mWindow / 2) * 255 / mWindow;
+        if (out < 0)      return 0;
+        if (out > 255)    return 255;
+        return (int)out;
+    }
+    //----------------------------------------------------------------------
+    @Override
+    public long range ( int min, int max ) {
+        return Parallel.pack( map( min, min, max ), map( max, min, max ) );  //monotonic
+    }
+
+}
+//----------------------------------------------------------------------